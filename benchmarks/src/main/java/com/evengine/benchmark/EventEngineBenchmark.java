@@ -0,0 +1,173 @@
+package com.evengine.benchmark;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.evengine.benchmark.events.BenchEvent;
+import com.evengine.benchmark.events.BenchIdempotentEvent;
+import com.evengine.benchmark.events.BenchSequencedEvent;
+import com.evengine.benchmark.listener.BenchListeners;
+import com.evengine.core.EventHandlerEngine;
+import com.evengine.core.EventRingBuffer;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * JMH harness for the EventHandlerEngine push/dispatch hot paths<br/>
+ * Measures push, pushAndGetResults and pushAndGetFutures, as throughput and as sampled latency
+ * (the sample time mode reports the p50/p90/p99/p99.9 percentiles)<br/>
+ * Parameters<br/>
+ *    listeners - number of registered listeners per event class<br/>
+ *    eventType - PLAIN, SEQUENCED (sequenceListenerPriority) or IDEMPOTENT event types<br/>
+ *    persistent - in-memory (eventMap) mode or persistent mode backed by a heap store<br/>
+ *    dispatchMode - POOLED (internal dispatch pool hop) or INLINE (fan-out on the pushing thread)<br/>
+ *    executorMode - THREAD_POOL (executor queues), RING_BUFFER (preallocated ring per listener), VIRTUAL_THREAD
+ *                   or FORK_JOIN (one work-stealing pool)<br/>
+ *    waitStrategy - the ring buffer consumer wait strategy<br/>
+ * e.g. java -jar benchmarks/target/benchmarks.jar EventEngineBenchmark -p listeners=4 -p persistent=false<br/>
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventEngineBenchmark
+{
+    /**
+     * Maximum number of listener callbacks allowed to be pending for the fire and forget push benchmark,
+     * keeps the engine queues from growing without bound so that the sustained dispatch rate is measured
+     */
+    private static final long MAX_IN_FLIGHT = 1024;
+
+    public enum BenchEventType
+    {
+        PLAIN, SEQUENCED, IDEMPOTENT
+    }
+
+    @Param({"1", "4", "8"})
+    public int listeners;
+
+    @Param({"PLAIN", "SEQUENCED", "IDEMPOTENT"})
+    public BenchEventType eventType;
+
+    @Param({"false", "true"})
+    public boolean persistent;
+
+    @Param({"POOLED", "INLINE"})
+    public EventHandlerEngine.DispatchMode dispatchMode;
+
+    @Param({"THREAD_POOL", "RING_BUFFER", "VIRTUAL_THREAD", "FORK_JOIN"})
+    public EventHandlerEngine.ExecutorMode executorMode;
+
+    @Param({"PARK"})
+    public EventRingBuffer.WaitStrategy waitStrategy;
+
+    private EventHandlerEngine engine;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicLong dispatched = new AtomicLong();
+
+    @Setup
+    public void setup()
+    {
+        Logger.getRootLogger().setLevel(Level.ERROR);
+
+        engine = new EventHandlerEngine();
+        engine.setPersistent(persistent);
+        engine.setDispatchMode(dispatchMode);
+        engine.setExecutorMode(executorMode);
+        engine.setWaitStrategy(waitStrategy);
+        engine.setPackagePaths(BenchListeners.getPackagePaths(Math.min(listeners, BenchListeners.MAX_LISTENERS)));
+        if(persistent) {
+            engine.setePersistenceInterface(new InMemoryEventPersistence());
+        }
+        engine.initialize();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        engine.destroy();
+    }
+
+    private Serializable nextEvent()
+    {
+        Long seq = sequence.incrementAndGet();
+        switch (eventType)
+        {
+            case SEQUENCED:
+                return new BenchSequencedEvent("bench", seq);
+            case IDEMPOTENT:
+                return new BenchIdempotentEvent("bench", seq);
+            default:
+                return new BenchEvent("bench", seq);
+        }
+    }
+
+    /**
+     * Wait until the listener callbacks pending in the engine fall under the in-flight limit
+     */
+    private void awaitCapacity()
+    {
+        long inFlight = dispatched.addAndGet(listeners);
+        while(inFlight - BenchListeners.COMPLETED.get() > MAX_IN_FLIGHT) {
+            Thread.yield();
+        }
+    }
+
+    @Benchmark
+    public void push()
+    {
+        awaitCapacity();
+        engine.push(nextEvent());
+    }
+
+    @Benchmark
+    public List<Object> pushAndGetResults()
+    {
+        return engine.pushAndGetResults(nextEvent());
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Benchmark
+    public List<Future> pushAndGetFutures()
+    {
+        awaitCapacity();
+        return engine.pushAndGetFutures(nextEvent());
+    }
+}
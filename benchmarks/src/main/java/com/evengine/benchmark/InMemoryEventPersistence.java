@@ -0,0 +1,87 @@
+package com.evengine.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.evengine.core.EventHandlerEngine;
+import com.evengine.core.EventListenerSignature;
+import com.evengine.store.EventPersistenceInterface;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * A heap backed event store, lets the benchmarks exercise the persistent dispatch path
+ * (store, duplicate lookup, mark done) without a MongoDB instance<br/>
+ * Only pending signatures are retained, processed ones are dropped on their final write<br/>
+ * Apart from the claim of the spilled events, the bulk and lease methods are left to the
+ * interface defaults<br/>
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@SuppressWarnings("rawtypes")
+public class InMemoryEventPersistence implements EventPersistenceInterface
+{
+    private Map<String, EventListenerSignature> store = new ConcurrentHashMap<String, EventListenerSignature>();
+
+    public void storeEvent(EventListenerSignature signature)
+    {
+        if(EventHandlerEngine.STATUS_PENDING.equals(signature.getStatus())
+                || EventHandlerEngine.STATUS_PARTIAL.equals(signature.getStatus())
+                || EventHandlerEngine.STATUS_SPILLED.equals(signature.getStatus())) {
+            store.put(signature.getId(), signature);
+        } else {
+            store.remove(signature.getId());
+        }
+    }
+
+    public void removeEvent(EventListenerSignature signature)
+    {
+        store.remove(signature.getId());
+    }
+
+    public boolean findDuplicateEvents(EventListenerSignature signature, int expireTime)
+    {
+        for (EventListenerSignature pending : store.values())
+        {
+            if(pending.getEvent().equals(signature.getEvent())
+                    && pending.getListenerClassName().equals(signature.getListenerClassName())
+                    && pending.getListenerMethodName().equals(signature.getListenerMethodName()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized List<EventListenerSignature> claimEventsByStatus(Class eventClass, String status, String instanceId,
+            int limit, long leaseTimeMs)
+    {
+        List<EventListenerSignature> events = new ArrayList<EventListenerSignature>();
+        for (EventListenerSignature signature : store.values())
+        {
+            if(events.size() < limit && status.equals(signature.getStatus()) && !signature.isLocked()
+                    && eventClass.getCanonicalName().equals(signature.getEventClassName())) {
+                signature.setLocked(true);
+                signature.setLeaseExpiry(new Date(System.currentTimeMillis() + leaseTimeMs));
+                events.add(signature);
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,86 @@
+package com.evengine.benchmark.events;
+
+import java.io.Serializable;
+
+import com.evengine.core.EventHandlerEngine.EventType;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+@SuppressWarnings("serial")
+@EventType(idempotent=true)
+public class BenchIdempotentEvent implements Serializable
+{
+
+    public BenchIdempotentEvent() {}
+
+    /**
+     * @param name
+     * @param sequence
+     */
+    public BenchIdempotentEvent(String name, Long sequence)
+    {
+        super();
+        this.name = name;
+        this.sequence = sequence;
+    }
+
+    private String name;
+
+    private Long sequence;
+
+    @Override
+    public int hashCode()
+    {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ((name == null) ? 0 : name.hashCode());
+        result = prime * result + ((sequence == null) ? 0 : sequence.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        BenchIdempotentEvent other = (BenchIdempotentEvent) obj;
+        if (name == null)
+        {
+            if (other.name != null)
+                return false;
+        }
+        else if (!name.equals(other.name))
+            return false;
+        if (sequence == null)
+        {
+            if (other.sequence != null)
+                return false;
+        }
+        else if (!sequence.equals(other.sequence))
+            return false;
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BenchIdempotentEvent [name=" + name + ", sequence=" + sequence + "]";
+    }
+}
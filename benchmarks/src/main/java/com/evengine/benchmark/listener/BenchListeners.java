@@ -0,0 +1,245 @@
+package com.evengine.benchmark.listener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.evengine.benchmark.events.BenchEvent;
+import com.evengine.benchmark.events.BenchIdempotentEvent;
+import com.evengine.benchmark.events.BenchSequencedEvent;
+import com.evengine.core.EventHandlerEngine.EventListener;
+import com.evengine.core.EventHandlerEngine.EventListenerCallBack;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * Benchmark listeners, each nested listener handles every benchmark event type,
+ * the benchmark registers the first N of them to vary the listener count per event class<br/>
+ * The sequenced callbacks carry distinct priorities so that priority ordering is exercised<br/>
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+public final class BenchListeners
+{
+    public static final int MAX_LISTENERS = 8;
+
+    /**
+     * Number of callbacks completed so far, used by the benchmark to bound the in-flight events
+     */
+    public static final AtomicLong COMPLETED = new AtomicLong();
+
+    private BenchListeners()
+    {
+    }
+
+    /**
+     * Get the comma separated list of listener classes for the event engine package paths
+     * @param count
+     * @return
+     */
+    public static String getPackagePaths(int count)
+    {
+        StringBuilder paths = new StringBuilder();
+        for (int i = 1; i <= count; i++)
+        {
+            if(i > 1) {
+                paths.append(",");
+            }
+            paths.append(BenchListeners.class.getName()).append("$L").append(i);
+        }
+        return paths.toString();
+    }
+
+    private static <T> T completed(T event)
+    {
+        COMPLETED.incrementAndGet();
+        return event;
+    }
+
+    @EventListener
+    public static class L1
+    {
+        @EventListenerCallBack
+        public BenchEvent processEvent(BenchEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack
+        public BenchIdempotentEvent processIdempotentEvent(BenchIdempotentEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack(priority=1)
+        public BenchSequencedEvent processSequencedEvent(BenchSequencedEvent event)
+        {
+            return completed(event);
+        }
+    }
+
+    @EventListener
+    public static class L2
+    {
+        @EventListenerCallBack
+        public BenchEvent processEvent(BenchEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack
+        public BenchIdempotentEvent processIdempotentEvent(BenchIdempotentEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack(priority=2)
+        public BenchSequencedEvent processSequencedEvent(BenchSequencedEvent event)
+        {
+            return completed(event);
+        }
+    }
+
+    @EventListener
+    public static class L3
+    {
+        @EventListenerCallBack
+        public BenchEvent processEvent(BenchEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack
+        public BenchIdempotentEvent processIdempotentEvent(BenchIdempotentEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack(priority=3)
+        public BenchSequencedEvent processSequencedEvent(BenchSequencedEvent event)
+        {
+            return completed(event);
+        }
+    }
+
+    @EventListener
+    public static class L4
+    {
+        @EventListenerCallBack
+        public BenchEvent processEvent(BenchEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack
+        public BenchIdempotentEvent processIdempotentEvent(BenchIdempotentEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack(priority=4)
+        public BenchSequencedEvent processSequencedEvent(BenchSequencedEvent event)
+        {
+            return completed(event);
+        }
+    }
+
+    @EventListener
+    public static class L5
+    {
+        @EventListenerCallBack
+        public BenchEvent processEvent(BenchEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack
+        public BenchIdempotentEvent processIdempotentEvent(BenchIdempotentEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack(priority=5)
+        public BenchSequencedEvent processSequencedEvent(BenchSequencedEvent event)
+        {
+            return completed(event);
+        }
+    }
+
+    @EventListener
+    public static class L6
+    {
+        @EventListenerCallBack
+        public BenchEvent processEvent(BenchEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack
+        public BenchIdempotentEvent processIdempotentEvent(BenchIdempotentEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack(priority=6)
+        public BenchSequencedEvent processSequencedEvent(BenchSequencedEvent event)
+        {
+            return completed(event);
+        }
+    }
+
+    @EventListener
+    public static class L7
+    {
+        @EventListenerCallBack
+        public BenchEvent processEvent(BenchEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack
+        public BenchIdempotentEvent processIdempotentEvent(BenchIdempotentEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack(priority=7)
+        public BenchSequencedEvent processSequencedEvent(BenchSequencedEvent event)
+        {
+            return completed(event);
+        }
+    }
+
+    @EventListener
+    public static class L8
+    {
+        @EventListenerCallBack
+        public BenchEvent processEvent(BenchEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack
+        public BenchIdempotentEvent processIdempotentEvent(BenchIdempotentEvent event)
+        {
+            return completed(event);
+        }
+
+        @EventListenerCallBack(priority=8)
+        public BenchSequencedEvent processSequencedEvent(BenchSequencedEvent event)
+        {
+            return completed(event);
+        }
+    }
+}
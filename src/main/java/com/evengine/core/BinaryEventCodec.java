@@ -0,0 +1,529 @@
+package com.evengine.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * A compact binary event codec, the schema of an event class (its non static, non transient
+ * fields including the inherited ones, ordered by declaring class and name) is resolved once
+ * and cached with method handles for the constructor and field accessors<br/>
+ * Primitives, their wrappers, String, Date, enums and byte[] are written inline, any other
+ * Serializable field type is written with java serialization, HashMap and HashSet values are
+ * written with their entries in a stable order so that equal events encode to the same bytes<br/>
+ * The java serialization of a field is only allowed to rebuild classes of the package of the
+ * field type and of the java.lang, java.util, java.math and java.time packages<br/>
+ * The encoded bytes start with a schema hash, bytes written for a different version of the
+ * event class are rejected on decode
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@SuppressWarnings("rawtypes")
+public class BinaryEventCodec implements EventCodec
+{
+    private static final byte VERSION = 1;
+
+    private static final int BOOLEAN = 0, BYTE = 1, SHORT = 2, CHAR = 3, INT = 4, LONG = 5, FLOAT = 6, DOUBLE = 7;
+
+    private static final int BOXED = 8;
+
+    private static final int STRING = 16, DATE = 17, ENUM = 18, BYTES = 19, SERIALIZED = 20;
+
+    private static final Class[] PRIMITIVES = {boolean.class, byte.class, short.class, char.class, int.class,
+            long.class, float.class, double.class};
+
+    private static final Class[] WRAPPERS = {Boolean.class, Byte.class, Short.class, Character.class, Integer.class,
+            Long.class, Float.class, Double.class};
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final Set<String> SERIALIZED_PACKAGES = new HashSet<String>(Arrays.asList("java.lang", "java.util",
+            "java.math", "java.time"));
+
+    private static final int MAX_SERIALIZED_DEPTH = 32;
+
+    /**
+     * Orders the entries of a HashMap or HashSet by the serialized bytes of their key
+     */
+    private static final Comparator<Object[]> KEY_ORDER = new Comparator<Object[]>() {
+        public int compare(Object[] o1, Object[] o2)
+        {
+            return Arrays.compareUnsigned((byte[])o1[0], (byte[])o2[0]);
+        }
+    };
+
+    private static final class FieldCodec
+    {
+        String name;
+        int kind;
+        Class type;
+        MethodHandle getter;
+        MethodHandle setter;
+        ObjectInputFilter filter;
+    }
+
+    /**
+     * Rejects the classes a serialized field has no business holding, anything outside of the
+     * package of the field type and the java value and collection packages
+     */
+    private static final class FieldFilter implements ObjectInputFilter
+    {
+        private final String fieldPackage;
+
+        FieldFilter(Class type)
+        {
+            while(type.isArray()) {
+                type = type.getComponentType();
+            }
+            this.fieldPackage = type.getPackageName();
+        }
+
+        public Status checkInput(FilterInfo filterInfo)
+        {
+            if(filterInfo.depth() > MAX_SERIALIZED_DEPTH) {
+                return Status.REJECTED;
+            }
+            Class clas = filterInfo.serialClass();
+            if(clas == null) {
+                return Status.UNDECIDED;
+            }
+            while(clas.isArray()) {
+                clas = clas.getComponentType();
+            }
+            if(clas.isPrimitive() || clas.getPackageName().equals(fieldPackage)
+                    || SERIALIZED_PACKAGES.contains(clas.getPackageName())) {
+                return Status.ALLOWED;
+            }
+            return Status.REJECTED;
+        }
+    }
+
+    private static final class Schema
+    {
+        int hash;
+        MethodHandle constructor;
+        FieldCodec[] fields;
+    }
+
+    /**
+     * Hashes the bytes written to it the same way as EventFingerprintTable.hash
+     */
+    private static final class FingerprintStream extends OutputStream
+    {
+        long hash = 0xcbf29ce484222325L;
+
+        public void write(int b)
+        {
+            hash ^= (byte)b;
+            hash *= 0x100000001b3L;
+        }
+    }
+
+    private final Map<Class, Schema> schemas = new ConcurrentHashMap<Class, Schema>();
+
+    public byte[] encode(Object event)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            write(new DataOutputStream(bytes), event);
+            return bytes.toByteArray();
+        }
+        catch (RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Throwable e)
+        {
+            throw new IllegalArgumentException("Could not encode event of type " + event.getClass().getName()
+                    + " " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The 64 bit fingerprint of the encoded event, equal to EventFingerprintTable.hash of the
+     * encoded bytes but without buffering them
+     * @param event
+     * @return
+     */
+    public long fingerprint(Object event)
+    {
+        try
+        {
+            FingerprintStream hash = new FingerprintStream();
+            write(new DataOutputStream(hash), event);
+            return EventFingerprintTable.mix(hash.hash);
+        }
+        catch (RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Throwable e)
+        {
+            throw new IllegalArgumentException("Could not encode event of type " + event.getClass().getName()
+                    + " " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Check that the events of the class can be encoded, the class needs a nullary constructor
+     * and the final types of the fields written with java serialization need to be Serializable,
+     * the values of the other field types are only checked when encoded
+     * @param eventClass
+     * @throws IllegalArgumentException if the events of the class cannot be encoded
+     */
+    public void checkSchema(Class eventClass)
+    {
+        for (FieldCodec field : getSchema(eventClass).fields)
+        {
+            if(field.kind == SERIALIZED && Modifier.isFinal(field.type.getModifiers()) && !field.type.isArray()
+                    && !Serializable.class.isAssignableFrom(field.type)) {
+                throw new IllegalArgumentException("Field " + field.name + " of type " + field.type.getName()
+                        + " is not Serializable");
+            }
+        }
+    }
+
+    private void write(DataOutputStream out, Object event) throws Throwable
+    {
+        Schema schema = getSchema(event.getClass());
+        out.writeByte(VERSION);
+        out.writeInt(schema.hash);
+        for (FieldCodec field : schema.fields)
+        {
+            writeValue(out, field, (Object)field.getter.invokeExact(event));
+        }
+        out.close();
+    }
+
+    public Object decode(byte[] data, Class eventClass)
+    {
+        Schema schema = getSchema(eventClass);
+        try
+        {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if(in.readByte() != VERSION || in.readInt() != schema.hash) {
+                throw new IllegalArgumentException("The stored event does not match the current schema of "
+                        + eventClass.getName());
+            }
+            Object event = (Object)schema.constructor.invokeExact();
+            for (FieldCodec field : schema.fields)
+            {
+                field.setter.invokeExact(event, readValue(in, field));
+            }
+            return event;
+        }
+        catch (RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Throwable e)
+        {
+            throw new IllegalArgumentException("Could not decode event of type " + eventClass.getName()
+                    + " " + e.getMessage(), e);
+        }
+    }
+
+    private Schema getSchema(Class eventClass)
+    {
+        Schema schema = schemas.get(eventClass);
+        if(schema == null)
+        {
+            schema = createSchema(eventClass);
+            schemas.put(eventClass, schema);
+        }
+        return schema;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Schema createSchema(Class eventClass)
+    {
+        List<Class> hierarchy = new ArrayList<Class>();
+        for (Class clas = eventClass; clas != null && clas != Object.class; clas = clas.getSuperclass())
+        {
+            hierarchy.add(0, clas);
+        }
+
+        try
+        {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            List<FieldCodec> fields = new ArrayList<FieldCodec>();
+            StringBuilder signature = new StringBuilder(eventClass.getName());
+            for (Class clas : hierarchy)
+            {
+                Field[] declared = clas.getDeclaredFields();
+                Arrays.sort(declared, new Comparator<Field>() {
+                    public int compare(Field o1, Field o2)
+                    {
+                        return o1.getName().compareTo(o2.getName());
+                    }
+                });
+                for (Field field : declared)
+                {
+                    if(Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    FieldCodec codec = new FieldCodec();
+                    codec.name = field.getName();
+                    codec.type = field.getType();
+                    codec.kind = getKind(field.getType());
+                    codec.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+                    codec.setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+                    if(codec.kind == SERIALIZED) {
+                        codec.filter = new FieldFilter(codec.type);
+                    }
+                    fields.add(codec);
+                    signature.append(',').append(codec.name).append(':').append(codec.type.getName());
+                }
+            }
+
+            Constructor constructor = eventClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+
+            Schema schema = new Schema();
+            schema.hash = signature.toString().hashCode();
+            schema.constructor = lookup.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+            schema.fields = fields.toArray(new FieldCodec[fields.size()]);
+            return schema;
+        }
+        catch (NoSuchMethodException e)
+        {
+            throw new IllegalArgumentException("No nullary constructor found for event of type " + eventClass.getName());
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new IllegalArgumentException("Could not access the fields of event of type " + eventClass.getName()
+                    + " " + e.getMessage(), e);
+        }
+    }
+
+    private static int getKind(Class type)
+    {
+        for (int i = 0; i < PRIMITIVES.length; i++)
+        {
+            if(PRIMITIVES[i] == type) {
+                return i;
+            }
+            if(WRAPPERS[i] == type) {
+                return BOXED + i;
+            }
+        }
+        if(type == String.class) {
+            return STRING;
+        } else if(type == Date.class) {
+            return DATE;
+        } else if(type.isEnum()) {
+            return ENUM;
+        } else if(type == byte[].class) {
+            return BYTES;
+        }
+        return SERIALIZED;
+    }
+
+    private static void writeValue(DataOutputStream out, FieldCodec field, Object value) throws IOException
+    {
+        int kind = field.kind;
+        if(kind >= BOXED)
+        {
+            if(value == null)
+            {
+                out.writeBoolean(false);
+                return;
+            }
+            out.writeBoolean(true);
+            kind = kind < STRING ? kind - BOXED : kind;
+        }
+        switch (kind)
+        {
+            case BOOLEAN: out.writeBoolean((Boolean)value); break;
+            case BYTE: out.writeByte((Byte)value); break;
+            case SHORT: out.writeShort((Short)value); break;
+            case CHAR: out.writeChar((Character)value); break;
+            case INT: out.writeInt((Integer)value); break;
+            case LONG: out.writeLong((Long)value); break;
+            case FLOAT: out.writeFloat((Float)value); break;
+            case DOUBLE: out.writeDouble((Double)value); break;
+            case STRING: writeBytes(out, ((String)value).getBytes("UTF-8")); break;
+            case DATE: out.writeLong(((Date)value).getTime()); break;
+            case ENUM: writeBytes(out, ((Enum)value).name().getBytes("UTF-8")); break;
+            case BYTES: writeBytes(out, (byte[])value); break;
+            default:
+                if(!(value instanceof Serializable)) {
+                    throw new IllegalArgumentException("Field " + field.name + " of type " + value.getClass().getName()
+                            + " is not Serializable");
+                }
+                writeBytes(out, serialize(value));
+                break;
+        }
+    }
+
+    private static byte[] serialize(Object value) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bytes);
+        oout.writeObject(canonical(value));
+        oout.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A copy of a HashMap or HashSet with its entries ordered by the serialized bytes of their
+     * key, the java serialization writes these in bucket order and with their capacity, so
+     * equal contents could be written as different bytes, the map values are copied the same way
+     * @param value
+     * @return
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    private static Object canonical(Object value) throws IOException
+    {
+        Class clas = value!=null?value.getClass():null;
+        if(clas != HashMap.class && clas != HashSet.class) {
+            return value;
+        }
+        List<Object[]> entries = new ArrayList<Object[]>();
+        if(clas == HashMap.class)
+        {
+            for (Object object : ((Map)value).entrySet())
+            {
+                Map.Entry entry = (Map.Entry)object;
+                Object key = canonical(entry.getKey());
+                entries.add(new Object[]{serialize(key), key, canonical(entry.getValue())});
+            }
+        }
+        else
+        {
+            for (Object element : (Set)value)
+            {
+                Object key = canonical(element);
+                entries.add(new Object[]{serialize(key), key});
+            }
+        }
+        Collections.sort(entries, KEY_ORDER);
+        if(clas == HashMap.class)
+        {
+            Map map = new LinkedHashMap(entries.size() * 4 / 3 + 1);
+            for (Object[] entry : entries)
+            {
+                map.put(entry[1], entry[2]);
+            }
+            return map;
+        }
+        Set set = new LinkedHashSet(entries.size() * 4 / 3 + 1);
+        for (Object[] entry : entries)
+        {
+            set.add(entry[1]);
+        }
+        return set;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object readValue(DataInputStream in, FieldCodec field) throws IOException, ClassNotFoundException
+    {
+        int kind = field.kind;
+        if(kind >= BOXED)
+        {
+            if(!in.readBoolean()) {
+                return null;
+            }
+            kind = kind < STRING ? kind - BOXED : kind;
+        }
+        switch (kind)
+        {
+            case BOOLEAN: return in.readBoolean();
+            case BYTE: return in.readByte();
+            case SHORT: return in.readShort();
+            case CHAR: return in.readChar();
+            case INT: return in.readInt();
+            case LONG: return in.readLong();
+            case FLOAT: return in.readFloat();
+            case DOUBLE: return in.readDouble();
+            case STRING: return new String(readBytes(in), "UTF-8");
+            case DATE: return new Date(in.readLong());
+            case ENUM: return Enum.valueOf(field.type, new String(readBytes(in), "UTF-8"));
+            case BYTES: return readBytes(in);
+            default:
+                ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(readBytes(in))) {
+                    @Override
+                    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+                    {
+                        try
+                        {
+                            return Class.forName(desc.getName(), false, Thread.currentThread().getContextClassLoader());
+                        }
+                        catch (ClassNotFoundException e)
+                        {
+                            return super.resolveClass(desc);
+                        }
+                    }
+                };
+                try
+                {
+                    oin.setObjectInputFilter(field.filter);
+                    return oin.readObject();
+                }
+                finally
+                {
+                    oin.close();
+                }
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException
+    {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
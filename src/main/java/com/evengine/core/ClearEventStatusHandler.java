@@ -2,7 +2,11 @@ package com.evengine.core;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import org.apache.log4j.Logger;
 
 /*
@@ -20,26 +24,25 @@ import org.apache.log4j.Logger;
     See the License for the specific language governing permissions and
     limitations under the License.
 */
+/**
+ * Collects the outcome of a pushed event, the dispatch future completes with the list of
+ * listener futures, which in turn complete once each listener callback returns<br/>
+ * The blocking accessors are built on top of the composed future
+ * @author Sumeet Chhetri<br/>
+ *
+ */
 public class ClearEventStatusHandler
 {
     private static Logger logger = Logger.getLogger(ClearEventStatusHandler.class.getName());
     
-    @SuppressWarnings("rawtypes")
-    Future<List<Future>> futureoffs;
+    CompletableFuture<List<CompletableFuture<Object>>> futureoffs;
 
     @SuppressWarnings("rawtypes")
     public List<Future> getFutures()
     {
-        while(!futureoffs.isDone()) {
-            try {
-                Thread.sleep(1);
-            } catch (InterruptedException e) {
-                logger.error(e.getMessage());
-            }
-        }
         List<Future> futures = new ArrayList<Future>();
         try {
-            futures = futureoffs.get();
+            futures.addAll(futureoffs.join());
         } catch (Exception e) {
             logger.error(e.getMessage());
         }
@@ -48,45 +51,43 @@ public class ClearEventStatusHandler
     
     public List<Object> getResults()
     {
-        while(!futureoffs.isDone()) {
-            try {
-                Thread.sleep(1);
-            } catch (InterruptedException e) {
-                logger.error(e.getMessage());
-            }
-        }
-        @SuppressWarnings("rawtypes")
-        List<Future> futures = new ArrayList<Future>();
-        try {
-            futures = futureoffs.get();
-        } catch (Exception e) {
-            logger.error(e.getMessage());
-        }
-        List<Object> results = new ArrayList<Object>();
-        boolean done = false;
-        while(!done)
-        {
-            done = true;
-            try
+        return getResultsAsync().join();
+    }
+
+    /**
+     * Get a future that completes with the results of all the listener callbacks,
+     * failed callbacks are logged and skipped
+     * @return
+     */
+    public CompletableFuture<List<Object>> getResultsAsync()
+    {
+        return futureoffs.exceptionally(new Function<Throwable, List<CompletableFuture<Object>>>() {
+            public List<CompletableFuture<Object>> apply(Throwable e)
             {
-                for (int i=0;i<futures.size();i++)
-                {
-                    done &= futures.get(i).isDone();
-                }
-                Thread.sleep(1);
-            } catch (Exception e) {
                 logger.error(e.getMessage());
+                return new ArrayList<CompletableFuture<Object>>();
             }
-        }
-        for (int i=0;i<futures.size();i++)
-        {
-            try
+        }).thenCompose(new Function<List<CompletableFuture<Object>>, CompletionStage<List<Object>>>() {
+            public CompletionStage<List<Object>> apply(final List<CompletableFuture<Object>> futures)
             {
-                results.add(futures.get(i).get());
-            } catch (Exception e) {
-                logger.error(e.getMessage());
+                return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+                        .handle(new BiFunction<Void, Throwable, List<Object>>() {
+                            public List<Object> apply(Void done, Throwable error)
+                            {
+                                List<Object> results = new ArrayList<Object>();
+                                for (int i=0;i<futures.size();i++)
+                                {
+                                    try
+                                    {
+                                        results.add(futures.get(i).join());
+                                    } catch (Exception e) {
+                                        logger.error(e.getMessage());
+                                    }
+                                }
+                                return results;
+                            }
+                        });
             }
-        }
-        return results;
+        });
     }
 }
@@ -0,0 +1,144 @@
+package com.evengine.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * A time windowed Bloom filter of event fingerprints in front of the event store duplicate lookup,
+ * only a probable hit needs to go to the store<br/>
+ * Two generations are kept and rotated every window, a fingerprint added within the last window
+ * is always in one of them. With no window the filter is never rotated and once it has seen more
+ * than its capacity it reports every fingerprint as a probable hit
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+final class EventBloomFilter
+{
+    private static final class Generation
+    {
+        final AtomicLongArray bits;
+        final AtomicInteger count = new AtomicInteger();
+        final long start;
+
+        Generation(int words, long start)
+        {
+            this.bits = new AtomicLongArray(words);
+            this.start = start;
+        }
+    }
+
+    private final int capacity;
+
+    private final int numBits;
+
+    private final int numHashes;
+
+    private final long windowMs;
+
+    private volatile Generation current;
+
+    private volatile Generation previous;
+
+    /**
+     * @param capacity the expected number of fingerprints added per window
+     * @param falsePositiveRate
+     * @param windowMs the rotation window, 0 to never rotate
+     */
+    EventBloomFilter(int capacity, double falsePositiveRate, long windowMs)
+    {
+        long bits = (long)Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.capacity = capacity;
+        this.numBits = (int)Math.min(Math.max(bits, 64), Integer.MAX_VALUE - 63);
+        this.numHashes = Math.max(1, (int)Math.round((double)numBits / capacity * Math.log(2)));
+        this.windowMs = windowMs;
+        long now = System.currentTimeMillis();
+        this.current = new Generation((numBits + 63) / 64, now);
+        this.previous = new Generation((numBits + 63) / 64, now);
+    }
+
+    void add(long fingerprint)
+    {
+        Generation generation = rotate();
+        int h1 = (int)fingerprint;
+        int h2 = (int)(fingerprint >>> 32);
+        for (int i = 0; i < numHashes; i++)
+        {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+            long mask = 1L << bit;
+            int word = bit >>> 6;
+            long value = generation.bits.get(word);
+            while((value & mask) == 0 && !generation.bits.compareAndSet(word, value, value | mask))
+            {
+                value = generation.bits.get(word);
+            }
+        }
+        generation.count.incrementAndGet();
+    }
+
+    boolean mightContain(long fingerprint)
+    {
+        Generation generation = rotate();
+        return contains(generation, fingerprint) || contains(previous, fingerprint);
+    }
+
+    private boolean contains(Generation generation, long fingerprint)
+    {
+        if(generation.count.get() > capacity && windowMs <= 0) {
+            return true;
+        }
+        int h1 = (int)fingerprint;
+        int h2 = (int)(fingerprint >>> 32);
+        for (int i = 0; i < numHashes; i++)
+        {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+            if((generation.bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Start a new generation once the current one is a window old, the previous generation
+     * is dropped, or both if no fingerprint was seen for two windows
+     * @return the current generation
+     */
+    private Generation rotate()
+    {
+        Generation generation = current;
+        if(windowMs <= 0) {
+            return generation;
+        }
+        long now = System.currentTimeMillis();
+        if(now - generation.start < windowMs) {
+            return generation;
+        }
+        synchronized (this)
+        {
+            generation = current;
+            if(now - generation.start >= windowMs)
+            {
+                int words = generation.bits.length();
+                previous = now - generation.start < 2 * windowMs ? generation : new Generation(words, now);
+                generation = new Generation(words, now);
+                current = generation;
+            }
+            return generation;
+        }
+    }
+}
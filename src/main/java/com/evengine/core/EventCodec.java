@@ -0,0 +1,30 @@
+package com.evengine.core;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * Converts events to and from the bytes stored with the event listener signature in the
+ * event store, the encoding needs to be deterministic as duplicate events are looked up
+ * by their bytes
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@SuppressWarnings("rawtypes")
+public interface EventCodec
+{
+    public byte[] encode(Object event);
+    public Object decode(byte[] data, Class eventClass);
+}
@@ -1,5 +1,7 @@
 package com.evengine.core;
 
+import java.util.Collection;
+
 import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.data.mapping.context.MappingContext;
 import org.springframework.data.mongodb.MongoDbFactory;
@@ -85,4 +87,14 @@ public class EventEngineMongoTemplate extends MongoTemplate
     public void save(Object objectToSave, String collectionName) {
         doSave(collectionName, objectToSave, this.mongoConverter);
     }
+
+    @Override
+    public void insert(Collection<? extends Object> batchToSave, Class<?> entityClass) {
+        insert(batchToSave, determineCollectionName(entityClass));
+    }
+
+    @Override
+    public void insert(Collection<? extends Object> batchToSave, String collectionName) {
+        doInsertBatch(collectionName, batchToSave, this.mongoConverter);
+    }
 }
@@ -0,0 +1,205 @@
+package com.evengine.core;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * The pending event store of the non-persistent mode, counts the pending callbacks per 64 bit
+ * fingerprint of (event, listener) in striped open addressing tables of primitive arrays, an
+ * entry costs 12 bytes instead of a full event listener signature<br/>
+ * Fingerprint 0 marks a free slot and is never stored
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+final class EventFingerprintTable
+{
+    private static final int STRIPE_BITS = 6;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final class Stripe
+    {
+        long[] keys = new long[INITIAL_CAPACITY];
+        int[] counts = new int[INITIAL_CAPACITY];
+        int size;
+    }
+
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+
+    EventFingerprintTable()
+    {
+        for (int i = 0; i < stripes.length; i++)
+        {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Count a pending callback for the fingerprint
+     * @param fingerprint
+     */
+    void add(long fingerprint)
+    {
+        Stripe stripe = stripes[(int)(fingerprint >>> (64 - STRIPE_BITS))];
+        synchronized (stripe)
+        {
+            int slot = find(stripe.keys, fingerprint);
+            if(stripe.keys[slot] == fingerprint)
+            {
+                stripe.counts[slot]++;
+                return;
+            }
+            stripe.keys[slot] = fingerprint;
+            stripe.counts[slot] = 1;
+            if(++stripe.size * 2 > stripe.keys.length) {
+                resize(stripe);
+            }
+        }
+    }
+
+    /**
+     * Check whether a callback is pending for the fingerprint
+     * @param fingerprint
+     * @return
+     */
+    boolean contains(long fingerprint)
+    {
+        Stripe stripe = stripes[(int)(fingerprint >>> (64 - STRIPE_BITS))];
+        synchronized (stripe)
+        {
+            return stripe.keys[find(stripe.keys, fingerprint)] == fingerprint;
+        }
+    }
+
+    /**
+     * Uncount a pending callback for the fingerprint
+     * @param fingerprint
+     */
+    void remove(long fingerprint)
+    {
+        Stripe stripe = stripes[(int)(fingerprint >>> (64 - STRIPE_BITS))];
+        synchronized (stripe)
+        {
+            long[] keys = stripe.keys;
+            int[] counts = stripe.counts;
+            int slot = find(keys, fingerprint);
+            if(keys[slot] != fingerprint) {
+                return;
+            }
+            if(--counts[slot] > 0) {
+                return;
+            }
+            stripe.size--;
+            int mask = keys.length - 1;
+            int free = slot;
+            keys[free] = 0;
+            for (int next = (free + 1) & mask; keys[next] != 0; next = (next + 1) & mask)
+            {
+                int home = (int)keys[next] & mask;
+                if(((next - home) & mask) >= ((next - free) & mask))
+                {
+                    keys[free] = keys[next];
+                    counts[free] = counts[next];
+                    keys[next] = 0;
+                    counts[next] = 0;
+                    free = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of distinct pending fingerprints
+     * @return
+     */
+    int size()
+    {
+        int size = 0;
+        for (Stripe stripe : stripes)
+        {
+            synchronized (stripe)
+            {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    private static int find(long[] keys, long fingerprint)
+    {
+        int mask = keys.length - 1;
+        int slot = (int)fingerprint & mask;
+        while(keys[slot] != 0 && keys[slot] != fingerprint)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static void resize(Stripe stripe)
+    {
+        long[] keys = stripe.keys;
+        int[] counts = stripe.counts;
+        stripe.keys = new long[keys.length * 2];
+        stripe.counts = new int[keys.length * 2];
+        for (int i = 0; i < keys.length; i++)
+        {
+            if(keys[i] != 0)
+            {
+                int slot = find(stripe.keys, keys[i]);
+                stripe.keys[slot] = keys[i];
+                stripe.counts[slot] = counts[i];
+            }
+        }
+    }
+
+    /**
+     * 64 bit fingerprint of the encoded event bytes
+     * @param data
+     * @return
+     */
+    static long hash(byte[] data)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : data)
+        {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Combine the event and listener fingerprints, never returns 0
+     * @param eventFingerprint
+     * @param listenerFingerprint
+     * @return
+     */
+    static long combine(long eventFingerprint, long listenerFingerprint)
+    {
+        long fingerprint = mix(eventFingerprint ^ (listenerFingerprint * 0x9e3779b97f4a7c15L));
+        return fingerprint != 0 ? fingerprint : 1;
+    }
+
+    static long mix(long hash)
+    {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -7,23 +7,47 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import org.apache.log4j.Logger;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -74,6 +98,8 @@ public class EventHandlerEngine
 
     public static final String STATUS_PARTIAL = "PARTIAL";
 
+    public static final String STATUS_SPILLED = "SPILLED";
+
     public static final String ID = "_id";
 
     public static final String EVENT = "event";
@@ -96,8 +122,26 @@ public class EventHandlerEngine
 
     public static final String CAN_EXPIRE = "canExpire";
 
+    public static final String PROCESSED_DATE = "processedDate";
+
+    public static final String ERROR = "error";
+
+    public static final String EVENT_DATA = "eventData";
+
+    public static final String EVENT_HASH = "eventHash";
+
+    public static final String LEASE_EXPIRY = "leaseExpiry";
+
+    public static final String LEASE_TOKEN = "leaseToken";
+
+    public static final String LEASE_OWNER = "leaseOwner";
+
     public static final String UNDER_SCORE = "_";
 
+    /**
+     * The id of this instance, random by default, configure a stable id per node so that a restarted
+     * node releases the leases of its previous run at startup and recovers its pending events at once
+     */
     private String instanceId = "INSTANCE_" + UUID.randomUUID();
 
     @Autowired
@@ -115,12 +159,33 @@ public class EventHandlerEngine
         this.ePersistenceInterface = ePersistenceInterface;
     }
 
+    /**
+     * What to do with a listener callback when the executor queue is full
+     *
+     * @author Sumeet Chhetri<br/>
+     * BLOCK - block the dispatching thread until the queue has room<br/>
+     * DROP_OLDEST - fail the oldest queued callback and queue the new one<br/>
+     * DROP_NEWEST - fail the new callback<br/>
+     * CALLER_RUNS - run the callback on the dispatching thread<br/>
+     * SPILL - mark the callback as SPILLED in the persistence store, it is dispatched again
+     *         by the poll handler once the queues drain (CALLER_RUNS for non-persistent engines)<br/>
+     *
+     */
+    public enum RejectionPolicy
+    {
+        BLOCK, DROP_OLDEST, DROP_NEWEST, CALLER_RUNS, SPILL
+    }
+
     /**
      * The EventListener Marker to register Event Listeners
      *
      * @author Sumeet Chhetri<br/>
      * threadSafe - is the event Listener threadsafe<br/>
      * poolSize - the event listener thread pool size<br/>
+     * queueCapacity - the event listener thread pool queue capacity, 0 for an unbounded queue<br/>
+     * rejectionPolicy - what to do when the event listener thread pool queue is full<br/>
+     * virtualThreads - run the callbacks on a virtual thread per task, for listeners doing blocking I/O,
+     *                  poolSize and queueCapacity only apply on runtimes without virtual threads<br/>
      *
      */
     @Target(ElementType.TYPE)
@@ -129,6 +194,9 @@ public class EventHandlerEngine
     {
         boolean threadSafe() default true;
         int poolSize() default 0;
+        int queueCapacity() default 0;
+        RejectionPolicy rejectionPolicy() default RejectionPolicy.CALLER_RUNS;
+        boolean virtualThreads() default false;
     }
 
     /**
@@ -137,7 +205,12 @@ public class EventHandlerEngine
      * @author Sumeet Chhetri<br/>
      * addResponseEvent - add the response of the callback back to the event engine<br/>
      * priority - define listener callback priority<br/>
-     * delayNextPriorityListener - delay the next priority listener callback by ms<br/>
+     * delayNextPriorityListener - delay the next priority listener callback by ms, the delay runs on
+     *                             the engine timer and does not hold a thread<br/>
+     * batchSize - for a callback accepting a List or Collection of events, the maximum number of events
+     *             per callback invocation<br/>
+     * maxBatchDelayMs - for a callback accepting a List or Collection of events, the maximum time the first
+     *                   event of a batch waits for the batch to fill up<br/>
      *
      */
     @Target(ElementType.METHOD)
@@ -147,6 +220,8 @@ public class EventHandlerEngine
         boolean addResponseEvent() default false;
         int priority() default 0;
         long delayNextPriorityListener() default 0;
+        int batchSize() default 100;
+        long maxBatchDelayMs() default 100;
     }
 
     /**
@@ -154,7 +229,10 @@ public class EventHandlerEngine
      *
      * @author Sumeet Chhetri<br/>
      * idempotent - is the event idempotent (pending duplicates not allowed)<br/>
-     * sequenceListenerPriority - do we want to sequence the callback execution<br/>
+     * sequenceListenerPriority - do we want to sequence the callback execution, per key if the event type
+     *                            has a PartitionKey<br/>
+     * awaitListenerPriority - call the listeners of a lower priority only once the callbacks of the higher
+     *                         priority are done<br/>
      * expireTime - when does the pending event expire<br/>
      * distributed - is the event distributed, participating nodes will all get this event and process it,
      *               the expiryTime is mandatory in this case<br/>
@@ -168,54 +246,183 @@ public class EventHandlerEngine
     {
         boolean idempotent() default false;
         boolean sequenceListenerPriority() default false;
+        boolean awaitListenerPriority() default false;
         int expireTime() default 0;
         boolean distributed() default false;
         boolean processOnce() default false;
     }
 
+    /**
+     * The partition key of an Event Type, a field or a no argument method of the event<br/>
+     * The events of a sequenceListenerPriority type are then sequenced per key, the events with
+     * the same key run in order on the same lane and the events with different keys run in
+     * parallel on partitionLanes lanes
+     *
+     * @author Sumeet Chhetri<br/>
+     *
+     */
+    @Target({ElementType.FIELD, ElementType.METHOD})
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface PartitionKey
+    {
+    }
+
+    /**
+     * How a pushed event is fanned out to its listeners
+     *
+     * @author Sumeet Chhetri<br/>
+     * POOLED - the listener fan-out is handed off to the internal dispatch thread pool<br/>
+     * INLINE - the listener fan-out happens on the pushing thread, falls back to POOLED for
+     *          persistent engines, the priority tiers after a delay or an awaited tier continue
+     *          on the internal executors<br/>
+     *
+     */
+    public enum DispatchMode
+    {
+        POOLED, INLINE
+    }
+
+    /**
+     * What runs the listener callbacks
+     *
+     * @author Sumeet Chhetri<br/>
+     * THREAD_POOL - fixed thread pools (global, per listener poolSize, per sequenced event type)<br/>
+     * RING_BUFFER - a preallocated ring buffer with a batching consumer thread per listener
+     *               (per event type for sequenced event types), see EventRingBuffer<br/>
+     * VIRTUAL_THREAD - a virtual thread per callback and per dispatch, blocking callbacks only
+     *                  park a virtual thread (needs a Java 21 runtime, falls back to the bounded
+     *                  fixed thread pools of THREAD_POOL otherwise)<br/>
+     * FORK_JOIN - a single work-stealing ForkJoinPool of poolSize workers (the available processors
+     *             if not set) runs both the dispatch and the callbacks, the fan-out of an event pushed
+     *             from a worker (an addResponseEvent chain) runs on that worker and its callbacks are
+     *             forked onto the worker's own queue for idle workers to steal, meant for CPU bound
+     *             listeners, the queueCapacity and rejectionPolicy do not apply to it, in persistent mode
+     *             the dispatch, which blocks on the event store, runs on a separate internal pool and
+     *             the status writes of the callbacks let the pool start a spare worker meanwhile<br/>
+     *
+     */
+    public enum ExecutorMode
+    {
+        THREAD_POOL, RING_BUFFER, VIRTUAL_THREAD, FORK_JOIN
+    }
+
     /**
      * The internal representation of an Event Listener Object
      * @author Sumeet Chhetri<br/>
      *
      */
-    private static class EventListenerObject
+    static class EventListenerObject
     {
         Object eventListenerInstance;
         Class eventListenerClass;
         Method eventCallBackMethod;
+        String listenerClassName;
+        String listenerMethodName;
+        /**
+         * 64 bit fingerprint of the listener class and callback names, combined with the event
+         * fingerprint for the pending event table of the non-persistent mode
+         */
+        long listenerFingerprint;
+        /**
+         * The callback compiled to (listener, event) -> result at registration,
+         * avoids the per call argument array and access checks of Method.invoke
+         */
+        MethodHandle eventCallBackInvoker;
         boolean isThreadSafe;
         boolean addResponseEvent;
         ExecutorService eventListenerExecutors = null;
+        EventRingBuffer eventListenerRing = null;
+        EventListenerBatch eventListenerBatch = null;
         Integer priority;
         Long delayNextPriorityListener;
+        /**
+         * Set once the listener is unregistered, in-flight dispatches holding an older listener
+         * snapshot skip it
+         */
+        volatile boolean unregistered;
+        /**
+         * The dispatches handing a callback to the listener executors right now, the executors of
+         * an unregistered listener are only shutdown once none is left
+         */
+        final AtomicInteger dispatching = new AtomicInteger();
+
+        /**
+         * Start handing a callback to the listener
+         * @return false if the listener is unregistered, the callback is then skipped
+         */
+        boolean enterDispatch()
+        {
+            dispatching.incrementAndGet();
+            if(unregistered) {
+                dispatching.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        void exitDispatch()
+        {
+            dispatching.decrementAndGet();
+        }
         @Override
         public String toString()
         {
             return "EventListener [eventListenerClass=" + eventListenerClass + ", eventCallBackMethod="
                     + eventCallBackMethod + ", isThreadSafe=" + isThreadSafe + ", addResponseEvent=" + addResponseEvent
-                    + ", priority=" + priority + ", delayNextPriorityListener=" + delayNextPriorityListener + "]";
+                    + ", priority=" + priority + ", delayNextPriorityListener=" + delayNextPriorityListener
+                    + ", batched=" + (eventListenerBatch != null) + "]";
         }
 
     }
 
     /**
-     * The event properties object
+     * The event properties object, the per event type descriptor built once at registration
+     * with the names, field accessors and listeners used on the dispatch and recovery paths
      * @author Sumeet Chhetri<br/>
      *
      */
     private static class EventProperties
     {
+        String eventClassName;
+        String eventCanonicalName;
+        volatile EventListenerObject[] eventListeners = new EventListenerObject[0];
+        MethodHandle eventConstructor;
+        String[] fieldNames = new String[0];
+        MethodHandle[] fieldSetters = new MethodHandle[0];
         boolean idempotent;
         boolean sequenceListenerPriority;
         ExecutorService eventListenerExecutors = null;
+        EventRingBuffer eventListenerRing = null;
         int expireTime;
         boolean isDistributed;
         boolean isProcessOnce;
+        boolean awaitListenerPriority;
+        /**
+         * Reads the partition key of a sequenced event type, its events are then sequenced per key
+         * on the partition lanes instead of on a single executor or ring
+         */
+        MethodHandle partitionKey;
+        ExecutorService[] partitionExecutors;
+        EventRingBuffer[] partitionRings;
+        /**
+         * Filters the store duplicate lookups of idempotent events, null if not enabled
+         */
+        EventBloomFilter duplicateFilter;
+        /**
+         * The codec cannot encode the events of the type, found when the type is registered, its
+         * events are stored as is and not fingerprinted
+         */
+        boolean unencodable;
+        /**
+         * An event of the type failed to encode, only the first failure is logged
+         */
+        volatile boolean encodeFailed;
         @Override
         public String toString()
         {
             return "EventProperties [idempotent=" + idempotent + ", sequenceListenerPriority="
-                    + sequenceListenerPriority + ", expireTime=" + expireTime + ", isDistributed=" + isDistributed
+                    + sequenceListenerPriority + ", awaitListenerPriority=" + awaitListenerPriority
+                    + ", expireTime=" + expireTime + ", isDistributed=" + isDistributed
                     + ", isProcessOnce=" + isProcessOnce + "]";
         }
     }
@@ -235,545 +442,2378 @@ public class EventHandlerEngine
 
     private boolean persistent;
 
-    public boolean isPersistent()
+    private DispatchMode dispatchMode = DispatchMode.POOLED;
+
+    /**
+     * The Global Event thread pool queue capacity, applies to the global, internal dispatch and
+     * sequenced event type pools, 0 for unbounded queues
+     */
+    private int queueCapacity;
+
+    /**
+     * What to do when the Global Event thread pool queue is full, the internal dispatch
+     * pool always runs the dispatch on the pushing thread when full
+     */
+    private RejectionPolicy rejectionPolicy = RejectionPolicy.CALLER_RUNS;
+
+    public int getQueueCapacity()
     {
-        return persistent;
+        return queueCapacity;
     }
 
-    public void setPersistent(boolean persistent)
+    public void setQueueCapacity(int queueCapacity)
     {
-        this.persistent = persistent;
+        this.queueCapacity = queueCapacity;
     }
 
-    public int getPoolSize()
+    public RejectionPolicy getRejectionPolicy()
     {
-        return poolSize;
+        return rejectionPolicy;
     }
 
-    public void setPoolSize(int poolSize)
+    public void setRejectionPolicy(RejectionPolicy rejectionPolicy)
     {
-        this.poolSize = poolSize;
+        this.rejectionPolicy = rejectionPolicy;
     }
 
-    public String getPackagePaths()
+    private ExecutorMode executorMode = ExecutorMode.THREAD_POOL;
+
+    /**
+     * The ring size (slots per listener) in RING_BUFFER executor mode
+     */
+    private int ringBufferSize = 1024;
+
+    private EventRingBuffer.WaitStrategy waitStrategy = EventRingBuffer.WaitStrategy.PARK;
+
+    public ExecutorMode getExecutorMode()
     {
-        return packagePaths;
+        return executorMode;
     }
 
-    public void setPackagePaths(String packagePaths)
+    public void setExecutorMode(ExecutorMode executorMode)
     {
-        this.packagePaths = packagePaths;
+        this.executorMode = executorMode;
     }
 
-    public String getInstanceId()
+    public int getRingBufferSize()
     {
-        return instanceId;
+        return ringBufferSize;
     }
 
-    public void setInstanceId(String instanceId)
+    public void setRingBufferSize(int ringBufferSize)
     {
-        this.instanceId = instanceId;
+        this.ringBufferSize = ringBufferSize;
     }
 
-    private boolean primary = true;
-
-    public boolean isPrimary()
+    public EventRingBuffer.WaitStrategy getWaitStrategy()
     {
-        return primary;
+        return waitStrategy;
     }
 
-    public void setPrimary(boolean primary)
+    public void setWaitStrategy(EventRingBuffer.WaitStrategy waitStrategy)
     {
-        this.primary = primary;
+        this.waitStrategy = waitStrategy;
     }
 
-    private Map<Class, List<EventListenerObject>> eventListenerMap = new ConcurrentHashMap<Class, List<EventListenerObject>>();
-    private Map<Class, EventProperties> eventPropertiesMap = new ConcurrentHashMap<Class, EventProperties>();
-    protected Map<String, Integer> eventExpireClassMap = new ConcurrentHashMap<String, Integer>();
-
-    private Map<EventListenerSignature, Boolean> eventMap;
-
-    private ExecutorService executors = null;
-
-    private ExecutorService internalExecutors = null;
-
-    private EventPollExpireHandler distributedEventHandler = null;
+    /**
+     * The number of single threaded lanes (executors or rings) a sequenced event type with a
+     * PartitionKey is spread over, an executor lane runs both the fan-out and the callbacks of
+     * its events, the events of a ring lane are fanned out on the pushing thread
+     */
+    private int partitionLanes = Runtime.getRuntime().availableProcessors();
 
-    protected void expireEvents(Map<String, Integer> eventExpireMap)
+    public int getPartitionLanes()
     {
-        if(isPersistent()) {
-            ePersistenceInterface.expireEvents(eventExpireMap);
-        }
+        return partitionLanes;
     }
 
-    /**
-     * Find all possible classes for a given package name
-     *
-     * @param directory
-     * @param packageName
-     * @return
-     * @throws ClassNotFoundException
-     */
-    private static List<Class> findClasses(File directory, String packageName)
-            throws ClassNotFoundException {
-        List<Class> classes = new ArrayList<Class>();
-        if (!directory.exists()) {
-            return classes;
-        }
-        File[] files = directory.listFiles();
-        for (File file : files) {
-            if (file.isDirectory()) {
-                assert !file.getName().contains(".");
-                classes.addAll(findClasses(file, packageName + "." + file.getName()));
-            } else if (file.getName().endsWith(".class")) {
-                Class claz = Thread.currentThread().getContextClassLoader()
-                        .loadClass(packageName + '.' + file.getName().substring(0, file.getName().length() - 6));
-                if (claz != null) {
-                    classes.add(claz);
-                } else {
-                    classes.add(Class.forName(packageName + '.' + file.getName().substring(0, file.getName().length() - 6)));
-                }
-            }
-        }
-        return classes;
+    public void setPartitionLanes(int partitionLanes)
+    {
+        this.partitionLanes = partitionLanes;
     }
 
     /**
-     * Find all possible classes for a given package name
-     *
-     * @param packageName
-     * @return
-     * @throws ClassNotFoundException
-     * @throws IOException
+     * The maximum number of event store writes coalesced into one bulk write in persistent mode,
+     * only with a persistenceBatchDelayMs
      */
-    private static List<Class> getClasses(String packageName) throws ClassNotFoundException, IOException {
-        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
-        assert classLoader != null;
-        String path = packageName.replace('.', '/');
-        Enumeration<URL> resources = classLoader.getResources(path);
-        List<File> dirs = new ArrayList<File>();
-        while (resources.hasMoreElements()) {
-            URL resource = resources.nextElement();
-            dirs.add(new File(resource.getFile()));
-        }
-        ArrayList<Class> classes = new ArrayList<Class>();
-        for (File directory : dirs) {
-            classes.addAll(findClasses(directory, packageName));
-        }
-        return classes;
-    }
+    private int persistenceBatchSize = 100;
 
     /**
-     * Initialize the Event Engine default global thread pool if configured
-     * Register all the event listeners found in the package path
+     * The maximum time in ms an event store write waits to be coalesced with others in persistent
+     * mode, 0 (the default) writes every signature through to the store right away<br/>
+     * With a delay the push returns before its signatures are stored, the events pushed within
+     * the last delay are lost if the process dies, in exchange for far fewer store round trips
      */
-    public void initialize()
-    {
-        if(initialized)
-            return;
+    private long persistenceBatchDelayMs = 0;
 
-        if(instanceId==null)
-        {
-            instanceId = "INSTANCE_" + UUID.randomUUID();
-        }
+    public int getPersistenceBatchSize()
+    {
+        return persistenceBatchSize;
+    }
 
-        if(poolSize > 0)
-        {
-            executors = Executors.newFixedThreadPool(poolSize);
-        }
+    public void setPersistenceBatchSize(int persistenceBatchSize)
+    {
+        this.persistenceBatchSize = persistenceBatchSize;
+    }
 
-        if(executors == null && poolSize <=0 )
-        {
-            executors = Executors.newFixedThreadPool(50);
-        }
+    public long getPersistenceBatchDelayMs()
+    {
+        return persistenceBatchDelayMs;
+    }
 
-        internalExecutors = Executors.newFixedThreadPool(50);
+    public void setPersistenceBatchDelayMs(long persistenceBatchDelayMs)
+    {
+        this.persistenceBatchDelayMs = persistenceBatchDelayMs;
+    }
 
-        if(isPersistent()) {
-        } else {
-            eventMap = new ConcurrentHashMap<EventListenerSignature, Boolean>();
-        }
+    /**
+     * The codec the events are stored with in persistent mode, e.g. a BinaryEventCodec, null by
+     * default to store the event objects as is, the signatures stored with and without encoded
+     * bytes are both read back
+     */
+    private EventCodec eventCodec;
 
-        if(isPersistent() && ePersistenceInterface == null) {
-            persistent = false;
-            logger.error("Could not find a valid instance of EventPersistenceInterface implementation, switching to non-persistent mode");
-        }
+    /**
+     * Fingerprints the events for the duplicate checks when no event codec is set, its bytes
+     * are never stored
+     */
+    private final BinaryEventCodec fingerprintCodec = new BinaryEventCodec();
 
-        if(packagePaths != null)
-        {
-            String[] packages = packagePaths.split(",");
-            for (String pckgpth : packages)
-            {
-                try
-                {
-                    List<Class> classes = new ArrayList<Class>();
-                    if(pckgpth.endsWith(".*"))
-                    {
-                        classes = getClasses(pckgpth.substring(0, pckgpth.indexOf(".*")));
-                    }
-                    else
-                    {
-                        try {
-                            classes.add(Thread.currentThread().getContextClassLoader().loadClass(pckgpth));
-                        } catch (ClassNotFoundException e) {
-                            logger.error("The class specified was not found - " + pckgpth);
-                        }
-                    }
-                    for (Class possEventListener : classes)
-                    {
-                        registerListener(possEventListener);
-                    }
-                } catch (ClassNotFoundException e){
-                } catch (IOException e) {
-                }
-            }
-        }
+    /**
+     * The expected number of idempotent events of a type stored within its expireTime, enables an
+     * in-process Bloom filter in front of the event store duplicate lookup in persistent mode, only
+     * valid when this engine is the only one pushing the non-distributed idempotent event types
+     * to the event store, 0 disables the filter
+     */
+    private int duplicateFilterCapacity = 0;
 
-        for (Class eventClass : eventListenerMap.keySet())
-        {
-            registerEvent(eventClass);
-        }
+    /**
+     * The false positive rate of the duplicate filter
+     */
+    private double duplicateFilterFalsePositiveRate = 0.01;
 
-        handleExistingEvents(false);
+    /**
+     * How long in ms an instance owns the pending events it stored or claimed from the event store,
+     * once past another instance can claim them, the leases of the events whose callbacks are still
+     * queued or running are renewed every third of the lease, so only the events of an instance
+     * that stopped renewing are taken over, the leases are released on destroy, but the pending
+     * events of an instance that crashed wait up to this long before being recovered unless it
+     * restarts with the same instance id
+     */
+    private long eventLeaseTimeMs = 60 * 1000;
 
-        distributedEventHandler = new EventPollExpireHandler(this);
-        new Thread(distributedEventHandler).start();
+    /**
+     * The leased pending signatures of this instance by id, until their callback completes
+     */
+    private final Map<String, EventListenerSignature> leasedEvents = new ConcurrentHashMap<String, EventListenerSignature>();
 
-        initialized = true;
+    public long getEventLeaseTimeMs()
+    {
+        return eventLeaseTimeMs;
+    }
 
-        logger.info("Event Engine - Initialized...");
+    public void setEventLeaseTimeMs(long eventLeaseTimeMs)
+    {
+        this.eventLeaseTimeMs = eventLeaseTimeMs;
     }
 
+    /**
+     * How often in ms the event store is still polled for distributed events when it notifies
+     * this instance of them, as a safety net for missed notifications
+     */
+    private long notificationFallbackPollMs = 30000;
 
     /**
-     * Handle the existing events and process them
-     * @param isDistributed
+     * The number of events claimed or read from the event store at a time
      */
-    @SuppressWarnings("unchecked")
-    protected void handleExistingEvents(boolean isDistributed)
-    {
-        if(isPersistent() && eventPropertiesMap.size() > 0 ) {
-            int size = 100;
-            Date startDate = new Date();
+    private int recoveryBatchSize = 100;
 
-            if(ePersistenceInterface.lockEventStore(instanceId))
+    /**
+     * The number of event types whose pending events are recovered in parallel
+     */
+    private int recoveryParallelism = 4;
+
+    public int getRecoveryParallelism()
+    {
+        return recoveryParallelism;
+    }
+
+    public void setRecoveryParallelism(int recoveryParallelism)
+    {
+        this.recoveryParallelism = recoveryParallelism;
+    }
+
+    /**
+     * The bounds of the adaptive event store poll interval in ms, the interval backs off towards
+     * the maximum while the polls find nothing and tightens towards the minimum while they do
+     */
+    private long minPollIntervalMs = 100;
+
+    private long maxPollIntervalMs = 30000;
+
+    /**
+     * The interval in ms between two expiry sweeps of the event store
+     */
+    private long expiryIntervalMs = 4000;
+
+    /**
+     * Seconds the signatures that reached a final status (SUCCESS, FAILED, EXPIRED) are kept in the
+     * event store before the expiry sweep purges them, 0 to keep them
+     */
+    private int eventRetentionSeconds = 0;
+
+    /**
+     * The resolution in ms of the engine timer which expires the pending events of the
+     * non-persistent mode
+     */
+    private long timerTickMs = 10;
+
+    public int getRecoveryBatchSize()
+    {
+        return recoveryBatchSize;
+    }
+
+    public void setRecoveryBatchSize(int recoveryBatchSize)
+    {
+        this.recoveryBatchSize = recoveryBatchSize;
+    }
+
+    public long getMinPollIntervalMs()
+    {
+        return minPollIntervalMs;
+    }
+
+    public void setMinPollIntervalMs(long minPollIntervalMs)
+    {
+        this.minPollIntervalMs = minPollIntervalMs;
+    }
+
+    public long getMaxPollIntervalMs()
+    {
+        return maxPollIntervalMs;
+    }
+
+    public void setMaxPollIntervalMs(long maxPollIntervalMs)
+    {
+        this.maxPollIntervalMs = maxPollIntervalMs;
+    }
+
+    public long getExpiryIntervalMs()
+    {
+        return expiryIntervalMs;
+    }
+
+    public void setExpiryIntervalMs(long expiryIntervalMs)
+    {
+        this.expiryIntervalMs = expiryIntervalMs;
+    }
+
+    public int getEventRetentionSeconds()
+    {
+        return eventRetentionSeconds;
+    }
+
+    public void setEventRetentionSeconds(int eventRetentionSeconds)
+    {
+        this.eventRetentionSeconds = eventRetentionSeconds;
+    }
+
+    public long getTimerTickMs()
+    {
+        return timerTickMs;
+    }
+
+    public void setTimerTickMs(long timerTickMs)
+    {
+        this.timerTickMs = timerTickMs;
+    }
+
+    /**
+     * The poller of the event store, exposes the current poll interval and the timings of the
+     * last poll and expiry sweep
+     * @return
+     */
+    public EventPollExpireHandler getEventPollExpireHandler()
+    {
+        return distributedEventHandler;
+    }
+
+    public long getNotificationFallbackPollMs()
+    {
+        return notificationFallbackPollMs;
+    }
+
+    public void setNotificationFallbackPollMs(long notificationFallbackPollMs)
+    {
+        this.notificationFallbackPollMs = notificationFallbackPollMs;
+    }
+
+    public int getDuplicateFilterCapacity()
+    {
+        return duplicateFilterCapacity;
+    }
+
+    public void setDuplicateFilterCapacity(int duplicateFilterCapacity)
+    {
+        this.duplicateFilterCapacity = duplicateFilterCapacity;
+    }
+
+    public double getDuplicateFilterFalsePositiveRate()
+    {
+        return duplicateFilterFalsePositiveRate;
+    }
+
+    public void setDuplicateFilterFalsePositiveRate(double duplicateFilterFalsePositiveRate)
+    {
+        this.duplicateFilterFalsePositiveRate = duplicateFilterFalsePositiveRate;
+    }
+
+    public EventCodec getEventCodec()
+    {
+        return eventCodec;
+    }
+
+    public void setEventCodec(EventCodec eventCodec)
+    {
+        this.eventCodec = eventCodec;
+    }
+
+    public DispatchMode getDispatchMode()
+    {
+        return dispatchMode;
+    }
+
+    public void setDispatchMode(DispatchMode dispatchMode)
+    {
+        this.dispatchMode = dispatchMode;
+    }
+
+    public boolean isPersistent()
+    {
+        return persistent;
+    }
+
+    public void setPersistent(boolean persistent)
+    {
+        this.persistent = persistent;
+    }
+
+    public int getPoolSize()
+    {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize)
+    {
+        this.poolSize = poolSize;
+    }
+
+    public String getPackagePaths()
+    {
+        return packagePaths;
+    }
+
+    public void setPackagePaths(String packagePaths)
+    {
+        this.packagePaths = packagePaths;
+    }
+
+    public String getInstanceId()
+    {
+        return instanceId;
+    }
+
+    public void setInstanceId(String instanceId)
+    {
+        this.instanceId = instanceId;
+    }
+
+    private boolean primary = true;
+
+    public boolean isPrimary()
+    {
+        return primary;
+    }
+
+    public void setPrimary(boolean primary)
+    {
+        this.primary = primary;
+    }
+
+    /**
+     * Immutable listener snapshots sorted by priority, replaced as a whole under the registration
+     * lock so that dispatch never needs to lock
+     */
+    private Map<Class, EventListenerObject[]> eventListenerMap = new ConcurrentHashMap<Class, EventListenerObject[]>();
+
+    private final Object registrationLock = new Object();
+
+    /**
+     * Time in ms between the checks for in-flight dispatches to an unregistered listener
+     */
+    private static final long LISTENER_RELEASE_POLL_MS = 10;
+    private Map<Class, EventProperties> eventPropertiesMap = new ConcurrentHashMap<Class, EventProperties>();
+    protected Map<String, Integer> eventExpireClassMap = new ConcurrentHashMap<String, Integer>();
+
+    private EventFingerprintTable eventFingerprintTable;
+
+    private ExecutorService executors = null;
+
+    private ExecutorService internalExecutors = null;
+
+    private EventPollExpireHandler distributedEventHandler = null;
+
+    private ScheduledExecutorService batchScheduler = null;
+
+    private ExecutorService recoveryExecutors = null;
+
+    private EventStoreWriter eventStoreWriter = null;
+
+    private EventTimingWheel timingWheel = null;
+
+    /**
+     * The events expired by the timer since the last expiry sweep, non-persistent mode only
+     */
+    private final AtomicInteger expiredEvents = new AtomicInteger();
+
+    /**
+     * Expire the pending events past the expiry time of their type, in the non-persistent mode
+     * the timer expires the events and only the count since the last sweep is returned
+     * @param eventExpireMap
+     * @return the number of events expired
+     */
+    protected int expireEvents(Map<String, Integer> eventExpireMap)
+    {
+        if(isPersistent()) {
+            return ePersistenceInterface.expirePendingEvents(eventExpireMap);
+        }
+        return expiredEvents.getAndSet(0);
+    }
+
+    /**
+     * Expire an event of the non-persistent mode whose callback did not start within the expire
+     * time of its type, the callback is skipped once it is dequeued
+     * @param signature
+     */
+    private void expireEvent(EventListenerSignature signature)
+    {
+        signature.status = STATUS_EXPIRED;
+        signature.processedDate = new Date();
+        if(signature.fingerprint != 0) {
+            eventFingerprintTable.remove(signature.fingerprint);
+        }
+        expiredEvents.incrementAndGet();
+    }
+
+    /**
+     * Cancel the timer expiry of the event as its callback starts
+     * @param signature
+     * @return false if the event already expired and its callback has to be skipped
+     */
+    private static boolean cancelExpiry(EventListenerSignature signature)
+    {
+        EventTimingWheel.Timeout timeout = signature.expiryTimeout;
+        if(timeout == null) {
+            return true;
+        }
+        signature.expiryTimeout = null;
+        return timeout.cancel();
+    }
+
+    /**
+     * Purge the signatures that reached a final status more than eventRetentionSeconds ago
+     * @return the number of signatures purged
+     */
+    protected int purgeEvents()
+    {
+        if(isPersistent() && eventRetentionSeconds > 0) {
+            return ePersistenceInterface.purgeEvents(new Date(System.currentTimeMillis() - eventRetentionSeconds * 1000L));
+        }
+        return 0;
+    }
+
+    /**
+     * Find all possible classes for a given package name
+     *
+     * @param directory
+     * @param packageName
+     * @return
+     * @throws ClassNotFoundException
+     */
+    private static List<Class> findClasses(File directory, String packageName)
+            throws ClassNotFoundException {
+        List<Class> classes = new ArrayList<Class>();
+        if (!directory.exists()) {
+            return classes;
+        }
+        File[] files = directory.listFiles();
+        for (File file : files) {
+            if (file.isDirectory()) {
+                assert !file.getName().contains(".");
+                classes.addAll(findClasses(file, packageName + "." + file.getName()));
+            } else if (file.getName().endsWith(".class")) {
+                Class claz = Thread.currentThread().getContextClassLoader()
+                        .loadClass(packageName + '.' + file.getName().substring(0, file.getName().length() - 6));
+                if (claz != null) {
+                    classes.add(claz);
+                } else {
+                    classes.add(Class.forName(packageName + '.' + file.getName().substring(0, file.getName().length() - 6)));
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Find all possible classes for a given package name
+     *
+     * @param packageName
+     * @return
+     * @throws ClassNotFoundException
+     * @throws IOException
+     */
+    private static List<Class> getClasses(String packageName) throws ClassNotFoundException, IOException {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        assert classLoader != null;
+        String path = packageName.replace('.', '/');
+        Enumeration<URL> resources = classLoader.getResources(path);
+        List<File> dirs = new ArrayList<File>();
+        while (resources.hasMoreElements()) {
+            URL resource = resources.nextElement();
+            dirs.add(new File(resource.getFile()));
+        }
+        ArrayList<Class> classes = new ArrayList<Class>();
+        for (File directory : dirs) {
+            classes.addAll(findClasses(directory, packageName));
+        }
+        return classes;
+    }
+
+    /**
+     * Initialize the Event Engine default global thread pool if configured
+     * Register all the event listeners found in the package path
+     */
+    public void initialize()
+    {
+        if(initialized)
+            return;
+
+        if(instanceId==null)
+        {
+            instanceId = "INSTANCE_" + UUID.randomUUID();
+        }
+
+        if(executorMode == ExecutorMode.VIRTUAL_THREAD)
+        {
+            executors = newVirtualThreadExecutor(poolSize > 0 ? poolSize : 50, queueCapacity, rejectionPolicy);
+            internalExecutors = newVirtualThreadExecutor(50, queueCapacity, RejectionPolicy.CALLER_RUNS);
+        }
+        else if(executorMode == ExecutorMode.FORK_JOIN)
+        {
+            executors = newForkJoinPool(poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors());
+            // the dispatch and the recovery claims of a persistent engine block on the event store
+            internalExecutors = isPersistent() ? newFixedThreadPool(50, queueCapacity, RejectionPolicy.CALLER_RUNS)
+                    : executors;
+        }
+        else
+        {
+            if(poolSize > 0)
+            {
+                executors = newFixedThreadPool(poolSize, queueCapacity, rejectionPolicy);
+            }
+
+            if(executors == null && poolSize <=0 )
+            {
+                executors = newFixedThreadPool(50, queueCapacity, rejectionPolicy);
+            }
+
+            internalExecutors = newFixedThreadPool(50, queueCapacity, RejectionPolicy.CALLER_RUNS);
+        }
+
+        batchScheduler = Executors.newSingleThreadScheduledExecutor();
+
+        timingWheel = new EventTimingWheel(timerTickMs);
+
+        if(isPersistent() && ePersistenceInterface == null) {
+            persistent = false;
+            logger.error("Could not find a valid instance of EventPersistenceInterface implementation, switching to non-persistent mode");
+        }
+
+        if(!isPersistent()) {
+            eventFingerprintTable = new EventFingerprintTable();
+        }
+
+        if(isPersistent() && persistenceBatchDelayMs > 0 && persistenceBatchSize > 1) {
+            eventStoreWriter = new EventStoreWriter(ePersistenceInterface, persistenceBatchSize, persistenceBatchDelayMs);
+        }
+
+        if(isPersistent() && recoveryParallelism > 1) {
+            recoveryExecutors = newFixedThreadPool(recoveryParallelism, 0, RejectionPolicy.CALLER_RUNS);
+        }
+
+        if(packagePaths != null)
+        {
+            String[] packages = packagePaths.split(",");
+            for (String pckgpth : packages)
+            {
+                try
+                {
+                    List<Class> classes = new ArrayList<Class>();
+                    if(pckgpth.endsWith(".*"))
+                    {
+                        classes = getClasses(pckgpth.substring(0, pckgpth.indexOf(".*")));
+                    }
+                    else
+                    {
+                        try {
+                            classes.add(Thread.currentThread().getContextClassLoader().loadClass(pckgpth));
+                        } catch (ClassNotFoundException e) {
+                            logger.error("The class specified was not found - " + pckgpth);
+                        }
+                    }
+                    for (Class possEventListener : classes)
+                    {
+                        registerListener(possEventListener);
+                    }
+                } catch (ClassNotFoundException e){
+                } catch (IOException e) {
+                }
+            }
+        }
+
+        for (Class eventClass : eventListenerMap.keySet())
+        {
+            registerEvent(eventClass);
+        }
+
+        if(isPersistent()) {
+            int released = ePersistenceInterface.releaseLeases(instanceId);
+            if(released > 0) {
+                logger.info("Released " + released + " leases of the previous run of instance " + instanceId);
+            }
+        }
+
+        handleExistingEvents(false);
+
+        distributedEventHandler = new EventPollExpireHandler(this);
+        if(isPersistent()) {
+            distributedEventHandler.subscribed = ePersistenceInterface.subscribe(distributedEventHandler);
+        }
+        distributedEventHandler.start();
+
+        initialized = true;
+
+        logger.info("Event Engine - Initialized...");
+    }
+
+
+    /**
+     * Handle the existing events and process them, the events are claimed from the event store in
+     * batches, so that several instances can drain the pending events in parallel and the events
+     * of an instance that died are taken over once their lease expires<br/>
+     * Up to recoveryParallelism event types are recovered at a time
+     * @param isDistributed
+     * @return the number of events claimed
+     */
+    protected int handleExistingEvents(final boolean isDistributed)
+    {
+        int count = 0;
+        if(isPersistent() && eventPropertiesMap.size() > 0 ) {
+            final Date startDate = new Date();
+
+            ExecutorService recoveryExecutors = this.recoveryExecutors;
+            if(recoveryExecutors == null || eventPropertiesMap.size() == 1)
+            {
+                for (Class eventClass : eventPropertiesMap.keySet())
+                {
+                    count += recoverEvents(eventClass, isDistributed, startDate);
+                }
+                return count;
+            }
+
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (final Class eventClass : eventPropertiesMap.keySet())
+            {
+                try
+                {
+                    futures.add(recoveryExecutors.submit(new Callable<Integer>() {
+                        public Integer call()
+                        {
+                            return recoverEvents(eventClass, isDistributed, startDate);
+                        }
+                    }));
+                }
+                catch (RejectedExecutionException e)
+                {
+                    count += recoverEvents(eventClass, isDistributed, startDate);
+                }
+            }
+            for (Future<Integer> future : futures)
+            {
+                try
+                {
+                    count += future.get();
+                }
+                catch (Exception e)
+                {
+                    logger.error("Error recovering the pending events " + e.getMessage());
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Recover the pending events of a type page by page, the next page is claimed while the
+     * current one is dispatched, the claimed events leave the claimable set so every claim
+     * resumes where the previous one ended
+     * @param eventClass
+     * @param isDistributed
+     * @param startDate
+     * @return the number of events claimed
+     */
+    private int recoverEvents(final Class eventClass, final boolean isDistributed, final Date startDate)
+    {
+        final int expiryTime = eventPropertiesMap.get(eventClass)!=null?eventPropertiesMap.get(eventClass).expireTime:0;
+        final int size = recoveryBatchSize;
+        int count = 0;
+
+        List<EventListenerSignature> events = ePersistenceInterface.claimEvents(eventClass, startDate,
+                isDistributed, instanceId, expiryTime, size, eventLeaseTimeMs);
+        while (events != null && events.size() > 0)
+        {
+            CompletableFuture<List<EventListenerSignature>> nextEvents = null;
+            if(events.size() >= size && internalExecutors != null)
+            {
+                try
+                {
+                    nextEvents = CompletableFuture.supplyAsync(new Supplier<List<EventListenerSignature>>() {
+                        public List<EventListenerSignature> get()
+                        {
+                            return ePersistenceInterface.claimEvents(eventClass, startDate,
+                                    isDistributed, instanceId, expiryTime, size, eventLeaseTimeMs);
+                        }
+                    }, internalExecutors);
+                }
+                catch (RejectedExecutionException e)
+                {
+                    nextEvents = null;
+                }
+            }
+
+            logger.info("Claimed " + events.size() + " events of type " + eventClass.getSimpleName() + ", processing....");
+            count += events.size();
+            dispatchRecoveredEvents(events, eventClass);
+
+            if(nextEvents != null) {
+                events = nextEvents.join();
+            } else if(events.size() >= size) {
+                events = ePersistenceInterface.claimEvents(eventClass, startDate,
+                        isDistributed, instanceId, expiryTime, size, eventLeaseTimeMs);
+            } else {
+                events = null;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Renew the leases of the pending events of this instance whose callbacks are still queued or
+     * running, so that no other instance, nor this one, claims them again meanwhile
+     * @return the number of leases renewed
+     */
+    protected int renewLeases()
+    {
+        if(!isPersistent() || leasedEvents.isEmpty()) {
+            return 0;
+        }
+        if(eventStoreWriter != null) {
+            eventStoreWriter.flush();
+        }
+        return ePersistenceInterface.renewLeases(new ArrayList<EventListenerSignature>(leasedEvents.values()),
+                new Date(System.currentTimeMillis() + eventLeaseTimeMs));
+    }
+
+    /**
+     * Restore the events read from the event store, remove them from the store in bulk and
+     * dispatch them again, the duplicate filter of the type is seeded with the restored events
+     * before they are dispatched, it starts empty after a restart and would otherwise let a
+     * duplicate pushed meanwhile skip the lookup in the event store
+     * @param events
+     * @param eventClass
+     */
+    private void dispatchRecoveredEvents(List<EventListenerSignature> events, Class eventClass)
+    {
+        EventProperties eventProperties = eventPropertiesMap.get(eventClass);
+        List<EventListenerSignature> restored = new ArrayList<EventListenerSignature>(events.size());
+        for (EventListenerSignature signature : events)
+        {
+            if(restoreEvent(signature, eventClass)) {
+                addToDuplicateFilter(signature, eventProperties);
+                restored.add(signature);
+            }
+        }
+        if(restored.size() == 0) {
+            return;
+        }
+        ePersistenceInterface.removeEvents(restored);
+        for (EventListenerSignature signature : restored)
+        {
+            push(null, null, signature, false);
+        }
+    }
+
+    /**
+     * Rebuild the event of a signature read from the event store, from the encoded event
+     * bytes if any, otherwise from the stored properties, a signature whose event cannot be
+     * rebuilt is marked as failed
+     * @param signature
+     * @param eventClass
+     * @return whether the event could be rebuilt
+     */
+    @SuppressWarnings("unchecked")
+    private boolean restoreEvent(EventListenerSignature signature, Class eventClass)
+    {
+        String error = null;
+        try
+        {
+            if(signature.eventData != null && eventCodec != null) {
+                signature.event = eventCodec.decode(signature.eventData, eventClass);
+            } else if(signature.event instanceof Map) {
+                signature.event = getEventObject((Map<String, Object>)signature.event, eventPropertiesMap.get(eventClass));
+            }
+        }
+        catch (RuntimeException e)
+        {
+            logger.error("Error restoring event of type " + eventClass.getSimpleName() + ", marking it as failed " + e.getMessage());
+            error = ExceptionUtils.getStackTrace(e);
+        }
+        if(signature.event == null || error != null)
+        {
+            signature.status = STATUS_FAILED;
+            signature.processedDate = new Date();
+            signature.error = error!=null?error:"Could not restore the event";
+            ePersistenceInterface.storeEvent(signature);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Add the fingerprint of a restored event to the duplicate filter of its type, computed the
+     * same way as for a pushed event, from the stored event bytes or, without an event codec,
+     * from the restored event
+     * @param signature
+     * @param eventProperties
+     */
+    private void addToDuplicateFilter(EventListenerSignature signature, EventProperties eventProperties)
+    {
+        if(eventProperties == null || eventProperties.duplicateFilter == null || eventProperties.unencodable) {
+            return;
+        }
+        long eventFingerprint = 0;
+        try
+        {
+            if(signature.eventData != null) {
+                eventFingerprint = signature.eventHash!=0?signature.eventHash:EventFingerprintTable.hash(signature.eventData);
+            } else if(eventCodec == null) {
+                eventFingerprint = fingerprintCodec.fingerprint(signature.event);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            logger.error("Error fingerprinting the recovered event of type " + eventProperties.eventClassName
+                    + " " + e.getMessage());
+        }
+        if(eventFingerprint != 0)
+        {
+            signature.fingerprint = EventFingerprintTable.combine(eventFingerprint,
+                    getListenerFingerprint(signature.listenerClassName, signature.listenerMethodName));
+            eventProperties.duplicateFilter.add(signature.fingerprint);
+        }
+    }
+
+    /**
+     * The fingerprint of a listener callback, combined with the event fingerprint for the duplicate checks
+     * @param listenerClassName
+     * @param listenerMethodName
+     * @return
+     */
+    private static long getListenerFingerprint(String listenerClassName, String listenerMethodName)
+    {
+        return EventFingerprintTable.hash((listenerClassName + "." + listenerMethodName).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The duplicate filter of an idempotent event type, null if the type has none
+     * @param eventClass
+     * @return
+     */
+    EventBloomFilter getDuplicateFilter(Class eventClass)
+    {
+        EventProperties eventProperties = eventPropertiesMap.get(eventClass);
+        return eventProperties!=null?eventProperties.duplicateFilter:null;
+    }
+
+    private Object getEventObject(Map<String, Object> propMap, EventProperties eventProperties)
+    {
+        if(eventProperties == null || eventProperties.eventConstructor == null)
+        {
+            logger.info("Error creating object of type " + (eventProperties!=null?eventProperties.eventClassName:null)
+                    + ", reason = no nullary constructor found..");
+            return null;
+        }
+
+        Object eventObj = null;
+        try
+        {
+            eventObj = (Object)eventProperties.eventConstructor.invokeExact();
+            for (int i = 0; i < eventProperties.fieldSetters.length; i++)
+            {
+                eventProperties.fieldSetters[i].invokeExact(eventObj, propMap.get(eventProperties.fieldNames[i]));
+            }
+        }
+        catch (Throwable e)
+        {
+            logger.info("Error creating object of type " + eventProperties.eventClassName
+                    + ", reason = " + e.getMessage());
+            eventObj = null;
+        }
+
+        return eventObj;
+    }
+
+    /**
+     * Register Event Listener, safe to call while events are being dispatched
+     * @param possEventListener
+     */
+    public void registerListener(Class possEventListener)
+    {
+        synchronized (registrationLock)
+        {
+            if(isListenerRegistered(possEventListener)) {
+                logger.info("EventListener " + possEventListener.getSimpleName() + " is already registered.. skipping");
+                return;
+            }
+            doRegisterListener(possEventListener);
+        }
+    }
+
+    private boolean isListenerRegistered(Class possEventListener)
+    {
+        for (EventListenerObject[] eventListeners : eventListenerMap.values())
+        {
+            for (EventListenerObject eventListenerObject : eventListeners)
+            {
+                if(eventListenerObject.eventListenerClass == possEventListener) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void doRegisterListener(Class possEventListener)
+    {
+        if(possEventListener != null && possEventListener.isAnnotationPresent(EventListener.class))
+        {
+            EventListener listannot = (EventListener)possEventListener.getAnnotation(EventListener.class);
+            Method[] methods = possEventListener.getMethods();
+            boolean callbackFound = false;
+            for (Method possibleMethod : methods)
+            {
+                Method callbackMethod = getEventListenerCallback(possEventListener, possibleMethod);
+                if(callbackMethod != null)
+                {
+                    callbackFound = true;
+
+                    EventListenerCallBack callbackanot = callbackMethod.getAnnotation(EventListenerCallBack.class);
+                    boolean addResponseEvent = callbackanot.addResponseEvent();
+
+                    EventListenerObject eventListenerObject = new EventListenerObject();
+                    eventListenerObject.eventListenerClass = possEventListener;
+                    eventListenerObject.eventCallBackMethod = callbackMethod;
+                    eventListenerObject.listenerClassName = possEventListener.getSimpleName();
+                    eventListenerObject.listenerMethodName = callbackMethod.getName();
+                    eventListenerObject.listenerFingerprint = getListenerFingerprint(eventListenerObject.listenerClassName,
+                            eventListenerObject.listenerMethodName);
+                    eventListenerObject.eventCallBackInvoker = getEventListenerInvoker(callbackMethod);
+                    if(eventListenerObject.eventCallBackInvoker == null) {
+                        continue;
+                    }
+                    eventListenerObject.isThreadSafe = listannot.threadSafe();
+                    eventListenerObject.addResponseEvent = addResponseEvent;
+                    eventListenerObject.priority = callbackanot.priority();
+                    eventListenerObject.delayNextPriorityListener = callbackanot.delayNextPriorityListener();
+                    if(listannot.virtualThreads()) {
+                        eventListenerObject.eventListenerExecutors = newVirtualThreadExecutor(listannot.poolSize(),
+                                listannot.queueCapacity(), listannot.rejectionPolicy());
+                    } else if(executorMode == ExecutorMode.RING_BUFFER) {
+                        eventListenerObject.eventListenerRing = new EventRingBuffer(this, "evengine-ring-"
+                                + possEventListener.getSimpleName() + "." + callbackMethod.getName(), ringBufferSize, waitStrategy,
+                                listannot.rejectionPolicy());
+                    } else if(listannot.poolSize() > 0) {
+                        eventListenerObject.eventListenerExecutors = newFixedThreadPool(listannot.poolSize(),
+                                listannot.queueCapacity(), listannot.rejectionPolicy());
+                    }
+                    if(isBatchCallback(callbackMethod)) {
+                        eventListenerObject.eventListenerBatch = new EventListenerBatch(this, eventListenerObject,
+                                eventListenerObject.eventListenerExecutors!=null?eventListenerObject.eventListenerExecutors:executors,
+                                batchScheduler, callbackanot.batchSize(), callbackanot.maxBatchDelayMs());
+                    }
+                    boolean isSpringManaged = false;
+                    if(appContext!=null) {
+                        try {
+                            eventListenerObject.eventListenerInstance = appContext.getBean(possEventListener);
+                            isSpringManaged = true;
+                        } catch (Exception e) {
+                        }
+                    }
+                    if(eventListenerObject.eventListenerInstance==null && listannot.threadSafe())
+                    {
+                        try
+                        {
+                            eventListenerObject.eventListenerInstance = possEventListener.newInstance();
+                        }
+                        catch (InstantiationException e)
+                        {
+                            logger.info("Could not register " + eventListenerObject
+                                    + ", reason = No nullary constructor found..");
+                        }
+                        catch (IllegalAccessException e)
+                        {
+                            logger.info("Could not register " + eventListenerObject
+                                    + ", reason = IllegalAccessException ");
+                        }
+                    }
+                    mapEventListener(getCallbackEventClass(callbackMethod), eventListenerObject);
+                    logger.info("Registered " + eventListenerObject + ", isSpringManaged = " + isSpringManaged);
+                }
+            }
+            if(!callbackFound) {
+                logger.error("No callback method found in the Listener.. skipping EventListener..." + possEventListener.getSimpleName());
+            }
+        }
+    }
+
+    /**
+     * Register Event class
+     * @param eventClass
+     */
+    @SuppressWarnings({ "unchecked" })
+    private void registerEvent(Class eventClass)
+    {
+        EventProperties eventProperties = new EventProperties();
+        eventProperties.eventClassName = eventClass.getSimpleName();
+        eventProperties.eventCanonicalName = eventClass.getCanonicalName();
+        if(eventClass.isAnnotationPresent(EventType.class))
+        {
+            EventType evtType = (EventType)eventClass.getAnnotation(EventType.class);
+            eventProperties.idempotent = evtType.idempotent();
+            eventProperties.sequenceListenerPriority = evtType.sequenceListenerPriority();
+            eventProperties.awaitListenerPriority = evtType.awaitListenerPriority();
+            eventProperties.isDistributed = evtType.distributed();
+            eventProperties.expireTime = evtType.expireTime();
+            if(evtType.distributed() && evtType.expireTime()<=0) {
+                logger.info("Event Type " + eventClass.getSimpleName() + " is of distributed type but does not define expireTime...skipping");
+                return;
+            }
+            if(evtType.distributed() && evtType.processOnce()) {
+                eventProperties.isProcessOnce = evtType.processOnce();
+            }
+            if(eventProperties.sequenceListenerPriority) {
+                eventProperties.partitionKey = getPartitionKey(eventClass);
+            }
+            int lanes = eventProperties.partitionKey!=null?Math.max(partitionLanes, 1):0;
+            if(eventProperties.sequenceListenerPriority && executorMode == ExecutorMode.RING_BUFFER && lanes > 0) {
+                eventProperties.partitionRings = new EventRingBuffer[lanes];
+                for (int i = 0; i < lanes; i++)
+                {
+                    eventProperties.partitionRings[i] = new EventRingBuffer(this, "evengine-ring-"
+                            + eventClass.getSimpleName() + "-" + i, ringBufferSize, waitStrategy, rejectionPolicy);
+                }
+            } else if(eventProperties.sequenceListenerPriority && executorMode == ExecutorMode.RING_BUFFER) {
+                eventProperties.eventListenerRing = new EventRingBuffer(this, "evengine-ring-"
+                        + eventClass.getSimpleName(), ringBufferSize, waitStrategy, rejectionPolicy);
+            } else if(eventProperties.sequenceListenerPriority && lanes > 0) {
+                eventProperties.partitionExecutors = new ExecutorService[lanes];
+                for (int i = 0; i < lanes; i++)
+                {
+                    eventProperties.partitionExecutors[i] = newLaneExecutor(queueCapacity, rejectionPolicy);
+                }
+            } else if(eventProperties.sequenceListenerPriority) {
+                eventProperties.eventListenerExecutors = newFixedThreadPool(1, queueCapacity, rejectionPolicy);
+            }
+        }
+        if(eventProperties.idempotent && !eventProperties.isDistributed && isPersistent()
+                && duplicateFilterCapacity > 0) {
+            eventProperties.duplicateFilter = new EventBloomFilter(duplicateFilterCapacity,
+                    duplicateFilterFalsePositiveRate, eventProperties.expireTime * 1000L);
+        }
+        checkEncodable(eventClass, eventProperties);
+        if(eventListenerMap.get(eventClass) != null) {
+            eventProperties.eventListeners = eventListenerMap.get(eventClass);
+        }
+        setEventAccessors(eventClass, eventProperties);
+        logger.info("Registered " + eventProperties);
+        eventPropertiesMap.put(eventClass, eventProperties);
+        eventExpireClassMap.put(eventClass.getCanonicalName(), eventProperties.expireTime);
+    }
+
+    /**
+     * Find the field or no argument method of the event type marked as its PartitionKey
+     * @param eventClass
+     * @return a handle reading the key of an event, null if the event type has no partition key
+     */
+    private static MethodHandle getPartitionKey(Class eventClass)
+    {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodType getterType = MethodType.methodType(Object.class, Object.class);
+        try
+        {
+            for (Class clas = eventClass; clas != null && clas != Object.class; clas = clas.getSuperclass())
+            {
+                for (Field field : clas.getDeclaredFields())
+                {
+                    if(field.isAnnotationPresent(PartitionKey.class) && !Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        return lookup.unreflectGetter(field).asType(getterType);
+                    }
+                }
+                for (Method method : clas.getDeclaredMethods())
+                {
+                    if(method.isAnnotationPresent(PartitionKey.class) && method.getParameterTypes().length == 0
+                            && !Modifier.isStatic(method.getModifiers())) {
+                        method.setAccessible(true);
+                        return lookup.unreflect(method).asType(getterType);
+                    }
+                }
+            }
+        }
+        catch (IllegalAccessException | RuntimeException e)
+        {
+            logger.error("Could not access the partition key of Event Type " + eventClass.getSimpleName()
+                    + ", its events are sequenced on a single lane " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Check once that the codec the events of the type are stored or fingerprinted with can
+     * encode them, otherwise an idempotent type is registered as not idempotent in the
+     * non-persistent mode, where its duplicates could not be found, and without its duplicate
+     * filter in the persistent mode, where its duplicates are looked up in the event store
+     * @param eventClass
+     * @param eventProperties
+     */
+    private void checkEncodable(Class eventClass, EventProperties eventProperties)
+    {
+        EventCodec codec = eventCodec!=null?eventCodec:fingerprintCodec;
+        if(!(codec instanceof BinaryEventCodec) || (!eventProperties.idempotent && (eventCodec == null || !isPersistent()))) {
+            return;
+        }
+        try
+        {
+            ((BinaryEventCodec)codec).checkSchema(eventClass);
+        }
+        catch (IllegalArgumentException e)
+        {
+            eventProperties.unencodable = true;
+            if(!eventProperties.idempotent) {
+                logger.warn("The events of type " + eventClass.getSimpleName() + " cannot be encoded, storing them as is "
+                        + e.getMessage());
+            } else if(isPersistent()) {
+                eventProperties.duplicateFilter = null;
+                logger.warn("The idempotent event type " + eventClass.getSimpleName() + " cannot be encoded, its duplicates "
+                        + "are looked up in the event store without a duplicate filter " + e.getMessage());
+            } else {
+                eventProperties.idempotent = false;
+                logger.warn("The idempotent event type " + eventClass.getSimpleName() + " cannot be encoded, its events "
+                        + "are not checked for duplicates " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Resolve the constructor and field setters used to rebuild recovered events of this type
+     * @param eventClass
+     * @param eventProperties
+     */
+    @SuppressWarnings("unchecked")
+    private static void setEventAccessors(Class eventClass, EventProperties eventProperties)
+    {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try
+        {
+            Field[] fields = eventClass.getDeclaredFields();
+            List<String> fieldNames = new ArrayList<String>();
+            List<MethodHandle> fieldSetters = new ArrayList<MethodHandle>();
+            for (Field field : fields)
+            {
+                if(Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fieldNames.add(field.getName());
+                fieldSetters.add(lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class)));
+            }
+            eventProperties.fieldNames = fieldNames.toArray(new String[fieldNames.size()]);
+            eventProperties.fieldSetters = fieldSetters.toArray(new MethodHandle[fieldSetters.size()]);
+            Constructor constructor = eventClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            eventProperties.eventConstructor = lookup.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+        }
+        catch (NoSuchMethodException e)
+        {
+            logger.info("Event Type " + eventClass.getSimpleName() + " has no nullary constructor, "
+                    + "stored events of this type cannot be recovered");
+        }
+        catch (IllegalAccessException | RuntimeException e)
+        {
+            logger.info("Event Type " + eventClass.getSimpleName() + " fields are not accessible, "
+                    + "stored events of this type cannot be recovered");
+        }
+    }
+
+    /**
+     * Create a fixed thread pool, bounded by the queue capacity if specified
+     * @param threads
+     * @param capacity
+     * @param policy
+     * @return
+     */
+    private ExecutorService newFixedThreadPool(int threads, int capacity, RejectionPolicy policy)
+    {
+        BlockingQueue<Runnable> queue = capacity > 0 ? new ArrayBlockingQueue<Runnable>(capacity)
+                : new LinkedBlockingQueue<Runnable>();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue,
+                new EventRejectionHandler(this, policy));
+    }
+
+    /**
+     * Create the single threaded lane of a partitioned event type, see EventRejectionHandler for
+     * how a full lane queue is handled
+     * @param capacity
+     * @param policy
+     * @return
+     */
+    private ExecutorService newLaneExecutor(int capacity, RejectionPolicy policy)
+    {
+        BlockingQueue<Runnable> queue = capacity > 0 ? new ArrayBlockingQueue<Runnable>(capacity)
+                : new LinkedBlockingQueue<Runnable>();
+        final EventRejectionHandler handler = new EventRejectionHandler(this, policy);
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, queue, new ThreadFactory() {
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = Executors.defaultThreadFactory().newThread(r);
+                handler.laneThread = thread;
+                return thread;
+            }
+        }, handler);
+    }
+
+    /**
+     * Create a work-stealing pool in async (FIFO) mode, the engine tasks are never joined
+     * @param parallelism
+     * @return
+     */
+    private static ExecutorService newForkJoinPool(int parallelism)
+    {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+            {
+                ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {};
+                thread.setName("evengine-fj-" + threadCount.incrementAndGet());
+                return thread;
+            }
+        }, null, true);
+    }
+
+    /**
+     * Create an executor that starts a new virtual thread for each task, on runtimes
+     * without virtual threads a fixed thread pool bounded by the queue capacity is used
+     * instead
+     * @param threads the fallback pool size, 0 for no fallback pool
+     * @param capacity
+     * @param policy
+     * @return the executor, null if virtual threads are not available and there are no threads
+     */
+    private ExecutorService newVirtualThreadExecutor(int threads, int capacity, RejectionPolicy policy)
+    {
+        try
+        {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)factory.invoke(null);
+        }
+        catch (Exception e)
+        {
+            logger.warn("Virtual threads are not available on this runtime, " + (threads > 0
+                    ? "using a fixed thread pool of " + threads + " threads instead" : "using the engine executors instead"));
+        }
+        return threads > 0 ? newFixedThreadPool(threads, capacity, policy) : null;
+    }
+
+    /**
+     * Get the number of queued tasks for each of the engine executors, keyed by
+     * internal, global, the sequenced event type or the listener callback name
+     * @return
+     */
+    public Map<String, Integer> getQueueDepths()
+    {
+        Map<String, Integer> depths = new LinkedHashMap<String, Integer>();
+        depths.put("internal", internalExecutors == executors ? 0 : getQueueDepth(internalExecutors, null));
+        depths.put("global", getQueueDepth(executors, null));
+        for (Map.Entry<Class, EventProperties> entry : eventPropertiesMap.entrySet())
+        {
+            EventProperties eventProperties = entry.getValue();
+            if(eventProperties.eventListenerExecutors != null || eventProperties.eventListenerRing != null) {
+                depths.put(entry.getKey().getSimpleName(), getQueueDepth(eventProperties.eventListenerExecutors,
+                        eventProperties.eventListenerRing));
+            } else if(eventProperties.partitionExecutors != null || eventProperties.partitionRings != null) {
+                int depth = 0;
+                int lanes = eventProperties.partitionExecutors!=null?eventProperties.partitionExecutors.length
+                        :eventProperties.partitionRings.length;
+                for (int i = 0; i < lanes; i++)
+                {
+                    depth += getQueueDepth(eventProperties.partitionExecutors!=null?eventProperties.partitionExecutors[i]:null,
+                            eventProperties.partitionRings!=null?eventProperties.partitionRings[i]:null);
+                }
+                depths.put(entry.getKey().getSimpleName(), depth);
+            }
+        }
+        for (Map.Entry<Class, EventListenerObject[]> entry : eventListenerMap.entrySet())
+        {
+            for (EventListenerObject eventListenerObject : entry.getValue())
+            {
+                if(eventListenerObject.eventListenerExecutors != null || eventListenerObject.eventListenerRing != null) {
+                    depths.put(eventListenerObject.eventListenerClass.getSimpleName() + "." + eventListenerObject.eventCallBackMethod.getName(),
+                            getQueueDepth(eventListenerObject.eventListenerExecutors, eventListenerObject.eventListenerRing));
+                }
+            }
+        }
+        return depths;
+    }
+
+    /**
+     * Get the total number of queued tasks across all the engine executors
+     * @return
+     */
+    public int getQueueDepth()
+    {
+        int depth = 0;
+        for (Integer executorDepth : getQueueDepths().values())
+        {
+            depth += executorDepth;
+        }
+        return depth;
+    }
+
+    private static int getQueueDepth(ExecutorService executor, EventRingBuffer ring)
+    {
+        if(executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor)executor).getQueue().size();
+        } else if(executor instanceof ForkJoinPool) {
+            ForkJoinPool pool = (ForkJoinPool)executor;
+            return (int)(pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount());
+        } else if(ring != null) {
+            return (int)ring.size();
+        }
+        return 0;
+    }
+
+    /**
+     * Clean up the global thread pool and the listener level thread pools
+     */
+    public void destroy()
+    {
+        for (Map.Entry<Class, EventListenerObject[]> entry : eventListenerMap.entrySet())
+        {
+            for (EventListenerObject eventListenerObject : entry.getValue())
+            {
+                if(eventListenerObject.eventListenerBatch != null) {
+                    eventListenerObject.eventListenerBatch.flush();
+                }
+            }
+        }
+
+        if(batchScheduler != null) {
+            batchScheduler.shutdown();
+        }
+
+        if(executors != null) {
+            executors.shutdown();
+        }
+
+        if(internalExecutors != null && internalExecutors != executors) {
+            internalExecutors.shutdown();
+        }
+
+        if(recoveryExecutors != null) {
+            recoveryExecutors.shutdown();
+        }
+
+        for (Map.Entry<Class, EventListenerObject[]> entry : eventListenerMap.entrySet())
+        {
+            EventListenerObject[] listeners = entry.getValue();
+            for (EventListenerObject eventListenerObject : listeners)
+            {
+                if(eventListenerObject.eventListenerExecutors != null) {
+                    eventListenerObject.eventListenerExecutors.shutdown();
+                }
+                if(eventListenerObject.eventListenerRing != null) {
+                    eventListenerObject.eventListenerRing.shutdown();
+                }
+            }
+        }
+
+        for (Map.Entry<Class, EventProperties> entry : eventPropertiesMap.entrySet())
+        {
+            EventProperties eventProperties = entry.getValue();
+            if(eventProperties.sequenceListenerPriority && eventProperties.eventListenerExecutors!=null)
+            {
+                eventProperties.eventListenerExecutors.shutdown();
+            }
+            if(eventProperties.eventListenerRing!=null)
+            {
+                eventProperties.eventListenerRing.shutdown();
+            }
+            if(eventProperties.partitionExecutors!=null)
+            {
+                for (ExecutorService partitionExecutor : eventProperties.partitionExecutors)
+                {
+                    partitionExecutor.shutdown();
+                }
+            }
+            if(eventProperties.partitionRings!=null)
             {
-                for (Class eventClass : eventPropertiesMap.keySet())
+                for (EventRingBuffer partitionRing : eventProperties.partitionRings)
                 {
-                    int expiryTime = eventPropertiesMap.get(eventClass).expireTime;
-                    List<EventListenerSignature> events = null;
+                    partitionRing.shutdown();
+                }
+            }
+        }
 
-                    while ((events = ePersistenceInterface.getEvents(eventClass, startDate,
-                            isDistributed, instanceId, expiryTime, size)) != null)
-                    {
-                        if(events.size()==0)
-                            break;
+        initialized = false;
+        distributedEventHandler.shutdown();
+        if(isPersistent()) {
+            ePersistenceInterface.unsubscribe(distributedEventHandler);
+        }
 
-                        logger.info("Got " + events.size() + " events of type " + eventClass.getSimpleName() + ", processing....");
+        try {
+            Thread.sleep(10000);
+        } catch (InterruptedException e) {
+        }
 
-                        for (EventListenerSignature signature : events)
-                        {
-                            if(signature.event instanceof Map)
-                            {
-                                signature.event = getEventObject((Map<String, Object>)signature.event, eventClass);
-                                push(null, null, signature);
-                                ePersistenceInterface.removeEvent(signature);
-                            }
-                        }
+        // stopped last, the events waiting on the timer for their next tier are failed by the
+        // shutdown executors instead of never completing
+        if(timingWheel != null) {
+            timingWheel.stop();
+        }
+
+        if(eventStoreWriter != null) {
+            eventStoreWriter.shutdown();
+            eventStoreWriter = null;
+        }
+
+        // the events still pending are recovered at once by the other instances or the next run
+        if(isPersistent()) {
+            ePersistenceInterface.releaseLeases(instanceId);
+            leasedEvents.clear();
+        }
+
+        logger.info("Event Engine - Destroyed...");
+    }
+
+    /**
+     * Get the Event listener callback method for the class provided
+     *
+     * @param possEventListener
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private Method getEventListenerCallback(Class possEventListener, Method possibleMethod)
+    {
+        if(possibleMethod.isAnnotationPresent(EventListenerCallBack.class))
+        {
+            if(possibleMethod.getParameterTypes() == null || possibleMethod.getParameterTypes().length == 0)
+            {
+                logger.error("No callback method with a single argument found.. skipping EventListener..." + possEventListener.getSimpleName());
+                return null;
+            }
+            else if(possibleMethod.getParameterTypes().length > 1)
+            {
+                logger.error("Callback method with more than one argument found.. skipping EventListener..." + possEventListener.getSimpleName());
+                return null;
+            }
+            else if(getCallbackEventClass(possibleMethod) == null)
+            {
+                logger.error("Batched callback method without a List/Collection argument of a class element type found.. skipping EventListener..." + possEventListener.getSimpleName());
+                return null;
+            }
+            try {
+                if(appContext!=null) {
+                    try {
+                        appContext.getBean(possEventListener);
+                        return possibleMethod;
+                    } catch (Exception e) {
                     }
                 }
-                ePersistenceInterface.unLockEventStore(instanceId);
+                possEventListener.newInstance();
+                return possibleMethod;
+            } catch (InstantiationException e) {
+                logger.error("No no-args constructor provided.. skipping EventListener..." + possEventListener.getSimpleName());
+            } catch (IllegalAccessException e) {
+                logger.error("No access to the constructor available.. skipping EventListener..." + possEventListener.getSimpleName());
             }
         }
+        return null;
+    }
+
+    /**
+     * Whether the callback is a batched callback, the batch is passed as an ArrayList so the
+     * argument must be a List, Collection or Iterable, a Set or a Queue is not a batched callback
+     *
+     * @param callbackMethod
+     * @return
+     */
+    private static boolean isBatchCallback(Method callbackMethod)
+    {
+        Class<?> paramType = callbackMethod.getParameterTypes()[0];
+        return Collection.class.isAssignableFrom(paramType) && paramType.isAssignableFrom(ArrayList.class);
     }
 
-    private Object getEventObject(Map<String, Object> propMap, Class eventClass)
+    /**
+     * Get the event type the callback listens to, the argument type, or the element type
+     * for batched callbacks accepting a List/Collection of events
+     *
+     * @param callbackMethod
+     * @return the event class or null if the element type of a batched callback is not a class
+     * or if the argument is a Collection that cannot hold the batch
+     */
+    private static Class getCallbackEventClass(Method callbackMethod)
     {
-        Field[] fields = eventClass.getDeclaredFields();
+        Class paramType = callbackMethod.getParameterTypes()[0];
+        if(!Collection.class.isAssignableFrom(paramType)) {
+            return paramType;
+        }
+        if(!isBatchCallback(callbackMethod)) {
+            return null;
+        }
+        Type genericType = callbackMethod.getGenericParameterTypes()[0];
+        if(genericType instanceof ParameterizedType) {
+            Type[] typeArgs = ((ParameterizedType)genericType).getActualTypeArguments();
+            if(typeArgs.length == 1 && typeArgs[0] instanceof Class) {
+                return (Class)typeArgs[0];
+            }
+        }
+        return null;
+    }
 
-        Object eventObj = null;
+    /**
+     * Compile the callback method into a method handle of type (Object, Object)Object,
+     * void callbacks return null
+     *
+     * @param callbackMethod
+     * @return the invoker or null if the callback is not accessible
+     */
+    private MethodHandle getEventListenerInvoker(Method callbackMethod)
+    {
         try
         {
-            eventObj = eventClass.newInstance();
-            for (Field field : fields)
-            {
-                field.setAccessible(true);
-                field.set(eventObj, propMap.get(field.getName()));
-            }
+            callbackMethod.setAccessible(true);
+            return MethodHandles.lookup().unreflect(callbackMethod)
+                    .asType(MethodType.methodType(Object.class, Object.class, Object.class));
         }
-        catch (InstantiationException e)
+        catch (Exception e)
         {
-            logger.info("Error creating object of type " + eventClass.getSimpleName()
-                    + ", reason = no nullary constructor found..");
+            logger.error("Could not create invoker for callback " + callbackMethod.getDeclaringClass().getSimpleName()
+                    + "." + callbackMethod.getName() + ", reason = " + e.getMessage() + ".. skipping callback...");
         }
-        catch (IllegalAccessException e)
-        {
-            logger.info("Error creating object of type " + eventClass.getSimpleName()
-                    + ", reason = IllegalAccessException ");
+        return null;
+    }
+
+    /**
+     * Add the Event Listener object for a given Event object, publishes a new sorted listener snapshot
+     * @param eventClas
+     * @param eventListenerObject
+     */
+    private void mapEventListener(Class eventClas, EventListenerObject eventListenerObject)
+    {
+        List<EventListenerObject> eventListenerObjects = new ArrayList<EventListenerObject>();
+        if(eventListenerMap.get(eventClas) != null) {
+            Collections.addAll(eventListenerObjects, eventListenerMap.get(eventClas));
+        }
+        eventListenerObjects.add(eventListenerObject);
+        Collections.sort(eventListenerObjects, new Comparator<EventListenerObject>() {
+            public int compare(EventListenerObject o1, EventListenerObject o2)
+            {
+                return o2.priority.compareTo(o1.priority);
+            }
+        });
+        setEventListeners(eventClas, eventListenerObjects.toArray(new EventListenerObject[eventListenerObjects.size()]));
+        if(initialized && eventPropertiesMap.get(eventClas) == null) {
+            registerEvent(eventClas);
         }
+    }
 
-        return eventObj;
+    /**
+     * Publish the listener snapshot for the event type to the dispatchers
+     * @param eventClas
+     * @param eventListeners
+     */
+    private void setEventListeners(Class eventClas, EventListenerObject[] eventListeners)
+    {
+        eventListenerMap.put(eventClas, eventListeners);
+        EventProperties eventProperties = eventPropertiesMap.get(eventClas);
+        if(eventProperties != null) {
+            eventProperties.eventListeners = eventListeners;
+        }
     }
 
     /**
-     * Register Event Listener
-     * @param possEventListener
+     * Unregister all the callbacks of the Event Listener, safe to call while events are being
+     * dispatched, callbacks already queued still run, the listener executors are shutdown once
+     * no dispatch holding an older listener snapshot is handing a callback to them
+     * @param eventListenerClass
+     * @return whether any callback was unregistered
      */
-    @SuppressWarnings("unchecked")
-    public void registerListener(Class possEventListener)
+    public boolean unregisterListener(Class eventListenerClass)
     {
-        if(possEventListener != null && possEventListener.isAnnotationPresent(EventListener.class))
+        final List<EventListenerObject> removed = new ArrayList<EventListenerObject>();
+        synchronized (registrationLock)
         {
-            EventListener listannot = (EventListener)possEventListener.getAnnotation(EventListener.class);
-            Method[] methods = possEventListener.getMethods();
-            boolean callbackFound = false;
-            for (Method possibleMethod : methods)
+            for (Map.Entry<Class, EventListenerObject[]> entry : eventListenerMap.entrySet())
             {
-                Method callbackMethod = getEventListenerCallback(possEventListener, possibleMethod);
-                if(callbackMethod != null)
+                List<EventListenerObject> eventListenerObjects = new ArrayList<EventListenerObject>();
+                for (EventListenerObject eventListenerObject : entry.getValue())
                 {
-                    callbackFound = true;
-
-                    EventListenerCallBack callbackanot = callbackMethod.getAnnotation(EventListenerCallBack.class);
-                    boolean addResponseEvent = callbackanot.addResponseEvent();
-
-                    EventListenerObject eventListenerObject = new EventListenerObject();
-                    eventListenerObject.eventListenerClass = possEventListener;
-                    eventListenerObject.eventCallBackMethod = callbackMethod;
-                    eventListenerObject.isThreadSafe = listannot.threadSafe();
-                    eventListenerObject.addResponseEvent = addResponseEvent;
-                    eventListenerObject.priority = callbackanot.priority();
-                    eventListenerObject.delayNextPriorityListener = callbackanot.delayNextPriorityListener();
-                    if(listannot.poolSize() > 0) {
-                        eventListenerObject.eventListenerExecutors = Executors.newFixedThreadPool(listannot.poolSize());
+                    if(eventListenerObject.eventListenerClass == eventListenerClass) {
+                        removed.add(eventListenerObject);
+                    } else {
+                        eventListenerObjects.add(eventListenerObject);
                     }
-                    boolean isSpringManaged = false;
-                    if(appContext!=null) {
-                        try {
-                            eventListenerObject.eventListenerInstance = appContext.getBean(possEventListener);
-                            isSpringManaged = true;
-                        } catch (Exception e) {
-                        }
+                }
+                if(eventListenerObjects.size() != entry.getValue().length) {
+                    setEventListeners(entry.getKey(), eventListenerObjects.toArray(new EventListenerObject[eventListenerObjects.size()]));
+                }
+            }
+        }
+        if(removed.size() == 0) {
+            return false;
+        }
+        for (EventListenerObject eventListenerObject : removed)
+        {
+            eventListenerObject.unregistered = true;
+            logger.info("Unregistered " + eventListenerObject);
+        }
+        Runnable release = new Runnable() {
+            public void run()
+            {
+                for (EventListenerObject eventListenerObject : removed)
+                {
+                    if(eventListenerObject.dispatching.get() > 0 && batchScheduler != null && !batchScheduler.isShutdown()) {
+                        batchScheduler.schedule(this, LISTENER_RELEASE_POLL_MS, TimeUnit.MILLISECONDS);
+                        return;
                     }
-                    if(eventListenerObject.eventListenerInstance==null && listannot.threadSafe())
-                    {
-                        try
-                        {
-                            eventListenerObject.eventListenerInstance = possEventListener.newInstance();
-                        }
-                        catch (InstantiationException e)
-                        {
-                            logger.info("Could not register " + eventListenerObject
-                                    + ", reason = No nullary constructor found..");
-                        }
-                        catch (IllegalAccessException e)
-                        {
-                            logger.info("Could not register " + eventListenerObject
-                                    + ", reason = IllegalAccessException ");
-                        }
+                }
+                for (EventListenerObject eventListenerObject : removed)
+                {
+                    if(eventListenerObject.eventListenerBatch != null) {
+                        eventListenerObject.eventListenerBatch.flush();
+                    }
+                    if(eventListenerObject.eventListenerExecutors != null) {
+                        eventListenerObject.eventListenerExecutors.shutdown();
+                    }
+                    if(eventListenerObject.eventListenerRing != null) {
+                        eventListenerObject.eventListenerRing.shutdown();
                     }
-                    mapEventListener(callbackMethod.getParameterTypes()[0], eventListenerObject);
-                    logger.info("Registered " + eventListenerObject + ", isSpringManaged = " + isSpringManaged);
                 }
             }
-            if(!callbackFound) {
-                logger.error("No callback method found in the Listener.. skipping EventListener..." + possEventListener.getSimpleName());
+        };
+        if(batchScheduler != null && !batchScheduler.isShutdown()) {
+            batchScheduler.execute(release);
+        } else {
+            release.run();
+        }
+        return true;
+    }
+
+    /**
+     * Push the desired event to the event Handler Engine.
+     * @param event
+     */
+    public <T extends Serializable> void push(final T event)
+    {
+        if(event != null) {
+            Class eventClas = event.getClass();
+            push(eventClas, event, null, false);
+        }
+    }
+
+    /**
+     * Push the desired event to the event Handler Engine and get back a list of final Result Objects
+     * @param event
+     * @return
+     */
+    public <T extends Serializable> List<Object> pushAndGetResults(final T event)
+    {
+        if(event != null) {
+            Class eventClas = event.getClass();
+            CompletableFuture<List<CompletableFuture<Object>>> futureoffs = push(eventClas, event, null, true);
+            return getClearStatusHandler(futureoffs).getResults();
+        }
+        return null;
+    }
+
+    /**
+     * Push the desired event to the event Handler Engine and get back a future that completes
+     * with the list of final Result Objects once all the registered listeners are done
+     * @param event
+     * @return
+     */
+    public <T extends Serializable> CompletableFuture<List<Object>> pushAsync(final T event)
+    {
+        if(event != null) {
+            Class eventClas = event.getClass();
+            CompletableFuture<List<CompletableFuture<Object>>> futureoffs = push(eventClas, event, null, true);
+            return getClearStatusHandler(futureoffs).getResultsAsync();
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Push the desired event to the event Handler Engine and get back a list of Futures
+     * @param event
+     * @return
+     */
+    public <T extends Serializable> List<Future> pushAndGetFutures(final T event)
+    {
+        if(event != null) {
+            Class eventClas = event.getClass();
+            CompletableFuture<List<CompletableFuture<Object>>> futureoffs = push(eventClas, event, null, true);
+            return getClearStatusHandler(futureoffs).getFutures();
+        }
+        return null;
+    }
+
+    /**
+     * @param eventClas
+     * @param event
+     * @param trackResults whether the caller waits for the listener results
+     * @return list of Future if we need to return results
+     */
+    private CompletableFuture<List<CompletableFuture<Object>>> push(final Class evtCls, final Object evObj,
+            final EventListenerSignature eventSig, boolean trackResults)
+    {
+        EventProcessor mainpushcall = new EventProcessor(this, evtCls, evObj, eventSig, trackResults);
+        if(mainpushcall.isPartitioned()) {
+            if(mainpushcall.lane != null) {
+                mainpushcall.lane.execute(mainpushcall);
+            } else {
+                mainpushcall.run();
+            }
+        } else if(canDispatchInline(eventSig)) {
+            mainpushcall.run();
+        } else {
+            internalExecutors.execute(mainpushcall);
+        }
+        return mainpushcall.result;
+    }
+
+    /**
+     * Check whether the listener fan-out for this event can run on the pushing thread, only
+     * in-memory dispatch of fresh events qualifies, the later priority tiers of the event still
+     * continue on the internal executors<br/>
+     * In FORK_JOIN mode a fresh in-memory event pushed from one of the pool workers is always fanned
+     * out on that worker, its callbacks then go to the worker's own queue instead of a submission
+     * queue, a persistent event is not as its dispatch blocks on the event store
+     * @param eventSig
+     * @return
+     */
+    private boolean canDispatchInline(EventListenerSignature eventSig)
+    {
+        if(eventSig == null && !isPersistent() && isForkJoinWorker()) {
+            return true;
+        }
+        return dispatchMode == DispatchMode.INLINE && !isPersistent() && eventSig == null;
+    }
+
+    /**
+     * Check whether the current thread is a worker of the FORK_JOIN mode pool of the engine
+     * @return
+     */
+    private boolean isForkJoinWorker()
+    {
+        return executorMode == ExecutorMode.FORK_JOIN && Thread.currentThread() instanceof ForkJoinWorkerThread
+                && ((ForkJoinWorkerThread)Thread.currentThread()).getPool() == executors;
+    }
+
+    /**
+     * Invoke the listener callback for the event, push the response back to the engine if
+     * required and mark the event signature as processed
+     * @param eventListenerObject
+     * @param instance
+     * @param event
+     * @param signature
+     * @return the callback result
+     */
+    Object invokeListener(EventListenerObject eventListenerObject, Object instance, Object event,
+            EventListenerSignature signature)
+    {
+        Object result = null;
+        if(!cancelExpiry(signature)) {
+            return result;
+        }
+        try
+        {
+            result = (Object)eventListenerObject.eventCallBackInvoker.invokeExact(instance, event);
+            if(!eventListenerObject.eventCallBackMethod.getReturnType().equals(Void.class) && eventListenerObject.addResponseEvent)
+            {
+                push(eventListenerObject.eventCallBackMethod.getReturnType(), result, null, false);
             }
         }
+        catch (Throwable e)
+        {
+            signature.error = ExceptionUtils.getStackTrace(e);
+            logger.error("Got exception while invoking method " + e.getMessage());
+        }
+        markEventDone(signature);
+        return result;
     }
 
     /**
-     * Register Event class
-     * @param eventClass
+     * Invoke the batched listener callback for the accumulated events, push the response back
+     * to the engine if required and mark every event signature in the batch as processed
+     * @param eventListenerObject
+     * @param events
+     * @param signatures
+     * @param futures
      */
-    @SuppressWarnings({ "unchecked" })
-    private void registerEvent(Class eventClass)
+    void invokeListenerBatch(EventListenerObject eventListenerObject, List<Object> events,
+            List<EventListenerSignature> signatures, List<CompletableFuture<Object>> futures)
     {
-        EventProperties eventProperties = new EventProperties();
-        if(eventClass.isAnnotationPresent(EventType.class))
+        for (int i = signatures.size() - 1; i >= 0; i--)
         {
-            EventType evtType = (EventType)eventClass.getAnnotation(EventType.class);
-            eventProperties.idempotent = evtType.idempotent();
-            eventProperties.sequenceListenerPriority = evtType.sequenceListenerPriority();
-            eventProperties.isDistributed = evtType.distributed();
-            eventProperties.expireTime = evtType.expireTime();
-            if(evtType.distributed() && evtType.expireTime()<=0) {
-                logger.info("Event Type " + eventClass.getSimpleName() + " is of distributed type but does not define expireTime...skipping");
-                return;
+            if(!cancelExpiry(signatures.get(i)))
+            {
+                if(futures.get(i) != null) {
+                    futures.get(i).complete(null);
+                }
+                events.remove(i);
+                signatures.remove(i);
+                futures.remove(i);
             }
-            if(evtType.distributed() && evtType.processOnce()) {
-                eventProperties.isProcessOnce = evtType.processOnce();
+        }
+        if(events.isEmpty()) {
+            return;
+        }
+        Object result = null;
+        String error = null;
+        try
+        {
+            Object instance = eventListenerObject.eventListenerInstance;
+            if(instance==null && !eventListenerObject.isThreadSafe)
+            {
+                instance = eventListenerObject.eventListenerClass.newInstance();
             }
-            if(eventProperties.sequenceListenerPriority) {
-                eventProperties.eventListenerExecutors = Executors.newFixedThreadPool(1);
+            result = (Object)eventListenerObject.eventCallBackInvoker.invokeExact(instance, (Object)events);
+            if(!eventListenerObject.eventCallBackMethod.getReturnType().equals(Void.class) && eventListenerObject.addResponseEvent)
+            {
+                push(eventListenerObject.eventCallBackMethod.getReturnType(), result, null, false);
+            }
+        }
+        catch (Throwable e)
+        {
+            error = ExceptionUtils.getStackTrace(e);
+            logger.error("Got exception while invoking method " + e.getMessage());
+        }
+        for (int i = 0; i < signatures.size(); i++)
+        {
+            signatures.get(i).error = error;
+            markEventDone(signatures.get(i));
+            if(futures.get(i) != null) {
+                futures.get(i).complete(result);
             }
         }
-        logger.info("Registered " + eventProperties);
-        eventPropertiesMap.put(eventClass, eventProperties);
-        eventExpireClassMap.put(eventClass.getCanonicalName(), eventProperties.expireTime);
     }
 
     /**
-     * Clean up the global thread pool and the listener level thread pools
+     * Mark the event as processed in the store
+     * @param signature
      */
-    public void destroy()
+    private void markEventDone(EventListenerSignature signature)
     {
-        if(executors != null) {
-            executors.shutdown();
+        signature.status = signature.error==null?STATUS_SUCCESS:STATUS_FAILED;
+        signature.processedDate = new Date();
+        if(signature.instances==null) {
+            signature.instances = new ArrayList<String>();
+        }
+        signature.instances.add(instanceId);
+        if(signature.isDistributed() && !eventPropertiesMap.get(signature.getEvent().getClass()).isProcessOnce) {
+            signature.status = STATUS_PARTIAL;
+        }
+        signature.isLocked = false;
+        signature.leaseExpiry = null;
+        signature.leaseToken = null;
+        signature.leaseOwner = null;
+        if(isPersistent()) {
+            if(signature.id != null) {
+                leasedEvents.remove(signature.id);
+            }
+            updateSignature(signature);
+        } else if(signature.fingerprint != 0 && cancelExpiry(signature)) {
+            eventFingerprintTable.remove(signature.fingerprint);
         }
+    }
 
-        if(internalExecutors != null) {
-            internalExecutors.shutdown();
+    /**
+     * Write a new event signature to the event store, coalesced with other writes if enabled
+     * @param signature
+     */
+    private void storeSignature(EventListenerSignature signature)
+    {
+        if(isForkJoinWorker()) {
+            blockOnStore(signature, false);
+        } else {
+            writeSignature(signature, false);
+        }
+    }
+
+    /**
+     * Write the status of a stored event signature to the event store, coalesced with
+     * other writes if enabled
+     * @param signature
+     */
+    private void updateSignature(EventListenerSignature signature)
+    {
+        if(isForkJoinWorker()) {
+            blockOnStore(signature, true);
+        } else {
+            writeSignature(signature, true);
+        }
+    }
+
+    private void writeSignature(EventListenerSignature signature, boolean update)
+    {
+        EventStoreWriter writer = eventStoreWriter;
+        if(writer == null) {
+            ePersistenceInterface.storeEvent(signature);
+        } else if(update) {
+            writer.update(signature);
+        } else {
+            writer.store(signature);
         }
+    }
 
-        for (Map.Entry<Class, List<EventListenerObject>> entry : eventListenerMap.entrySet())
+    /**
+     * Write the event signature from a worker of the FORK_JOIN mode pool, the pool is told
+     * the worker blocks on the event store so that it can start a spare worker meanwhile
+     * @param signature
+     * @param update
+     */
+    private void blockOnStore(final EventListenerSignature signature, final boolean update)
+    {
+        try
         {
-            List<EventListenerObject> listeners = entry.getValue();
-            for (EventListenerObject eventListenerObject : listeners)
-            {
-                if(eventListenerObject.eventListenerExecutors != null) {
-                    eventListenerObject.eventListenerExecutors.shutdown();
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                private boolean done;
+
+                public boolean block()
+                {
+                    writeSignature(signature, update);
+                    done = true;
+                    return true;
                 }
-            }
-        }
 
-        for (Map.Entry<Class, EventProperties> entry : eventPropertiesMap.entrySet())
+                public boolean isReleasable()
+                {
+                    return done;
+                }
+            });
+        }
+        catch (InterruptedException e)
         {
-            EventProperties eventProperties = entry.getValue();
-            if(eventProperties.sequenceListenerPriority && eventProperties.eventListenerExecutors!=null)
-            {
-                eventProperties.eventListenerExecutors.shutdown();
-            }
+            Thread.currentThread().interrupt();
         }
+    }
 
-        initialized = false;
-        distributedEventHandler.done.set(false);
+    /**
+     * Run the task on the engine timer after a timer tick
+     * @param task
+     * @return false if the timer is not running, the task is then never run
+     */
+    boolean scheduleOnTimer(Runnable task)
+    {
+        return scheduleOnTimer(task, timerTickMs);
+    }
 
-        try {
-            Thread.sleep(10000);
-        } catch (InterruptedException e) {
+    /**
+     * Run the task on the engine timer once the delay elapses
+     * @param task
+     * @param delayMs
+     * @return false if the timer is not running, the task is then never run
+     */
+    boolean scheduleOnTimer(Runnable task, long delayMs)
+    {
+        EventTimingWheel wheel = timingWheel;
+        if(wheel == null || !wheel.isRunning()) {
+            return false;
         }
+        wheel.schedule(task, delayMs);
+        return true;
+    }
 
-        logger.info("Event Engine - Destroyed...");
+    /**
+     * Fail a listener callback that could not be queued
+     * @param task
+     * @param reason
+     */
+    private void rejectListenerTask(ListenerTask task, String reason)
+    {
+        rejectSignature(task.signature, task.future, reason);
     }
 
     /**
-     * Get the Event listener callback method for the class provided
-     *
-     * @param possEventListener
-     * @return
+     * Fail a listener callback that could not be queued
+     * @param signature
+     * @param future may be null
+     * @param reason
      */
-    @SuppressWarnings("unchecked")
-    private Method getEventListenerCallback(Class possEventListener, Method possibleMethod)
+    void rejectSignature(EventListenerSignature signature, CompletableFuture<Object> future, String reason)
     {
-        if(possibleMethod.isAnnotationPresent(EventListenerCallBack.class))
-        {
-            if(possibleMethod.getParameterTypes() == null || possibleMethod.getParameterTypes().length == 0)
-            {
-                logger.error("No callback method with a single argument found.. skipping EventListener..." + possEventListener.getSimpleName());
-                return null;
-            }
-            else if(possibleMethod.getParameterTypes().length > 1)
-            {
-                logger.error("Callback method with more than one argument found.. skipping EventListener..." + possEventListener.getSimpleName());
-                return null;
-            }
-            try {
-                if(appContext!=null) {
-                    try {
-                        appContext.getBean(possEventListener);
-                        return possibleMethod;
-                    } catch (Exception e) {
-                    }
-                }
-                possEventListener.newInstance();
-                return possibleMethod;
-            } catch (InstantiationException e) {
-                logger.error("No no-args constructor provided.. skipping EventListener..." + possEventListener.getSimpleName());
-            } catch (IllegalAccessException e) {
-                logger.error("No access to the constructor available.. skipping EventListener..." + possEventListener.getSimpleName());
-            }
+        signature.error = reason;
+        markEventDone(signature);
+        if(future != null) {
+            future.completeExceptionally(new RejectedExecutionException(reason));
         }
-        return null;
     }
 
     /**
-     * Add the Event Listener object for a given Event object
-     * @param eventClas
-     * @param eventListenerObject
+     * Park a listener callback that could not be queued in the persistence store,
+     * handleSpilledEvents dispatches it again
+     * @param task
      */
-    private void mapEventListener(Class eventClas, EventListenerObject eventListenerObject)
+    private void spillListenerTask(ListenerTask task)
     {
-        if(eventListenerMap.get(eventClas) == null) {
-            List<EventListenerObject> eventListenerObjects = new ArrayList<EventListenerObject>();
-            eventListenerMap.put(eventClas, eventListenerObjects);
-            eventListenerObjects.add(eventListenerObject);
-        } else {
-            eventListenerMap.get(eventClas).add(eventListenerObject);
-        }
-        Collections.sort(eventListenerMap.get(eventClas), new Comparator<EventListenerObject>() {
-            public int compare(EventListenerObject o1, EventListenerObject o2)
-            {
-                return o2.priority.compareTo(o1.priority);
-            }
-        });
+        spillSignature(task.signature, task.future);
     }
 
     /**
-     * Push the desired event to the event Handler Engine.
-     * @param event
+     * Park a listener callback that could not be queued in the persistence store,
+     * handleSpilledEvents dispatches it again
+     * @param signature
+     * @param future may be null
      */
-    public <T extends Serializable> void push(final T event)
+    void spillSignature(EventListenerSignature signature, CompletableFuture<Object> future)
     {
-        if(event != null) {
-            Class eventClas = event.getClass();
-            push(eventClas, event, null);
+        if(signature.id != null) {
+            leasedEvents.remove(signature.id);
+        }
+        signature.status = STATUS_SPILLED;
+        signature.isLocked = false;
+        signature.leaseExpiry = null;
+        signature.leaseToken = null;
+        signature.leaseOwner = null;
+        updateSignature(signature);
+        if(future != null) {
+            future.complete(null);
         }
     }
 
     /**
-     * Push the desired event to the event Handler Engine and get back a list of final Result Objects
-     * @param event
-     * @return
+     * Dispatch the listener callbacks spilled to the persistence store while the executor
+     * queues were full, only as many as the queues can take, the spilled events are claimed
+     * like the recovered ones so that only one instance dispatches each of them
+     * @return the number of events dispatched
      */
-    public <T extends Serializable> List<Object> pushAndGetResults(final T event)
+    @SuppressWarnings("unchecked")
+    protected int handleSpilledEvents()
     {
-        if(event != null) {
-            Class eventClas = event.getClass();
-            Future<List<Future>> futureoffs = push(eventClas, event, null);
-            return getClearStatusHandler(futureoffs).getResults();
+        int count = 0;
+        if(isPersistent() && eventPropertiesMap.size() > 0 ) {
+            for (Class eventClass : eventPropertiesMap.keySet())
+            {
+                int room = queueCapacity > 0 ? queueCapacity - getQueueDepth() : recoveryBatchSize;
+                if(room <= 0) {
+                    return count;
+                }
+                List<EventListenerSignature> events = ePersistenceInterface.claimEventsByStatus(eventClass,
+                        STATUS_SPILLED, instanceId, Math.min(room, recoveryBatchSize), eventLeaseTimeMs);
+                if(events == null || events.size() == 0) {
+                    continue;
+                }
+
+                logger.info("Claimed " + events.size() + " spilled events of type " + eventClass.getSimpleName() + ", processing....");
+                count += events.size();
+                dispatchRecoveredEvents(events, eventClass);
+            }
         }
-        return null;
+        return count;
     }
 
     /**
-     * Push the desired event to the event Handler Engine and get back a list of Futures
-     * @param event
-     * @return
+     * Handles listener callbacks rejected by a full executor queue as per the rejection policy
+     * @author Sumeet Chhetri<br/>
+     *
      */
-    public <T extends Serializable> List<Future> pushAndGetFutures(final T event)
+    private static final class EventRejectionHandler implements RejectedExecutionHandler
     {
-        if(event != null) {
-            Class eventClas = event.getClass();
-            Future<List<Future>> futureoffs = push(eventClas, event, null);
-            return getClearStatusHandler(futureoffs).getFutures();
+        private EventHandlerEngine eventEngine;
+
+        private RejectionPolicy policy;
+
+        /**
+         * The thread of a partition lane, only set for the lane executors
+         */
+        private volatile Thread laneThread;
+
+        private EventRejectionHandler(EventHandlerEngine eventEngine, RejectionPolicy policy)
+        {
+            this.eventEngine = eventEngine;
+            this.policy = policy!=null?policy:RejectionPolicy.CALLER_RUNS;
+        }
+
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+        {
+            if(executor.isShutdown()) {
+                if(r instanceof ListenerTask) {
+                    eventEngine.rejectListenerTask((ListenerTask)r, "Executor shutdown, callback rejected");
+                } else if(r instanceof EventListenerBatch.Batch) {
+                    ((EventListenerBatch.Batch)r).reject("Executor shutdown, batch rejected");
+                } else if(r instanceof EventProcessor) {
+                    ((EventProcessor)r).reject("Executor shutdown, event rejected");
+                }
+                return;
+            }
+            if(laneThread != null && r instanceof EventProcessor) {
+                rejectLaneEvent((EventProcessor)r, executor);
+                return;
+            }
+            if(laneThread != null && r instanceof EventListenerBatch.Batch) {
+                rejectLaneBatch((EventListenerBatch.Batch)r, executor);
+                return;
+            }
+            if(r instanceof EventProcessor && ((EventProcessor)r).deferred) {
+                ((EventProcessor)r).defer(executor);
+                return;
+            }
+            if(r instanceof EventListenerBatch.Batch) {
+                rejectBatch((EventListenerBatch.Batch)r, executor);
+                return;
+            }
+            RejectionPolicy rpolicy = policy;
+            if(!(r instanceof ListenerTask) || (rpolicy == RejectionPolicy.SPILL && !eventEngine.isPersistent())) {
+                rpolicy = RejectionPolicy.CALLER_RUNS;
+            }
+            switch (rpolicy)
+            {
+                case BLOCK:
+                    try {
+                        executor.getQueue().put(r);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        eventEngine.rejectListenerTask((ListenerTask)r, "Interrupted while waiting for the queue, callback rejected");
+                    }
+                    break;
+                case DROP_OLDEST:
+                    dropOldest(executor);
+                    executor.execute(r);
+                    break;
+                case DROP_NEWEST:
+                    eventEngine.rejectListenerTask((ListenerTask)r, "Queue full, callback dropped");
+                    break;
+                case SPILL:
+                    eventEngine.spillListenerTask((ListenerTask)r);
+                    break;
+                default:
+                    r.run();
+                    break;
+            }
+        }
+
+        /**
+         * A full executor handles a batch as per the rejection policy like a listener callback,
+         * except that a batch flushed by the timer is never run nor waited for on the scheduler
+         * thread, with BLOCK or CALLER_RUNS it is handed over again after the batch delay
+         * @param batch
+         * @param executor
+         */
+        private void rejectBatch(EventListenerBatch.Batch batch, ThreadPoolExecutor executor)
+        {
+            RejectionPolicy rpolicy = policy;
+            if(rpolicy == RejectionPolicy.SPILL && !eventEngine.isPersistent()) {
+                rpolicy = RejectionPolicy.CALLER_RUNS;
+            }
+            if(batch.isTimed() && (rpolicy == RejectionPolicy.BLOCK || rpolicy == RejectionPolicy.CALLER_RUNS))
+            {
+                batch.retry();
+                return;
+            }
+            switch (rpolicy)
+            {
+                case BLOCK:
+                    try {
+                        executor.getQueue().put(batch);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        batch.reject("Interrupted while waiting for the queue, batch rejected");
+                    }
+                    break;
+                case DROP_OLDEST:
+                    dropOldest(executor);
+                    executor.execute(batch);
+                    break;
+                case DROP_NEWEST:
+                    batch.reject("Queue full, batch dropped");
+                    break;
+                case SPILL:
+                    batch.spill();
+                    break;
+                default:
+                    batch.run();
+                    break;
+            }
+        }
+
+        /**
+         * A batch on a full lane is handled like an event of the lane, it never runs on the
+         * calling thread and a batch flushed by the timer or handed over from the lane thread
+         * itself is handed over again after the batch delay
+         * @param batch
+         * @param executor
+         */
+        private void rejectLaneBatch(EventListenerBatch.Batch batch, ThreadPoolExecutor executor)
+        {
+            if(batch.isTimed() || Thread.currentThread() == laneThread)
+            {
+                batch.retry();
+                return;
+            }
+            switch (policy)
+            {
+                case DROP_NEWEST:
+                    batch.reject("Lane queue full, batch dropped");
+                    break;
+                case DROP_OLDEST:
+                    dropOldest(executor);
+                    executor.execute(batch);
+                    break;
+                default:
+                    try {
+                        executor.getQueue().put(batch);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        batch.reject("Interrupted while waiting for the lane queue, batch rejected");
+                    }
+                    break;
+            }
+        }
+
+        /**
+         * Drop the oldest queued callback, batch or lane event, any other task is run instead
+         * @param executor
+         */
+        private void dropOldest(ThreadPoolExecutor executor)
+        {
+            Runnable oldest = executor.getQueue().poll();
+            if(oldest instanceof ListenerTask) {
+                eventEngine.rejectListenerTask((ListenerTask)oldest, "Queue full, oldest callback dropped");
+            } else if(oldest instanceof EventListenerBatch.Batch) {
+                ((EventListenerBatch.Batch)oldest).reject("Queue full, oldest batch dropped");
+            } else if(oldest instanceof EventProcessor && laneThread != null) {
+                ((EventProcessor)oldest).reject("Lane queue full, oldest event dropped");
+            } else if(oldest != null) {
+                oldest.run();
+            }
+        }
+
+        /**
+         * A full lane never runs the event on the calling thread, that would overtake the events
+         * of the lane queued before it, BLOCK, CALLER_RUNS and SPILL wait for room on the lane
+         * and an event pushed from the lane thread itself, which cannot wait for its own lane, is
+         * queued again on the engine timer
+         * @param processor
+         * @param executor
+         */
+        private void rejectLaneEvent(EventProcessor processor, ThreadPoolExecutor executor)
+        {
+            if(Thread.currentThread() == laneThread || processor.deferred)
+            {
+                processor.defer(executor);
+                return;
+            }
+            switch (policy)
+            {
+                case DROP_NEWEST:
+                    processor.reject("Lane queue full, event dropped");
+                    break;
+                case DROP_OLDEST:
+                    dropOldest(executor);
+                    executor.execute(processor);
+                    break;
+                default:
+                    try {
+                        executor.getQueue().put(processor);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        processor.reject("Interrupted while waiting for the lane queue, event rejected");
+                    }
+                    break;
+            }
         }
-        return null;
     }
 
     /**
-     * @param eventClas
-     * @param event
-     * @param isReturns
-     * @return list of Future if we need to return results
+     * A listener callback queued on an executor
+     * @author Sumeet Chhetri<br/>
+     *
      */
-    private Future<List<Future>> push(final Class evtCls, final Object evObj, final EventListenerSignature eventSig)
+    private static final class ListenerTask implements Runnable
     {
-        EventProcessor mainpushcall = new EventProcessor(this, evtCls, evObj, eventSig);
-        return internalExecutors.submit(mainpushcall);
+        private EventHandlerEngine eventEngine;
+
+        private EventListenerObject eventListenerObject;
+
+        private Object instance;
+
+        private Object event;
+
+        private EventListenerSignature signature;
+
+        private CompletableFuture<Object> future;
+
+        private ListenerTask(EventHandlerEngine eventEngine, EventListenerObject eventListenerObject, Object instance,
+                Object event, EventListenerSignature signature, CompletableFuture<Object> future)
+        {
+            this.eventEngine = eventEngine;
+            this.eventListenerObject = eventListenerObject;
+            this.instance = instance;
+            this.event = event;
+            this.signature = signature;
+            this.future = future;
+        }
+
+        public void run()
+        {
+            try
+            {
+                Object result = eventEngine.invokeListener(eventListenerObject, instance, event, signature);
+                if(future != null) {
+                    future.complete(result);
+                }
+            }
+            catch (Throwable e)
+            {
+                if(future != null) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }
     }
 
-    private ClearEventStatusHandler getClearStatusHandler(Future<List<Future>> futureoffs)
+    private ClearEventStatusHandler getClearStatusHandler(CompletableFuture<List<CompletableFuture<Object>>> futureoffs)
     {
         ClearEventStatusHandler clStatusHandler = new ClearEventStatusHandler();
         clStatusHandler.futureoffs = futureoffs;
@@ -788,7 +2828,7 @@ public class EventHandlerEngine
      * @author Sumeet Chhetri<br/>
      *
      */
-    private static final class EventProcessor implements Callable<List<Future>>
+    private static final class EventProcessor implements Runnable
     {
         private EventHandlerEngine eventEngine;
 
@@ -798,132 +2838,353 @@ public class EventHandlerEngine
 
         private EventListenerSignature eventSig;
 
+        private boolean trackResults;
+
+        private byte[] eventData;
+
+        private long eventFingerprint;
+
+        private boolean fingerprinted;
+
+        /**
+         * Completed with the callback futures once the last priority tier is dispatched
+         */
+        private final CompletableFuture<List<CompletableFuture<Object>>> result = new CompletableFuture<List<CompletableFuture<Object>>>();
+
+        private final List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>();
+
+        private EventProperties eventProperties;
+
+        /**
+         * The listeners of the first run, the later priority tiers use the same snapshot
+         */
+        private EventListenerObject[] eventListeners;
+
+        /**
+         * The listener the next priority tier starts at
+         */
+        private int nextIndex;
+
+        private int partition = -1;
+
+        /**
+         * The lane of an event of a partitioned event type, the fan-out and the callbacks of the
+         * event run on it
+         */
+        private ExecutorService lane;
+
+        /**
+         * Set once the event is handed over again from the engine timer or from a callback thread to
+         * continue with the next tier, it is then never run nor waited for on the handing thread
+         */
+        private volatile boolean deferred;
+
         /**
          * @param eventEngine
          * @param evtCls
          * @param evObj
          * @param eventSig
+         * @param trackResults
          */
         private EventProcessor(EventHandlerEngine eventEngine, Class evtCls, Object evObj,
-                EventListenerSignature eventSig)
+                EventListenerSignature eventSig, boolean trackResults)
         {
             super();
             this.eventEngine = eventEngine;
             this.evtCls = evtCls;
             this.evObj = evObj;
             this.eventSig = eventSig;
+            this.trackResults = trackResults;
         }
 
-        public List<Future> call() throws Exception
+        public void run()
         {
-            List<Future> futures = new ArrayList<Future>();
-            final Class eventClas = eventSig!=null?eventSig.getEvent().getClass():evtCls;
-            final Object event = eventSig!=null?eventSig.getEvent():evObj;
-            if(eventEngine.eventListenerMap.get(eventClas) != null) {
-                List<EventListenerObject> eventListeners = eventEngine.eventListenerMap.get(eventClas);
-                for (int index = 0;index < eventListeners.size(); index++)
-                {
-                    final EventListenerObject eventListenerObject = eventListeners.get(index);
+            try
+            {
+                if(dispatchTiers()) {
+                    result.complete(futures);
+                }
+            }
+            catch (Throwable e)
+            {
+                result.completeExceptionally(e);
+            }
+        }
 
-                    if(!shouldProcessListenerCallback(eventSig, eventListenerObject)) {
-                        continue;
-                    }
+        /**
+         * Dispatch the listener callbacks from the next priority tier on, the run ends after a tier
+         * whose listeners delay the next priority or, if the event type awaits the listener priority,
+         * after a tier with callbacks, the next tier is continued on the timer or once the callbacks
+         * of the tier complete
+         * @return whether the last tier was dispatched
+         */
+        private boolean dispatchTiers()
+        {
+            if(eventListeners == null)
+            {
+                eventProperties = eventEngine.eventPropertiesMap.get(eventSig!=null?eventSig.getEvent().getClass():evtCls);
+                if(eventProperties == null) {
+                    return true;
+                }
+                eventListeners = eventProperties.eventListeners;
+            }
+            final Object event = eventSig!=null?eventSig.getEvent():evObj;
+            long tierDelay = 0;
+            List<CompletableFuture<Object>> tierFutures = eventProperties.awaitListenerPriority
+                    ? new ArrayList<CompletableFuture<Object>>() : null;
+            for (int index = nextIndex; index < eventListeners.length; index++)
+            {
+                final EventListenerObject eventListenerObject = eventListeners[index];
 
+                if(shouldProcessListenerCallback(eventSig, eventListenerObject) && eventListenerObject.enterDispatch())
+                {
                     try
                     {
-                        Object nfoInstance = null;
-                        if(eventListenerObject.eventListenerInstance==null && !eventListenerObject.isThreadSafe)
-                        {
-                            nfoInstance = eventListenerObject.eventListenerClass.newInstance();
+                        if(!dispatchListener(eventListenerObject, event, tierFutures)) {
+                            break;
                         }
-                        else
+                    }
+                    finally
+                    {
+                        eventListenerObject.exitDispatch();
+                    }
+                    tierDelay = Math.max(tierDelay, eventListenerObject.delayNextPriorityListener);
+                }
+
+                if(index+1<eventListeners.length && eventListenerObject.priority>eventListeners[index+1].priority)
+                {
+                    if(tierDelay > 0 || !isDone(tierFutures))
+                    {
+                        nextIndex = index + 1;
+                        continueAfter(tierFutures, tierDelay);
+                        return false;
+                    }
+                    tierDelay = 0;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Continue with the next priority tier once the tier callbacks complete and the delay elapses,
+         * the delay runs on the engine timer so no thread waits for it
+         * @param tierFutures
+         * @param delay
+         */
+        private void continueAfter(List<CompletableFuture<Object>> tierFutures, final long delay)
+        {
+            if(tierFutures == null || tierFutures.size() == 0)
+            {
+                continueAfter(delay);
+                return;
+            }
+            CompletableFuture.allOf(tierFutures.toArray(new CompletableFuture[tierFutures.size()]))
+                    .whenComplete(new BiConsumer<Void, Throwable>() {
+                        public void accept(Void value, Throwable error)
                         {
-                            nfoInstance = eventListenerObject.eventListenerInstance;
+                            continueAfter(delay);
                         }
+                    });
+        }
+
+        private void continueAfter(long delay)
+        {
+            ExecutorService executor = lane!=null?lane:eventEngine.internalExecutors;
+            if(delay > 0) {
+                resumeAfter(executor, delay);
+            } else {
+                resume(executor);
+            }
+        }
+
+        private static boolean isDone(List<CompletableFuture<Object>> tierFutures)
+        {
+            if(tierFutures != null) {
+                for (CompletableFuture<Object> future : tierFutures)
+                {
+                    if(!future.isDone()) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
 
-                        final Object oInstance = nfoInstance;
-                        final Method oCallbackMeth = eventListenerObject.eventCallBackMethod;
+        /**
+         * Queue the event on the executor again after a timer tick, for a full executor that
+         * must not be waited for on the calling thread
+         * @param executor
+         */
+        private void defer(ExecutorService executor)
+        {
+            resumeAfter(executor, eventEngine.timerTickMs);
+        }
 
-                        final EventListenerSignature signature = eventSig!=null?eventSig:getSignature(event, index);
+        /**
+         * Hand the event over to the executor from the engine timer once the delay elapses, the
+         * event is failed if the timer is stopped
+         * @param executor
+         * @param delay
+         */
+        private void resumeAfter(final ExecutorService executor, long delay)
+        {
+            deferred = true;
+            boolean scheduled = eventEngine.scheduleOnTimer(new Runnable() {
+                public void run()
+                {
+                    resume(executor);
+                }
+            }, delay);
+            if(!scheduled) {
+                reject("Engine timer stopped, event rejected");
+            }
+        }
 
-                        if(eventEngine.eventPropertiesMap.get(eventClas).idempotent &&
-                                findDuplicate(signature, eventEngine.eventPropertiesMap.get(eventClas).expireTime))
-                        {
-                            logger.info("The event of type " + eventClas.getSimpleName() + " is marked as idempotent " +
-                                    "and a pending event alreay exists, hence skipping event....");
-                            break;
-                        }
+        /**
+         * Hand the event over to the executor, a full executor queues it again on the engine timer
+         * instead of running it on the calling thread and a shutdown executor fails it
+         * @param executor
+         */
+        private void resume(ExecutorService executor)
+        {
+            deferred = true;
+            try
+            {
+                executor.execute(this);
+            }
+            catch (RejectedExecutionException e)
+            {
+                reject("Executor shutdown, event rejected");
+            }
+        }
 
-                        if(eventSig!=null) {
-                            signature.isLocked = true;
-                        }
-                        storeEvent(signature);
-
-                        Callable<Object> callserve = new Callable<Object>() {
-                            public Object call() throws Exception
-                            {
-                                Object result = null;
-                                try
-                                {
-                                    result = oCallbackMeth.invoke(oInstance, new Object[]{event});
-                                    if(!oCallbackMeth.getReturnType().equals(Void.class) && eventListenerObject.addResponseEvent)
-                                    {
-                                        eventEngine.push(oCallbackMeth.getReturnType(), result, null);
-                                    }
-                                }
-                                catch (IllegalArgumentException e)
-                                {
-                                    signature.error = ExceptionUtils.getStackTrace(e);
-                                    logger.error("Invalid argument passed to method " + eventListenerObject.eventListenerClass.getSimpleName()
-                                                    + "." + oCallbackMeth.getName());
-                                }
-                                catch (IllegalAccessException e)
-                                {
-                                    signature.error = ExceptionUtils.getStackTrace(e);
-                                    logger.error("IllegalAccessException " + e.getMessage());
-                                }
-                                catch (InvocationTargetException e)
-                                {
-                                    signature.error = ExceptionUtils.getStackTrace(e);
-                                    logger.error("Got exception while invoking method " + e.getMessage());
-                                }
-                                markEventDone(signature);
-                                return result;
-                            }
-                        };
-
-                        if(index+1<eventListeners.size()) {
-                            if(eventListenerObject.delayNextPriorityListener>0 &&
-                                    eventListenerObject.priority>eventListeners.get(index+1).priority) {
-                                Thread.sleep(eventListenerObject.delayNextPriorityListener);
-                            }
-                        }
+        /**
+         * Fail the event that could not be queued, a recovered event signature is marked as failed
+         * @param reason
+         */
+        private void reject(String reason)
+        {
+            logger.error(reason);
+            if(eventSig != null)
+            {
+                eventSig.error = reason;
+                eventEngine.markEventDone(eventSig);
+            }
+            result.completeExceptionally(new RejectedExecutionException(reason));
+        }
+
+        /**
+         * Hand the listener callback for the event off to its executor, ring buffer or batch
+         * @param eventListenerObject
+         * @param event
+         * @param tierFutures collects the callback futures of the tier if the tier is awaited, may be null
+         * @return false if a pending duplicate of the idempotent event exists and no more listeners are to be called
+         */
+        private boolean dispatchListener(EventListenerObject eventListenerObject, Object event,
+                List<CompletableFuture<Object>> tierFutures)
+        {
+            final Class eventClas = event.getClass();
+            try
+            {
+                Object nfoInstance = null;
+                if(eventListenerObject.eventListenerInstance==null && !eventListenerObject.isThreadSafe
+                        && eventListenerObject.eventListenerBatch==null)
+                {
+                    nfoInstance = eventListenerObject.eventListenerClass.newInstance();
+                }
+                else
+                {
+                    nfoInstance = eventListenerObject.eventListenerInstance;
+                }
+
+                final Object oInstance = nfoInstance;
+
+                final EventListenerSignature signature = eventSig!=null?eventSig:getSignature(event, eventProperties, eventListenerObject);
+                if(signature.eventData == null) {
+                    signature.eventData = getEventData(event);
+                }
+                if(signature.eventData != null && signature.eventHash == 0) {
+                    signature.eventHash = getEventFingerprint(event);
+                }
+                if(eventProperties.idempotent && signature.fingerprint == 0
+                        && (!eventEngine.isPersistent() || eventProperties.duplicateFilter != null)
+                        && getEventFingerprint(event) != 0) {
+                    signature.fingerprint = EventFingerprintTable.combine(getEventFingerprint(event),
+                            eventListenerObject.listenerFingerprint);
+                }
+
+                if(eventProperties.idempotent && findDuplicate(signature, eventProperties))
+                {
+                    logger.info("The event of type " + eventClas.getSimpleName() + " is marked as idempotent " +
+                            "and a pending event alreay exists, hence skipping event....");
+                    return false;
+                }
 
-                        if(eventEngine.eventPropertiesMap.get(eventClas)!=null
-                                && eventEngine.eventPropertiesMap.get(eventClas).eventListenerExecutors!=null)
+                if(eventSig!=null) {
+                    signature.isLocked = true;
+                }
+                storeEvent(signature, eventProperties);
+
+                CompletableFuture<Object> future = trackResults || tierFutures != null ? new CompletableFuture<Object>() : null;
+
+                if(eventListenerObject.eventListenerBatch != null)
+                {
+                    addToBatch(eventListenerObject.eventListenerBatch, event, signature, future);
+                }
+                else
+                {
+                    EventRingBuffer eventListenerRing = eventProperties.eventListenerRing!=null
+                            ? eventProperties.eventListenerRing : eventListenerObject.eventListenerRing;
+                    if(eventProperties.partitionRings != null) {
+                        eventListenerRing = eventProperties.partitionRings[getPartition(event)];
+                    }
+                    if(eventListenerRing != null)
+                    {
+                        eventListenerRing.publish(eventListenerObject, oInstance, event, signature, future);
+                    }
+                    else if(lane != null)
+                    {
+                        new ListenerTask(eventEngine, eventListenerObject, oInstance, event, signature, future).run();
+                    }
+                    else
+                    {
+                        ExecutorService listenerExecutors = null;
+                        if(eventProperties.eventListenerExecutors!=null)
                         {
-                            futures.add(eventEngine.eventPropertiesMap.get(eventClas).eventListenerExecutors.submit(callserve));
+                            listenerExecutors = eventProperties.eventListenerExecutors;
                         }
                         else if(eventListenerObject.eventListenerExecutors != null)
                         {
-                            futures.add(eventListenerObject.eventListenerExecutors.submit(callserve));
+                            listenerExecutors = eventListenerObject.eventListenerExecutors;
                         }
-                        else if(eventEngine.executors != null)
+                        else
                         {
-                            futures.add(eventEngine.executors.submit(callserve));
+                            listenerExecutors = eventEngine.executors;
                         }
-                    }
-                    catch (InstantiationException e)
-                    {
-                        logger.error("No nullary constructor found..");
-                    }
-                    catch (IllegalAccessException e)
-                    {
-                        logger.error("IllegalAccessException " + e.getMessage());
+
+                        if(listenerExecutors == null) {
+                            return true;
+                        }
+                        listenerExecutors.execute(new ListenerTask(eventEngine, eventListenerObject, oInstance, event, signature, future));
                     }
                 }
+
+                if(future != null && trackResults) {
+                    futures.add(future);
+                }
+                if(future != null && tierFutures != null) {
+                    tierFutures.add(future);
+                }
+            }
+            catch (InstantiationException e)
+            {
+                logger.error("No nullary constructor found..");
+            }
+            catch (IllegalAccessException e)
+            {
+                logger.error("IllegalAccessException " + e.getMessage());
             }
-            return futures;
+            return true;
         }
 
         /**
@@ -937,8 +3198,8 @@ public class EventHandlerEngine
         {
             if(eventSig!=null) {
                 if(eventSig.getListenerClassName()!=null && eventSig.getListenerMethodName()!=null) {
-                    if(!eventSig.getListenerClassName().equals(eventListenerObject.eventListenerClass.getSimpleName())
-                            || !eventSig.getListenerMethodName().equals(eventListenerObject.eventCallBackMethod.getName()))
+                    if(!eventSig.getListenerClassName().equals(eventListenerObject.listenerClassName)
+                            || !eventSig.getListenerMethodName().equals(eventListenerObject.listenerMethodName))
                     {
                         return false;
                     }
@@ -951,8 +3212,9 @@ public class EventHandlerEngine
         /**
          * Store the event in the event store
          * @param signature
+         * @param eventProperties
          */
-        private void storeEvent(EventListenerSignature signature)
+        private void storeEvent(EventListenerSignature signature, EventProperties eventProperties)
         {
             signature.dispatchDate = new Date();
             if(signature.isDistributed()) {
@@ -960,78 +3222,230 @@ public class EventHandlerEngine
             } else {
                 signature.status = STATUS_PENDING;
             }
-            signature.id = signature.event.getClass().getSimpleName() + UNDER_SCORE
-                    + eventEngine.getInstanceId() + UNDER_SCORE + System.nanoTime();
             if(eventEngine.isPersistent()) {
-                eventEngine.ePersistenceInterface.storeEvent(signature);
+                signature.id = eventProperties.eventClassName + UNDER_SCORE
+                        + eventEngine.getInstanceId() + UNDER_SCORE + System.nanoTime();
+                signature.leaseToken = null;
+                if(!signature.isDistributed() || signature.isLocked) {
+                    signature.leaseExpiry = new Date(signature.dispatchDate.getTime() + eventEngine.eventLeaseTimeMs);
+                } else {
+                    signature.leaseExpiry = null;
+                }
+                signature.leaseOwner = signature.leaseExpiry != null ? eventEngine.getInstanceId() : null;
+                eventEngine.storeSignature(signature);
+                if(signature.leaseExpiry != null) {
+                    eventEngine.leasedEvents.put(signature.id, signature);
+                }
+                if(eventProperties.duplicateFilter != null && signature.fingerprint != 0) {
+                    eventProperties.duplicateFilter.add(signature.fingerprint);
+                }
             } else {
-                eventEngine.eventMap.put(signature, true);
+                if(signature.fingerprint != 0) {
+                    eventEngine.eventFingerprintTable.add(signature.fingerprint);
+                }
+                if(signature.canExpire && eventProperties.expireTime > 0 && eventEngine.timingWheel != null) {
+                    final EventListenerSignature expiring = signature;
+                    signature.expiryTimeout = eventEngine.timingWheel.schedule(new Runnable() {
+                        public void run()
+                        {
+                            eventEngine.expireEvent(expiring);
+                        }
+                    }, eventProperties.expireTime * 1000L);
+                }
+            }
+        }
+
+        /**
+         * Encode the event with the engine event codec, once for all the listener signatures
+         * @param event
+         * @return the event bytes or null if the event is stored as is
+         */
+        private byte[] getEventData(Object event)
+        {
+            if(eventData == null && eventEngine.isPersistent() && eventEngine.eventCodec != null
+                    && !eventProperties.unencodable)
+            {
+                try
+                {
+                    eventData = eventEngine.eventCodec.encode(event);
+                }
+                catch (RuntimeException e)
+                {
+                    logEncodeError(event, "storing the events of the type that cannot be encoded as is", e);
+                }
             }
+            return eventData;
         }
 
         /**
-         * Mark the event as processed in the store
+         * Add the event to the batch of the listener, the batches of a sequenced event type are
+         * accumulated and run on the lane of the event, the ring buffer or the single threaded
+         * executor of the event type, so that they keep the sequence of the events
+         * @param eventListenerBatch
+         * @param event
          * @param signature
+         * @param future
          */
-        private void markEventDone(EventListenerSignature signature)
+        private void addToBatch(EventListenerBatch eventListenerBatch, Object event,
+                EventListenerSignature signature, CompletableFuture<Object> future)
         {
-            signature.status = signature.error==null?STATUS_SUCCESS:STATUS_FAILED;
-            signature.processedDate = new Date();
-            if(signature.instances==null) {
-                signature.instances = new ArrayList<String>();
+            if(eventProperties.partitionRings != null) {
+                eventListenerBatch.add(event, signature, future, null, eventProperties.partitionRings[getPartition(event)]);
+            } else if(eventProperties.eventListenerRing != null) {
+                eventListenerBatch.add(event, signature, future, null, eventProperties.eventListenerRing);
+            } else if(lane != null) {
+                eventListenerBatch.add(event, signature, future, lane, null);
+            } else if(eventProperties.eventListenerExecutors != null) {
+                eventListenerBatch.add(event, signature, future, eventProperties.eventListenerExecutors, null);
+            } else {
+                eventListenerBatch.add(event, signature, future);
             }
-            signature.instances.add(eventEngine.instanceId);
-            if(signature.isDistributed() && !eventEngine.eventPropertiesMap.get(signature.getEvent().getClass()).isProcessOnce) {
-                signature.status = STATUS_PARTIAL;
+        }
+
+        /**
+         * Check whether the event type is partitioned and find the lane of the event, the fan-out
+         * of a partitioned event runs on its executor lane or, for ring lanes, on the pushing thread,
+         * so that the events of a key reach their lane in the order they were pushed
+         * @return
+         */
+        private boolean isPartitioned()
+        {
+            Object event = eventSig!=null?eventSig.getEvent():evObj;
+            EventProperties properties = eventEngine.eventPropertiesMap.get(eventSig!=null?event.getClass():evtCls);
+            if(properties == null || (properties.partitionExecutors == null && properties.partitionRings == null)) {
+                return false;
             }
-            signature.isLocked = false;
-            if(eventEngine.isPersistent()) {
-                eventEngine.ePersistenceInterface.storeEvent(signature);
-            } else {
-                eventEngine.eventMap.remove(signature);
+            eventProperties = properties;
+            if(properties.partitionExecutors != null) {
+                lane = properties.partitionExecutors[getPartition(event)];
+            }
+            return true;
+        }
+
+        /**
+         * The partition lane of the event, from the hash of its partition key, computed once for
+         * all the listeners, events with a null key or whose key cannot be read go to lane 0
+         * @param event
+         * @return
+         */
+        private int getPartition(Object event)
+        {
+            if(partition < 0)
+            {
+                int lanes = eventProperties.partitionExecutors!=null?eventProperties.partitionExecutors.length
+                        :eventProperties.partitionRings.length;
+                Object key = null;
+                try
+                {
+                    key = (Object)eventProperties.partitionKey.invokeExact(event);
+                }
+                catch (Throwable e)
+                {
+                    logger.error("Could not read the partition key of the event " + e.getMessage());
+                }
+                partition = key==null?0:(int)((EventFingerprintTable.mix(key.hashCode()) & Long.MAX_VALUE) % lanes);
+            }
+            return partition;
+        }
+
+        /**
+         * The 64 bit fingerprint of the event contents from the codec bytes of the event, or from
+         * the binary fingerprint codec of the engine if no event codec is set, the binary codec
+         * hashes the fields without buffering the bytes, computed once for all the listeners<br/>
+         * 0 if the event cannot be encoded (a persistent event without bytes already failed to),
+         * such an event is not checked for duplicates as unrelated events could share any other
+         * fingerprint
+         * @param event
+         * @return
+         */
+        private long getEventFingerprint(Object event)
+        {
+            if(!fingerprinted && !eventProperties.unencodable)
+            {
+                fingerprinted = true;
+                try
+                {
+                    EventCodec eventCodec = eventEngine.eventCodec;
+                    if(eventData != null) {
+                        eventFingerprint = EventFingerprintTable.hash(eventData);
+                    } else if(eventCodec == null) {
+                        eventFingerprint = eventEngine.fingerprintCodec.fingerprint(event);
+                    } else if(!eventEngine.isPersistent() && eventCodec instanceof BinaryEventCodec) {
+                        eventFingerprint = ((BinaryEventCodec)eventCodec).fingerprint(event);
+                    } else if(!eventEngine.isPersistent() && eventCodec != null) {
+                        eventFingerprint = EventFingerprintTable.hash(eventCodec.encode(event));
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    logEncodeError(event, "skipping the duplicate check of the events of the type that cannot be encoded", e);
+                }
             }
+            return eventFingerprint;
         }
 
         /**
-         * Check if there are any duplicates for this event signature in the store
+         * Log the first encoding failure of an event type, the failures depend on the field
+         * values so the following events of the type are still encoded
+         * @param event
+         * @param action
+         * @param e
+         */
+        private void logEncodeError(Object event, String action, RuntimeException e)
+        {
+            if(!eventProperties.encodeFailed)
+            {
+                eventProperties.encodeFailed = true;
+                logger.error("Error encoding event of type " + event.getClass().getSimpleName() + ", " + action
+                        + ", only the first error is logged " + e.getMessage());
+            }
+        }
+
+        /**
+         * Check if there are any duplicates for this event signature in the store, the store is
+         * only looked up if the duplicate filter of the event type reports a probable hit
          * @param signature
-         * @param expireTime
+         * @param eventProperties
          * @return
          */
-        private boolean findDuplicate(EventListenerSignature signature, int expireTime)
+        private boolean findDuplicate(EventListenerSignature signature, EventProperties eventProperties)
         {
+            int expireTime = eventProperties.expireTime;
             if(eventEngine.isPersistent()) {
+                if(eventProperties.duplicateFilter != null && signature.fingerprint != 0
+                        && !eventProperties.duplicateFilter.mightContain(signature.fingerprint)) {
+                    return false;
+                }
+                if(eventEngine.eventStoreWriter != null) {
+                    eventEngine.eventStoreWriter.flush();
+                }
                 return eventEngine.ePersistenceInterface.findDuplicateEvents(signature, expireTime);
             } else {
-                return eventEngine.eventMap.containsKey(signature);
+                return signature.fingerprint != 0 && eventEngine.eventFingerprintTable.contains(signature.fingerprint);
             }
         }
 
         /**
          * Create the signature for this event
          * @param event
-         * @param index
+         * @param eventProperties
+         * @param eventListenerObject
          * @return
          */
-        private EventListenerSignature getSignature(Object event, int index)
-        {
-            if(eventEngine.eventListenerMap.get(event.getClass()) != null) {
-                List<EventListenerObject> eventListeners = eventEngine.eventListenerMap.get(event.getClass());
-                if(eventListeners.size()>index) {
-                    EventListenerSignature signature = new EventListenerSignature();
-                    signature.event = event;
-                    signature.listenerClassName = eventListeners.get(index).eventListenerClass.getSimpleName();
-                    signature.listenerMethodName = eventListeners.get(index).eventCallBackMethod.getName();
-                    signature.eventClassName = event.getClass().getCanonicalName();
-                    signature.distributed = eventEngine.eventPropertiesMap.get(event.getClass()).isDistributed;
-                    signature.isLocked = false;
-                    if(eventEngine.eventPropertiesMap.get(event.getClass()).expireTime>0) {
-                        signature.canExpire = true;
-                    }
-                    return signature;
-                }
+        private EventListenerSignature getSignature(Object event, EventProperties eventProperties,
+                EventListenerObject eventListenerObject)
+        {
+            EventListenerSignature signature = new EventListenerSignature();
+            signature.event = event;
+            signature.listenerClassName = eventListenerObject.listenerClassName;
+            signature.listenerMethodName = eventListenerObject.listenerMethodName;
+            signature.eventClassName = eventProperties.eventCanonicalName;
+            signature.distributed = eventProperties.isDistributed;
+            signature.isLocked = false;
+            if(eventProperties.expireTime>0) {
+                signature.canExpire = true;
             }
-            return null;
+            return signature;
         }
 
     }
@@ -0,0 +1,319 @@
+package com.evengine.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.evengine.core.EventHandlerEngine.EventListenerObject;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * Accumulates the events for a batched listener callback (a callback accepting a List or
+ * Collection of events), the batch is handed to the listener executor once batchSize events
+ * are collected or maxBatchDelayMs after the first event of the batch, whichever is earlier<br/>
+ * The batches of a sequenced event type are ordered, the events are accumulated per lane of
+ * the event type (its single threaded executor, ring buffer or partition lane) and the batches
+ * are handed to that lane in the order they were filled, so the rejection policy of the event
+ * type applies to them<br/>
+ * A batch flushed by the timer is never run nor waited for on the scheduler thread, nor is a
+ * batch handed from a lane to itself waited for on the lane thread, if the lane is full it is
+ * handed over again after maxBatchDelayMs and may then be overtaken by the next batch
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+class EventListenerBatch
+{
+    /**
+     * A batch of events drained from the accumulator, runs the batched callback
+     */
+    static final class Batch implements Runnable
+    {
+        private EventListenerBatch eventListenerBatch;
+
+        private Lane lane;
+
+        private List<Object> events;
+
+        private List<EventListenerSignature> signatures;
+
+        private List<CompletableFuture<Object>> futures;
+
+        /**
+         * Set if the batch was flushed by the batch delay timer or is handed over again
+         */
+        private volatile boolean timed;
+
+        public void run()
+        {
+            eventListenerBatch.eventEngine.invokeListenerBatch(eventListenerBatch.eventListenerObject,
+                    events, signatures, futures);
+        }
+
+        boolean isTimed()
+        {
+            return timed;
+        }
+
+        /**
+         * Hand the batch over to its lane again after the batch delay
+         */
+        void retry()
+        {
+            eventListenerBatch.retry(this);
+        }
+
+        /**
+         * Fail all the callbacks of the batch
+         * @param reason
+         */
+        void reject(String reason)
+        {
+            for (int i = 0; i < signatures.size(); i++)
+            {
+                eventListenerBatch.eventEngine.rejectSignature(signatures.get(i), futures.get(i), reason);
+            }
+        }
+
+        /**
+         * Spill all the callbacks of the batch to the persistence store
+         */
+        void spill()
+        {
+            for (int i = 0; i < signatures.size(); i++)
+            {
+                eventListenerBatch.eventEngine.spillSignature(signatures.get(i), futures.get(i));
+            }
+        }
+    }
+
+    /**
+     * The accumulator of the batches handed to an executor or a ring buffer
+     */
+    private static final class Lane
+    {
+        private final ExecutorService executor;
+
+        private final EventRingBuffer ring;
+
+        /**
+         * Whether the batches are handed over in the order they were filled
+         */
+        private final boolean ordered;
+
+        private Batch current;
+
+        private ScheduledFuture<?> flushTimer;
+
+        private Lane(ExecutorService executor, EventRingBuffer ring, boolean ordered)
+        {
+            this.executor = executor;
+            this.ring = ring;
+            this.ordered = ordered;
+        }
+    }
+
+    private final EventHandlerEngine eventEngine;
+
+    private final EventListenerObject eventListenerObject;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final int batchSize;
+
+    private final long maxBatchDelayMs;
+
+    /**
+     * The lane of the events of the unsequenced event types
+     */
+    private final Lane unordered;
+
+    /**
+     * The lanes of the sequenced event types, by their executor or ring buffer
+     */
+    private final ConcurrentHashMap<Object, Lane> lanes = new ConcurrentHashMap<Object, Lane>();
+
+    /**
+     * @param eventEngine
+     * @param eventListenerObject
+     * @param executor the executor running the batched callbacks of the unsequenced event types
+     * @param scheduler the scheduler for the batch delay timer
+     * @param batchSize
+     * @param maxBatchDelayMs
+     */
+    EventListenerBatch(EventHandlerEngine eventEngine, EventListenerObject eventListenerObject, ExecutorService executor,
+            ScheduledExecutorService scheduler, int batchSize, long maxBatchDelayMs)
+    {
+        this.eventEngine = eventEngine;
+        this.eventListenerObject = eventListenerObject;
+        this.scheduler = scheduler;
+        this.batchSize = Math.max(batchSize, 1);
+        this.maxBatchDelayMs = Math.max(maxBatchDelayMs, 0);
+        this.unordered = new Lane(executor, null, false);
+    }
+
+    /**
+     * Add an event of an unsequenced event type to the current batch
+     * @param event
+     * @param signature
+     * @param future completed with the batched callback result, may be null
+     */
+    void add(Object event, EventListenerSignature signature, CompletableFuture<Object> future)
+    {
+        add(unordered, event, signature, future);
+    }
+
+    /**
+     * Add an event of a sequenced event type to the current batch of its lane, the events of
+     * a lane are to be added in their sequence
+     * @param event
+     * @param signature
+     * @param future completed with the batched callback result, may be null
+     * @param executor the single threaded executor or partition lane of the event, if no ring
+     * @param ring the ring buffer or partition ring of the event, may be null
+     */
+    void add(Object event, EventListenerSignature signature, CompletableFuture<Object> future,
+            ExecutorService executor, EventRingBuffer ring)
+    {
+        Object target = ring!=null?ring:executor;
+        Lane lane = lanes.get(target);
+        if(lane == null)
+        {
+            lane = new Lane(executor, ring, true);
+            Lane existing = lanes.putIfAbsent(target, lane);
+            if(existing != null) {
+                lane = existing;
+            }
+        }
+        add(lane, event, signature, future);
+    }
+
+    private void add(final Lane lane, Object event, EventListenerSignature signature, CompletableFuture<Object> future)
+    {
+        Batch full = null;
+        synchronized (lane)
+        {
+            if(lane.current == null)
+            {
+                lane.current = new Batch();
+                lane.current.eventListenerBatch = this;
+                lane.current.lane = lane;
+                lane.current.events = new ArrayList<Object>(batchSize);
+                lane.current.signatures = new ArrayList<EventListenerSignature>(batchSize);
+                lane.current.futures = new ArrayList<CompletableFuture<Object>>(batchSize);
+            }
+            lane.current.events.add(event);
+            lane.current.signatures.add(signature);
+            lane.current.futures.add(future);
+            if(lane.current.events.size() >= batchSize)
+            {
+                full = drain(lane);
+                if(lane.ordered) {
+                    execute(full);
+                    return;
+                }
+            }
+            else if(lane.flushTimer == null)
+            {
+                lane.flushTimer = scheduler.schedule(new Runnable() {
+                    public void run()
+                    {
+                        flush(lane, true);
+                    }
+                }, maxBatchDelayMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if(full != null) {
+            execute(full);
+        }
+    }
+
+    /**
+     * Hand over the current batches to their lanes, whatever their size
+     */
+    void flush()
+    {
+        flush(unordered, false);
+        for (Lane lane : lanes.values())
+        {
+            flush(lane, false);
+        }
+    }
+
+    private void flush(Lane lane, boolean timed)
+    {
+        Batch batch = null;
+        synchronized (lane)
+        {
+            batch = drain(lane);
+            if(batch != null && lane.ordered)
+            {
+                batch.timed = timed;
+                execute(batch);
+                return;
+            }
+        }
+        if(batch != null)
+        {
+            batch.timed = timed;
+            execute(batch);
+        }
+    }
+
+    private void execute(Batch batch)
+    {
+        if(batch.lane.ring != null) {
+            batch.lane.ring.publish(batch);
+        } else {
+            batch.lane.executor.execute(batch);
+        }
+    }
+
+    private void retry(final Batch batch)
+    {
+        batch.timed = true;
+        try
+        {
+            scheduler.schedule(new Runnable() {
+                public void run()
+                {
+                    execute(batch);
+                }
+            }, Math.max(maxBatchDelayMs, 1), TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            batch.reject("Batch scheduler shutdown, batch rejected");
+        }
+    }
+
+    private Batch drain(Lane lane)
+    {
+        if(lane.flushTimer != null) {
+            lane.flushTimer.cancel(false);
+            lane.flushTimer = null;
+        }
+        Batch batch = lane.current;
+        lane.current = null;
+        return batch;
+    }
+}
@@ -27,9 +27,10 @@ import java.util.List;
  * @author Sumeet Chhetri<br/>
  *
  */
-@SuppressWarnings("serial")
 public class EventListenerSignature implements Serializable
 {
+    private static final long serialVersionUID = 1L;
+
     /**
      * @param id
      * @param event
@@ -65,6 +66,8 @@ public class EventListenerSignature implements Serializable
     }
     String id;
     Object event;
+    byte[] eventData;
+    long eventHash;
     String eventClassName;
     String listenerClassName;
     String listenerMethodName;
@@ -75,7 +78,21 @@ public class EventListenerSignature implements Serializable
     boolean distributed;
     boolean isLocked;
     boolean canExpire;
+    Date leaseExpiry;
+    String leaseToken;
+    String leaseOwner;
+    Date completedDate;
     List<String> instances = new ArrayList<String>();
+    /**
+     * Fingerprint of the event and listener in the pending event table of the
+     * non-persistent mode, never stored
+     */
+    transient long fingerprint;
+    /**
+     * Expiry of the pending event on the engine timer in the non-persistent mode, cancelled
+     * when the callback starts
+     */
+    transient EventTimingWheel.Timeout expiryTimeout;
     public String getStatus()
     {
         return status;
@@ -96,6 +113,35 @@ public class EventListenerSignature implements Serializable
     {
         return event;
     }
+    public void setEvent(Object event)
+    {
+        this.event = event;
+    }
+    /**
+     * The event encoded by the engine event codec, null if the event is stored as is
+     * @return
+     */
+    public byte[] getEventData()
+    {
+        return eventData;
+    }
+    public void setEventData(byte[] eventData)
+    {
+        this.eventData = eventData;
+    }
+    /**
+     * A stable 64 bit hash of the encoded event, indexed by the event store for the duplicate
+     * lookup of idempotent events, 0 if the event is not encoded
+     * @return
+     */
+    public long getEventHash()
+    {
+        return eventHash;
+    }
+    public void setEventHash(long eventHash)
+    {
+        this.eventHash = eventHash;
+    }
     public String getListenerClassName()
     {
         return listenerClassName;
@@ -133,6 +179,104 @@ public class EventListenerSignature implements Serializable
     {
         return canExpire;
     }
+    public void setStatus(String status)
+    {
+        this.status = status;
+    }
+    public void setProcessedDate(Date processedDate)
+    {
+        this.processedDate = processedDate;
+    }
+    public void setError(String error)
+    {
+        this.error = error;
+    }
+    public void setLocked(boolean isLocked)
+    {
+        this.isLocked = isLocked;
+    }
+    public void setInstances(List<String> instances)
+    {
+        this.instances = instances;
+    }
+    /**
+     * Until when the instance that stored or claimed this signature owns it, once past
+     * the signature can be claimed by another instance, null if not leased
+     * @return
+     */
+    public Date getLeaseExpiry()
+    {
+        return leaseExpiry;
+    }
+    public void setLeaseExpiry(Date leaseExpiry)
+    {
+        this.leaseExpiry = leaseExpiry;
+    }
+    /**
+     * The token of the claim that leased this signature
+     * @return
+     */
+    public String getLeaseToken()
+    {
+        return leaseToken;
+    }
+    public void setLeaseToken(String leaseToken)
+    {
+        this.leaseToken = leaseToken;
+    }
+    /**
+     * The id of the instance holding the lease of this signature, null if not leased
+     * @return
+     */
+    public String getLeaseOwner()
+    {
+        return leaseOwner;
+    }
+    public void setLeaseOwner(String leaseOwner)
+    {
+        this.leaseOwner = leaseOwner;
+    }
+    /**
+     * When the signature reached a final status, used by the retention of the event store
+     * @return
+     */
+    public Date getCompletedDate()
+    {
+        return completedDate;
+    }
+    public void setCompletedDate(Date completedDate)
+    {
+        this.completedDate = completedDate;
+    }
+    /**
+     * Copy this signature, the event object is shared with the copy
+     * @return
+     */
+    public EventListenerSignature copy()
+    {
+        EventListenerSignature signature = new EventListenerSignature();
+        signature.id = id;
+        signature.event = event;
+        signature.eventData = eventData;
+        signature.eventHash = eventHash;
+        signature.eventClassName = eventClassName;
+        signature.listenerClassName = listenerClassName;
+        signature.listenerMethodName = listenerMethodName;
+        signature.status = status;
+        signature.dispatchDate = dispatchDate;
+        signature.processedDate = processedDate;
+        signature.error = error;
+        signature.distributed = distributed;
+        signature.isLocked = isLocked;
+        signature.canExpire = canExpire;
+        signature.leaseExpiry = leaseExpiry;
+        signature.leaseToken = leaseToken;
+        signature.leaseOwner = leaseOwner;
+        signature.completedDate = completedDate;
+        signature.fingerprint = fingerprint;
+        signature.instances = instances!=null?new ArrayList<String>(instances):null;
+        return signature;
+    }
     @Override
     public int hashCode()
     {
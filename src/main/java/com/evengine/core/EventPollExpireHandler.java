@@ -1,7 +1,16 @@
 package com.evengine.core;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.apache.log4j.Logger;
+
+import com.evengine.store.EventStoreListener;
+
 
 /*
     Copyright 2013-2014, Sumeet Chhetri
@@ -20,48 +29,322 @@ import java.util.concurrent.atomic.AtomicBoolean;
 */
 /**
  * Get the pending events on startup and process them
- * Poll for any distributed event notifications and process them
- * Expire events which are past the expiry time
+ * Take over the pending events whose lease has expired and renew the leases of the events
+ * still queued or running on this instance
+ * Claim the distributed events announced by the event store, polling for them only as a
+ * fallback if the store supports notifications
+ * Dispatch the events spilled to the store while the executor queues were full
+ * Expire events which are past the expiry time and purge the completed events past the retention<br/>
+ * The store is polled on a scheduler, the interval doubles up to maxPollIntervalMs while the polls
+ * find nothing, halves when they find events and drops to minPollIntervalMs when a poll returns at
+ * least a full batch, the expiry sweep runs on its own fixed schedule
  * @author Sumeet Chhetri<br/>
  *
  */
-public class EventPollExpireHandler implements Runnable
+public class EventPollExpireHandler implements EventStoreListener
 {
+    private static Logger logger = Logger.getLogger(EventPollExpireHandler.class.getName());
 
     protected AtomicBoolean done;
 
+    /**
+     * Whether the event store notifies this instance of distributed events, the store is then
+     * only polled for them every notificationFallbackPollMs
+     */
+    protected volatile boolean subscribed;
+
+    private final AtomicBoolean notified = new AtomicBoolean();
+
     private EventHandlerEngine eventEngine;
 
+    private ScheduledExecutorService scheduler;
+
+    private final Object pollLock = new Object();
+
+    private ScheduledFuture<?> pollFuture;
+
+    private boolean polling;
+
+    private boolean repoll;
+
+    private long lastDistributedPoll;
+
+    private volatile long pollIntervalMs;
+
+    private volatile long lastPollTime;
+
+    private volatile long lastPollDurationMs;
+
+    private volatile int lastPollEvents;
+
+    private volatile long lastExpiryTime;
+
+    private volatile long lastExpiryDurationMs;
+
+    private volatile int lastExpiredEvents;
+
+    private volatile int lastPurgedEvents;
+
+    private volatile long totalExpiredEvents;
+
+    private volatile long totalPurgedEvents;
+
+    private final Runnable pollTask = new Runnable() {
+        public void run()
+        {
+            synchronized (pollLock)
+            {
+                polling = true;
+                repoll = false;
+                pollFuture = null;
+            }
+            long delay = pollIntervalMs;
+            try
+            {
+                delay = poll();
+            }
+            catch (Throwable e)
+            {
+                logger.error("Error polling the event store " + e.getMessage());
+            }
+            boolean again = false;
+            synchronized (pollLock)
+            {
+                polling = false;
+                again = repoll;
+            }
+            schedulePoll(again ? 0 : delay);
+        }
+    };
+
+    private final Runnable leaseTask = new Runnable() {
+        public void run()
+        {
+            try
+            {
+                eventEngine.renewLeases();
+            }
+            catch (Throwable e)
+            {
+                logger.error("Error renewing the event leases " + e.getMessage());
+            }
+        }
+    };
+
+    private final Runnable expiryTask = new Runnable() {
+        public void run()
+        {
+            if(!eventEngine.isPrimary()) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            int expired = 0, purged = 0;
+            try
+            {
+                expired = eventEngine.expireEvents(eventEngine.eventExpireClassMap);
+                purged = eventEngine.purgeEvents();
+            }
+            catch (Throwable e)
+            {
+                logger.error("Error expiring events " + e.getMessage());
+            }
+            if(expired > 0 || purged > 0) {
+                logger.info("Expired " + expired + " events, purged " + purged + " completed events");
+            }
+            lastExpiredEvents = expired;
+            lastPurgedEvents = purged;
+            totalExpiredEvents += expired;
+            totalPurgedEvents += purged;
+            lastExpiryTime = start;
+            lastExpiryDurationMs = System.currentTimeMillis() - start;
+        }
+    };
+
     protected EventPollExpireHandler(EventHandlerEngine engine)
     {
         this.eventEngine = engine;
         done = new AtomicBoolean(true);
+        pollIntervalMs = Math.max(engine.getMinPollIntervalMs(), Math.min(2000, engine.getMaxPollIntervalMs()));
     }
 
-    /*
-     * Handles distributed event processing
-     * Expires events from the store
-     *
-     * (non-Javadoc)
-     * @see java.lang.Runnable#run()
+    /**
+     * Start the poll and expiry schedules
      */
-    public void run()
+    protected void start()
     {
-        while(done.get()) {
-            eventEngine.handleExistingEvents(true);
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
+        scheduler = Executors.newScheduledThreadPool(3, new ThreadFactory() {
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "evengine-poller");
+                thread.setDaemon(true);
+                return thread;
             }
+        });
+        schedulePoll(0);
+        scheduler.scheduleWithFixedDelay(expiryTask, eventEngine.getExpiryIntervalMs(),
+                eventEngine.getExpiryIntervalMs(), TimeUnit.MILLISECONDS);
+        if(eventEngine.isPersistent()) {
+            long renewal = Math.max(1, eventEngine.getEventLeaseTimeMs() / 3);
+            scheduler.scheduleWithFixedDelay(leaseTask, renewal, renewal, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop the schedules, a poll in progress completes
+     */
+    protected void shutdown()
+    {
+        done.set(false);
+        if(scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Poll the event store once
+     * @return the delay till the next poll
+     */
+    private long poll()
+    {
+        long start = System.currentTimeMillis();
+        int events = 0;
+        if(!subscribed || notified.getAndSet(false)
+                || start - lastDistributedPoll >= eventEngine.getNotificationFallbackPollMs()) {
+            lastDistributedPoll = start;
+            events += eventEngine.handleExistingEvents(true);
+        }
+        events += eventEngine.handleExistingEvents(false);
+        events += eventEngine.handleSpilledEvents();
 
-            if(eventEngine.isPrimary()) {
-                eventEngine.expireEvents(eventEngine.eventExpireClassMap);
-                try {
-                    Thread.sleep(2000);
-                } catch (InterruptedException e) {
+        long interval = pollIntervalMs;
+        if(events == 0) {
+            interval = Math.min(interval * 2, eventEngine.getMaxPollIntervalMs());
+        } else if(events >= eventEngine.getRecoveryBatchSize()) {
+            interval = eventEngine.getMinPollIntervalMs();
+        } else {
+            interval = Math.max(interval / 2, eventEngine.getMinPollIntervalMs());
+        }
+        pollIntervalMs = interval;
+        lastPollTime = start;
+        lastPollEvents = events;
+        lastPollDurationMs = System.currentTimeMillis() - start;
+        return interval;
+    }
+
+    /**
+     * Schedule the next poll, an earlier poll already scheduled is kept, a poll requested while
+     * one is running is run right after it
+     * @param delay
+     */
+    private void schedulePoll(long delay)
+    {
+        synchronized (pollLock)
+        {
+            if(!done.get() || scheduler == null || scheduler.isShutdown()) {
+                return;
+            }
+            if(polling)
+            {
+                if(delay == 0) {
+                    repoll = true;
+                }
+                return;
+            }
+            if(pollFuture != null)
+            {
+                if(pollFuture.getDelay(TimeUnit.MILLISECONDS) <= delay) {
+                    return;
                 }
+                pollFuture.cancel(false);
             }
+            pollFuture = scheduler.schedule(pollTask, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Poll the store right away to claim the distributed events announced by the event store
+     */
+    public void distributedEventsAvailable(String eventClassName)
+    {
+        if(eventEngine.eventExpireClassMap.containsKey(eventClassName))
+        {
+            notified.set(true);
+            schedulePoll(0);
         }
     }
 
+    /**
+     * The current delay between two polls of the event store
+     * @return
+     */
+    public long getPollIntervalMs()
+    {
+        return pollIntervalMs;
+    }
+
+    /**
+     * When the last poll started, in ms since the epoch, 0 if not polled yet
+     * @return
+     */
+    public long getLastPollTime()
+    {
+        return lastPollTime;
+    }
+
+    public long getLastPollDurationMs()
+    {
+        return lastPollDurationMs;
+    }
+
+    /**
+     * The number of events the last poll claimed or dispatched again
+     * @return
+     */
+    public int getLastPollEvents()
+    {
+        return lastPollEvents;
+    }
+
+    /**
+     * When the last expiry sweep started, in ms since the epoch, 0 if not run yet
+     * @return
+     */
+    public long getLastExpiryTime()
+    {
+        return lastExpiryTime;
+    }
+
+    public long getLastExpiryDurationMs()
+    {
+        return lastExpiryDurationMs;
+    }
+
+    /**
+     * The number of events the last expiry sweep expired
+     * @return
+     */
+    public int getLastExpiredEvents()
+    {
+        return lastExpiredEvents;
+    }
+
+    /**
+     * The number of completed events the last expiry sweep purged
+     * @return
+     */
+    public int getLastPurgedEvents()
+    {
+        return lastPurgedEvents;
+    }
+
+    public long getTotalExpiredEvents()
+    {
+        return totalExpiredEvents;
+    }
+
+    public long getTotalPurgedEvents()
+    {
+        return totalPurgedEvents;
+    }
+
 }
@@ -0,0 +1,332 @@
+package com.evengine.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+import com.evengine.core.EventHandlerEngine.EventListenerObject;
+import com.evengine.core.EventHandlerEngine.RejectionPolicy;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * A preallocated ring of listener invocation slots with a single batching consumer thread<br/>
+ * Producers claim a sequence, fill the slot in place and publish it, the consumer drains
+ * every contiguous published slot in one pass before moving its cursor, so a push allocates
+ * no task, future or queue node per listener<br/>
+ * When the ring is full the rejection policy applies like for a partition lane, DROP_NEWEST
+ * and DROP_OLDEST fail the new callback (a published slot cannot be taken back) while BLOCK,
+ * CALLER_RUNS and SPILL wait for the consumer using the configured wait strategy, running the
+ * callback on the producer would overtake the published slots<br/>
+ * The consumer thread publishing to its own full ring cannot wait for itself, the callback is
+ * published again from the engine timer, the callbacks published after a shutdown are failed<br/>
+ * The batches of a batched listener on a sequenced event type are published to the ring of the
+ * event type like a callback, a batch flushed by the timer is never waited for on the scheduler thread
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+public class EventRingBuffer
+{
+    private static Logger logger = Logger.getLogger(EventRingBuffer.class.getName());
+
+    /**
+     * How the consumer waits for new slots and producers wait for free ones
+     *
+     * @author Sumeet Chhetri<br/>
+     * BUSY_SPIN - spin on the cursor, lowest latency, burns a core per consumer<br/>
+     * YIELD - spin with Thread.yield, low latency, gives way to other runnable threads<br/>
+     * PARK - park the idle consumer until a producer publishes, cheapest when idle<br/>
+     *
+     */
+    public enum WaitStrategy
+    {
+        BUSY_SPIN, YIELD, PARK
+    }
+
+    private static final long PARK_NANOS = 1000000L;
+
+    /**
+     * A listener invocation slot, reused for every lap of the ring
+     */
+    private static final class Slot
+    {
+        EventListenerObject eventListenerObject;
+        Object instance;
+        Object event;
+        EventListenerSignature signature;
+        CompletableFuture<Object> future;
+        EventListenerBatch.Batch batch;
+    }
+
+    private final EventHandlerEngine eventEngine;
+
+    private final Slot[] slots;
+
+    private final int mask;
+
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    private volatile long consumed = -1;
+
+    private final WaitStrategy waitStrategy;
+
+    private final RejectionPolicy rejectionPolicy;
+
+    private volatile boolean consumerWaiting;
+
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    private final Thread consumer;
+
+    /**
+     * @param eventEngine
+     * @param name the consumer thread name
+     * @param size the ring size, rounded up to a power of two
+     * @param waitStrategy
+     * @param rejectionPolicy what to do when the ring is full
+     */
+    EventRingBuffer(EventHandlerEngine eventEngine, String name, int size, WaitStrategy waitStrategy,
+            RejectionPolicy rejectionPolicy)
+    {
+        int capacity = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+        this.eventEngine = eventEngine;
+        this.waitStrategy = waitStrategy!=null?waitStrategy:WaitStrategy.PARK;
+        this.rejectionPolicy = rejectionPolicy!=null?rejectionPolicy:RejectionPolicy.CALLER_RUNS;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++)
+        {
+            slots[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+        {
+            published.set(i, -1);
+        }
+        this.consumer = new Thread(new Runnable() {
+            public void run()
+            {
+                consume();
+            }
+        }, name);
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * Publish a listener invocation to the ring, a full ring is handled as per the rejection policy
+     * @param eventListenerObject
+     * @param instance
+     * @param event
+     * @param signature
+     * @param future completed with the callback result, may be null if no one waits for the result
+     */
+    void publish(EventListenerObject eventListenerObject, Object instance, Object event,
+            EventListenerSignature signature, CompletableFuture<Object> future)
+    {
+        publish(eventListenerObject, instance, event, signature, future, null, Thread.currentThread() != consumer);
+    }
+
+    /**
+     * Publish a batch of a batched listener to the ring, a full ring is handled as per the rejection policy
+     * @param batch
+     */
+    void publish(EventListenerBatch.Batch batch)
+    {
+        publish(null, null, null, null, null, batch, !batch.isTimed() && Thread.currentThread() != consumer);
+    }
+
+    /**
+     * @param eventListenerObject
+     * @param instance
+     * @param event
+     * @param signature
+     * @param future
+     * @param batch the batch to run instead of a callback, may be null
+     * @param wait whether the caller may wait for the consumer, else a full ring defers the callback
+     */
+    private void publish(final EventListenerObject eventListenerObject, final Object instance, final Object event,
+            final EventListenerSignature signature, final CompletableFuture<Object> future,
+            final EventListenerBatch.Batch batch, boolean wait)
+    {
+        long sequence = -1;
+        while(sequence < 0)
+        {
+            if(!running.get())
+            {
+                reject(signature, future, batch, "Ring buffer shutdown, callback rejected");
+                return;
+            }
+            long current = claimed.get();
+            if(current + 1 - slots.length > consumed)
+            {
+                if(rejectionPolicy == RejectionPolicy.DROP_NEWEST || rejectionPolicy == RejectionPolicy.DROP_OLDEST)
+                {
+                    reject(signature, future, batch, "Ring buffer full, callback dropped");
+                    return;
+                }
+                if(!wait)
+                {
+                    boolean deferred = eventEngine.scheduleOnTimer(new Runnable() {
+                        public void run()
+                        {
+                            publish(eventListenerObject, instance, event, signature, future, batch, false);
+                        }
+                    });
+                    if(!deferred) {
+                        reject(signature, future, batch, "Ring buffer full, callback rejected");
+                    }
+                    return;
+                }
+                idle(true);
+            }
+            else if(claimed.compareAndSet(current, current + 1))
+            {
+                sequence = current + 1;
+            }
+        }
+        Slot slot = slots[(int)sequence & mask];
+        slot.eventListenerObject = eventListenerObject;
+        slot.instance = instance;
+        slot.event = event;
+        slot.signature = signature;
+        slot.future = future;
+        slot.batch = batch;
+        published.set((int)sequence & mask, sequence);
+        if(consumerWaiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void reject(EventListenerSignature signature, CompletableFuture<Object> future,
+            EventListenerBatch.Batch batch, String reason)
+    {
+        if(batch != null) {
+            batch.reject(reason);
+        } else {
+            eventEngine.rejectSignature(signature, future, reason);
+        }
+    }
+
+    /**
+     * Number of published slots the consumer is yet to process
+     * @return
+     */
+    public long size()
+    {
+        return Math.max(claimed.get() - consumed, 0);
+    }
+
+    /**
+     * Stop the consumer once the published slots are drained
+     */
+    void shutdown()
+    {
+        running.set(false);
+        LockSupport.unpark(consumer);
+    }
+
+    private void consume()
+    {
+        long next = consumed + 1;
+        while(true)
+        {
+            long available = next - 1;
+            while(published.get((int)(available + 1) & mask) == available + 1) {
+                available++;
+            }
+            if(available < next)
+            {
+                if(!running.get() && claimed.get() < next) {
+                    break;
+                }
+                idle(false);
+                continue;
+            }
+            for (long sequence = next; sequence <= available; sequence++)
+            {
+                Slot slot = slots[(int)sequence & mask];
+                EventListenerObject eventListenerObject = slot.eventListenerObject;
+                Object instance = slot.instance;
+                Object event = slot.event;
+                EventListenerSignature signature = slot.signature;
+                CompletableFuture<Object> future = slot.future;
+                EventListenerBatch.Batch batch = slot.batch;
+                slot.eventListenerObject = null;
+                slot.instance = null;
+                slot.event = null;
+                slot.signature = null;
+                slot.future = null;
+                slot.batch = null;
+                try
+                {
+                    if(batch != null)
+                    {
+                        batch.run();
+                    }
+                    else
+                    {
+                        Object result = eventEngine.invokeListener(eventListenerObject, instance, event, signature);
+                        if(future != null) {
+                            future.complete(result);
+                        }
+                    }
+                }
+                catch (Throwable e)
+                {
+                    logger.error("Error processing ring buffer slot " + e.getMessage());
+                    if(future != null) {
+                        future.completeExceptionally(e);
+                    }
+                }
+            }
+            consumed = available;
+            next = available + 1;
+        }
+    }
+
+    private void idle(boolean producer)
+    {
+        switch (waitStrategy)
+        {
+            case BUSY_SPIN:
+                break;
+            case YIELD:
+                Thread.yield();
+                break;
+            default:
+                if(producer)
+                {
+                    LockSupport.parkNanos(1);
+                }
+                else
+                {
+                    consumerWaiting = true;
+                    if(published.get((int)(consumed + 1) & mask) != consumed + 1 && running.get()) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    consumerWaiting = false;
+                }
+                break;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.evengine.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.evengine.store.EventPersistenceInterface;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * Coalesces the event store writes of the engine, new signatures and status updates are
+ * buffered and written with one bulk insert and a few multi updates once batchSize writes
+ * are pending or maxBatchDelayMs after the first pending write, whichever is earlier<br/>
+ * A signature updated before its insert was written is inserted with its latest state,
+ * the flushes run on a single thread so an update is never written before its insert
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+class EventStoreWriter
+{
+    private static Logger logger = Logger.getLogger(EventStoreWriter.class.getName());
+
+    private final EventPersistenceInterface ePersistenceInterface;
+
+    private final int batchSize;
+
+    private final long maxBatchDelayMs;
+
+    private final ScheduledExecutorService flusher;
+
+    private final Runnable flushTask = new Runnable() {
+        public void run()
+        {
+            flush();
+        }
+    };
+
+    private final Object flushLock = new Object();
+
+    private Set<EventListenerSignature> pendingStores = newSignatureSet();
+
+    private Set<EventListenerSignature> pendingUpdates = newSignatureSet();
+
+    private ScheduledFuture<?> flushTimer;
+
+    private boolean flushQueued;
+
+    /**
+     * @param ePersistenceInterface
+     * @param batchSize
+     * @param maxBatchDelayMs
+     */
+    EventStoreWriter(EventPersistenceInterface ePersistenceInterface, int batchSize, long maxBatchDelayMs)
+    {
+        this.ePersistenceInterface = ePersistenceInterface;
+        this.batchSize = Math.max(batchSize, 1);
+        this.maxBatchDelayMs = Math.max(maxBatchDelayMs, 0);
+        this.flusher = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Buffer a new event signature
+     * @param signature
+     */
+    synchronized void store(EventListenerSignature signature)
+    {
+        pendingStores.add(signature);
+        scheduleFlush();
+    }
+
+    /**
+     * Buffer a status update of a stored event signature
+     * @param signature
+     */
+    synchronized void update(EventListenerSignature signature)
+    {
+        if(pendingStores.contains(signature)) {
+            return;
+        }
+        pendingUpdates.add(signature);
+        scheduleFlush();
+    }
+
+    /**
+     * Write all the buffered signatures to the event store
+     */
+    void flush()
+    {
+        synchronized (flushLock)
+        {
+            List<EventListenerSignature> stores = null;
+            List<EventListenerSignature> updates = null;
+            synchronized (this)
+            {
+                if(flushTimer != null) {
+                    flushTimer.cancel(false);
+                    flushTimer = null;
+                }
+                flushQueued = false;
+                if(pendingStores.size() > 0) {
+                    stores = new ArrayList<EventListenerSignature>(pendingStores);
+                    pendingStores = newSignatureSet();
+                }
+                if(pendingUpdates.size() > 0) {
+                    updates = new ArrayList<EventListenerSignature>(pendingUpdates);
+                    pendingUpdates = newSignatureSet();
+                }
+            }
+            if(stores != null)
+            {
+                try
+                {
+                    ePersistenceInterface.storeEvents(stores);
+                }
+                catch (RuntimeException e)
+                {
+                    logger.error("Bulk store of " + stores.size() + " events failed, storing one by one " + e.getMessage());
+                    for (EventListenerSignature signature : stores)
+                    {
+                        ePersistenceInterface.storeEvent(signature);
+                    }
+                }
+            }
+            if(updates != null)
+            {
+                try
+                {
+                    ePersistenceInterface.updateStatuses(updates);
+                }
+                catch (RuntimeException e)
+                {
+                    logger.error("Bulk update of " + updates.size() + " events failed, storing one by one " + e.getMessage());
+                    for (EventListenerSignature signature : updates)
+                    {
+                        ePersistenceInterface.storeEvent(signature);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the buffered signatures and stop the flusher thread
+     */
+    void shutdown()
+    {
+        flusher.shutdown();
+        flush();
+    }
+
+    private void scheduleFlush()
+    {
+        if(pendingStores.size() + pendingUpdates.size() >= batchSize)
+        {
+            if(!flushQueued) {
+                flushQueued = true;
+                flusher.execute(flushTask);
+            }
+        }
+        else if(flushTimer == null && !flushQueued)
+        {
+            flushTimer = flusher.schedule(flushTask, maxBatchDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * The signature hashcode changes with its status, hence track buffered signatures by identity
+     * @return
+     */
+    private static Set<EventListenerSignature> newSignatureSet()
+    {
+        return Collections.newSetFromMap(new IdentityHashMap<EventListenerSignature, Boolean>());
+    }
+}
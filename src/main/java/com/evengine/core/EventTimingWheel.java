@@ -0,0 +1,313 @@
+package com.evengine.core;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * A hierarchical hashed timing wheel for the engine timeouts, four wheels of 64 slots turned by a
+ * single tick thread every tickMs, a timeout is linked into the lowest wheel whose span covers its
+ * delay and moved down a wheel each time the wheel above turns into its slot<br/>
+ * Scheduling and cancelling are O(1), both only enqueue the timeout and the tick thread, which
+ * owns the slots, links or unlinks it on its next tick<br/>
+ * The expired tasks run on the tick thread, a task doing more than a few field updates has to
+ * hand its work off to an executor
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+final class EventTimingWheel
+{
+    private static Logger logger = Logger.getLogger(EventTimingWheel.class.getName());
+
+    private static final int WHEEL_BITS = 6;
+
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private static final int LEVELS = 4;
+
+    private static final int PENDING = 0, CANCELLED = 1, EXPIRED = 2;
+
+    /**
+     * A scheduled task, linked into a slot of one of the wheels
+     */
+    static final class Timeout
+    {
+        private final EventTimingWheel wheel;
+
+        private final Runnable task;
+
+        /**
+         * The tick the task is due at
+         */
+        private final long deadline;
+
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        private Timeout prev, next;
+
+        private int level = -1, slot;
+
+        private Timeout(EventTimingWheel wheel, Runnable task, long deadline)
+        {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel the task if it has not run yet
+         * @return false if the task already ran or was cancelled before
+         */
+        boolean cancel()
+        {
+            if(!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        boolean isExpired()
+        {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    private final long tickNanos;
+
+    private final long startNanos;
+
+    private final Timeout[][] slots = new Timeout[LEVELS][WHEEL_SIZE];
+
+    private final ConcurrentLinkedQueue<Timeout> scheduled = new ConcurrentLinkedQueue<Timeout>();
+
+    private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+
+    private final Thread tickThread;
+
+    private volatile boolean running = true;
+
+    /**
+     * The last tick processed, only written by the tick thread
+     */
+    private long tick;
+
+    /**
+     * @param tickMs the resolution of the wheel, the tasks run up to one tick late
+     */
+    EventTimingWheel(long tickMs)
+    {
+        this(tickMs, true);
+    }
+
+    /**
+     * @param tickMs the resolution of the wheel, the tasks run up to one tick late
+     * @param start whether to start the tick thread, else the wheel only turns on advance
+     */
+    EventTimingWheel(long tickMs, boolean start)
+    {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+        this.startNanos = System.nanoTime();
+        if(start)
+        {
+            this.tickThread = new Thread(new Runnable() {
+                public void run()
+                {
+                    turn();
+                }
+            }, "evengine-timer");
+            this.tickThread.setDaemon(true);
+            this.tickThread.start();
+        }
+        else
+        {
+            this.tickThread = null;
+        }
+    }
+
+    /**
+     * Run the task once the delay has elapsed
+     * @param task
+     * @param delayMs
+     * @return the timeout to cancel the task with
+     */
+    Timeout schedule(Runnable task, long delayMs)
+    {
+        long elapsed = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs));
+        Timeout timeout = new Timeout(this, task, (elapsed + tickNanos - 1) / tickNanos);
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return false once the wheel is stopped, the tasks scheduled then never run
+     */
+    boolean isRunning()
+    {
+        return running;
+    }
+
+    /**
+     * Stop the tick thread, the pending tasks never run
+     */
+    void stop()
+    {
+        running = false;
+        if(tickThread != null) {
+            LockSupport.unpark(tickThread);
+        }
+    }
+
+    private void turn()
+    {
+        while(running)
+        {
+            long wait = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+            if(wait > 0)
+            {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            advance();
+        }
+    }
+
+    /**
+     * Process the next tick, only called by the tick thread or, for a wheel without one,
+     * by its owner
+     */
+    void advance()
+    {
+        tick++;
+        Timeout timeout = null;
+        while((timeout = scheduled.poll()) != null)
+        {
+            place(timeout);
+        }
+        while((timeout = cancelled.poll()) != null)
+        {
+            unlink(timeout);
+        }
+        for (int level = 1; level < LEVELS && (tick & ((1L << (WHEEL_BITS * level)) - 1)) == 0; level++)
+        {
+            Timeout head = detach(level, (int)((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK));
+            while(head != null)
+            {
+                Timeout next = head.next;
+                place(head);
+                head = next;
+            }
+        }
+        Timeout head = detach(0, (int)(tick & WHEEL_MASK));
+        while(head != null)
+        {
+            Timeout next = head.next;
+            place(head);
+            head = next;
+        }
+    }
+
+    /**
+     * Link the timeout into the wheel covering its remaining delay, run it if it is due, a
+     * cancelled timeout is dropped
+     * @param timeout
+     */
+    private void place(Timeout timeout)
+    {
+        if(timeout.state.get() != PENDING) {
+            return;
+        }
+        long delta = timeout.deadline - tick;
+        if(delta <= 0)
+        {
+            expire(timeout);
+            return;
+        }
+        int level = 0;
+        while(level < LEVELS - 1 && delta >= (1L << (WHEEL_BITS * (level + 1))))
+        {
+            level++;
+        }
+        int slot = (int)((timeout.deadline >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = slots[level][slot];
+        if(timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        slots[level][slot] = timeout;
+    }
+
+    private void unlink(Timeout timeout)
+    {
+        if(timeout.level < 0) {
+            return;
+        }
+        if(timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.level][timeout.slot] = timeout.next;
+        }
+        if(timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = timeout.next = null;
+        timeout.level = -1;
+    }
+
+    /**
+     * Empty the slot, the detached timeouts stay chained through next
+     * @param level
+     * @param slot
+     * @return the first timeout of the slot
+     */
+    private Timeout detach(int level, int slot)
+    {
+        Timeout head = slots[level][slot];
+        slots[level][slot] = null;
+        for (Timeout timeout = head; timeout != null; timeout = timeout.next)
+        {
+            timeout.level = -1;
+            timeout.prev = null;
+        }
+        return head;
+    }
+
+    private void expire(Timeout timeout)
+    {
+        timeout.prev = timeout.next = null;
+        timeout.level = -1;
+        if(!timeout.state.compareAndSet(PENDING, EXPIRED)) {
+            return;
+        }
+        try
+        {
+            timeout.task.run();
+        }
+        catch (Throwable e)
+        {
+            logger.error("Error running a scheduled engine task " + e.getMessage());
+        }
+    }
+}
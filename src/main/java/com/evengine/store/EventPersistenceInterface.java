@@ -1,5 +1,6 @@
 package com.evengine.store;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -21,21 +22,197 @@ import com.evengine.core.EventListenerSignature;
     See the License for the specific language governing permissions and
     limitations under the License.
 */
+/**
+ * The event store of the persistent mode, only storeEvent, removeEvent and findDuplicateEvents
+ * have to be implemented, the bulk, claim and lease methods default to the single signature
+ * methods and to getEvents, which stores shared by several instances should override with
+ * atomic versions
+ * @author Sumeet Chhetri<br/>
+ *
+ */
 @SuppressWarnings("rawtypes")
 public interface EventPersistenceInterface
 {
+    /**
+     * @deprecated the event store is no longer locked, the pending events are claimed with leases
+     */
+    @Deprecated
     public class LockStatus
     {
         String id;
         boolean isLocked;
         String instanceId;
     }
-    public boolean lockEventStore(String instanceId);
-    public boolean unLockEventStore(String instanceId);
+    /**
+     * @deprecated no longer called, the pending events are claimed with claimEvents
+     */
+    @Deprecated
+    public default boolean lockEventStore(String instanceId)
+    {
+        return true;
+    }
+    /**
+     * @deprecated no longer called, the pending events are claimed with claimEvents
+     */
+    @Deprecated
+    public default boolean unLockEventStore(String instanceId)
+    {
+        return true;
+    }
+    /**
+     * Atomically claim up to limit pending events for the instance, the events matched by getEvents
+     * that are not leased and the events whose lease has expired, the claimed events are locked and
+     * leased to the instance for leaseTimeMs so that other instances skip them<br/>
+     * The default locks the events returned by getEvents one by one, it is not atomic
+     */
+    @SuppressWarnings("deprecation")
+    public default List<EventListenerSignature> claimEvents(Class eventClass, Date startDate, boolean isDistributed,
+            String instanceId, int expireTime, int limit, long leaseTimeMs)
+    {
+        List<EventListenerSignature> events = getEvents(eventClass, startDate, isDistributed, instanceId, expireTime, limit);
+        lease(events, instanceId, leaseTimeMs);
+        return events;
+    }
+    /**
+     * Atomically claim up to limit events of a type in the given status (e.g. SPILLED) for the
+     * instance, the events not leased and the events whose lease has expired, the claimed events
+     * are locked and leased to the instance for leaseTimeMs so that other instances skip them<br/>
+     * The default locks the events returned by getEventsByStatus one by one, it is not atomic
+     */
+    @SuppressWarnings("deprecation")
+    public default List<EventListenerSignature> claimEventsByStatus(Class eventClass, String status, String instanceId,
+            int limit, long leaseTimeMs)
+    {
+        List<EventListenerSignature> events = getEventsByStatus(eventClass, status, limit);
+        lease(events, instanceId, leaseTimeMs);
+        return events;
+    }
+    /**
+     * Lock and lease the signatures to the instance with storeEvent, used by the default claims
+     */
+    private void lease(List<EventListenerSignature> events, String instanceId, long leaseTimeMs)
+    {
+        Date leaseExpiry = new Date(System.currentTimeMillis() + leaseTimeMs);
+        for (EventListenerSignature signature : events)
+        {
+            signature.setLocked(true);
+            signature.setLeaseExpiry(leaseExpiry);
+            signature.setLeaseOwner(instanceId);
+            storeEvent(signature);
+        }
+    }
+    /**
+     * Extend the lease of the pending signatures stored by this instance whose callbacks are still
+     * queued or running, the signatures that completed or were claimed meanwhile are left alone<br/>
+     * The default renews nothing, for stores that do not keep the leases
+     * @param signatures
+     * @param leaseExpiry
+     * @return the number of leases renewed
+     */
+    public default int renewLeases(List<EventListenerSignature> signatures, Date leaseExpiry)
+    {
+        return 0;
+    }
+    /**
+     * Release the leases the instance holds on its pending events, so that they can be claimed
+     * at once instead of after their lease expires, called when the instance stops and when an
+     * instance with the same id starts again
+     * @param instanceId
+     * @return the number of leases released
+     */
+    public default int releaseLeases(String instanceId)
+    {
+        return 0;
+    }
     public void storeEvent(EventListenerSignature signature);
+    public default void storeEvents(List<EventListenerSignature> signatures)
+    {
+        for (EventListenerSignature signature : signatures)
+        {
+            storeEvent(signature);
+        }
+    }
+    public default void updateStatuses(List<EventListenerSignature> signatures)
+    {
+        for (EventListenerSignature signature : signatures)
+        {
+            storeEvent(signature);
+        }
+    }
     public void removeEvent(EventListenerSignature signature);
+    public default void removeEvents(List<EventListenerSignature> signatures)
+    {
+        for (EventListenerSignature signature : signatures)
+        {
+            removeEvent(signature);
+        }
+    }
     public boolean findDuplicateEvents(EventListenerSignature signature, int expireTime);
-    public List<EventListenerSignature> getEvents(Class eventClass, Date startDate, boolean isDistributed, String instanceId, int expireTime, int limit);
-    public long getEventsCount(Class eventClass, Date startDate, boolean isDistributed, String instanceId, int expireTime);
-    public void expireEvents(Map<String, Integer> eventExpireMap);
+    /**
+     * @deprecated only used by the default claimEvents, implement claimEvents instead
+     */
+    @Deprecated
+    public default List<EventListenerSignature> getEvents(Class eventClass, Date startDate, boolean isDistributed,
+            String instanceId, int expireTime, int limit)
+    {
+        return new ArrayList<EventListenerSignature>();
+    }
+    /**
+     * @deprecated no longer called
+     */
+    @Deprecated
+    public default long getEventsCount(Class eventClass, Date startDate, boolean isDistributed, String instanceId,
+            int expireTime)
+    {
+        return 0;
+    }
+    /**
+     * @deprecated only used by the default claimEventsByStatus, implement claimEventsByStatus instead
+     */
+    @Deprecated
+    public default List<EventListenerSignature> getEventsByStatus(Class eventClass, String status, int limit)
+    {
+        return new ArrayList<EventListenerSignature>();
+    }
+    /**
+     * @deprecated only called by the default expirePendingEvents, implement expirePendingEvents instead
+     */
+    @Deprecated
+    public default void expireEvents(Map<String, Integer> eventExpireMap)
+    {
+    }
+    /**
+     * Mark the expirable pending events dispatched longer ago than the expire time of their event
+     * type as expired, the default calls expireEvents and reports no count
+     * @param eventExpireMap the expire time in seconds per event class name
+     * @return the number of events expired
+     */
+    @SuppressWarnings("deprecation")
+    public default int expirePendingEvents(Map<String, Integer> eventExpireMap)
+    {
+        expireEvents(eventExpireMap);
+        return 0;
+    }
+    /**
+     * Remove the signatures that reached a final status (SUCCESS, FAILED, EXPIRED) before the date,
+     * the default keeps them
+     * @param before
+     * @return the number of signatures removed
+     */
+    public default int purgeEvents(Date before)
+    {
+        return 0;
+    }
+    /**
+     * Subscribe to the distributed events made available by other instances
+     * @param listener
+     * @return false if the store does not support notifications and has to be polled
+     */
+    public default boolean subscribe(EventStoreListener listener)
+    {
+        return false;
+    }
+    public default void unsubscribe(EventStoreListener listener)
+    {
+    }
 }
@@ -2,15 +2,32 @@ package com.evengine.store;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.apache.log4j.Logger;
 import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Order;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 
+import com.mongodb.BasicDBObject;
+import com.mongodb.Bytes;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
 import com.evengine.core.EventEngineMongoTemplate;
 import static com.evengine.core.EventHandlerEngine.*;
 import com.evengine.core.EventListenerSignature;
@@ -30,133 +47,556 @@ import com.evengine.core.EventListenerSignature;
     See the License for the specific language governing permissions and
     limitations under the License.
 */
+/**
+ * The MongoDB event store, distributed events made available to other instances are announced
+ * in a capped collection that the subscribed instances tail<br/>
+ * Completed signatures are kept until the retention sweep of the engine purges them, optionally
+ * copying them to an archive collection, or until the server removes them through a TTL index
+ * @author Sumeet Chhetri<br/>
+ *
+ */
 public class EventPersistentMongoDBImpl implements EventPersistenceInterface
 {
+    private static final String NOTIFICATIONS = "eventNotifications";
+
+    private static final String NOTIFICATION_STORE = "store";
+
+    private static final int NOTIFICATIONS_SIZE = 1024 * 1024;
+
+    /**
+     * Set only on the signatures that reached a final status, the retention purge and the TTL
+     * index work on it so that the PARTIAL distributed events are never removed
+     */
+    private static final String COMPLETED_DATE = "completedDate";
+
+    private static final String RETENTION_INDEX = "evengine_retention";
+
+    private static Logger logger = Logger.getLogger(EventPersistentMongoDBImpl.class.getName());
 
     private EventEngineMongoTemplate mongoTemplate;
 
+    /**
+     * Identifies the notifications of this store, they are not delivered back to it
+     */
+    private final String storeId = UUID.randomUUID().toString();
+
+    private final List<EventStoreListener> listeners = new CopyOnWriteArrayList<EventStoreListener>();
+
+    private volatile Thread notificationThread;
+
+    private volatile DBCursor notificationCursor;
+
+    /**
+     * Maximum number of signatures expired, purged or renewed by a single update or remove
+     */
+    private int expiryBatchSize = 1000;
+
+    /**
+     * Collection the purged signatures are copied to before they are removed, null to only remove them
+     */
+    private String archiveCollectionName;
+
+    /**
+     * Seconds after which the server removes the completed signatures through a TTL index, 0 to
+     * purge them from the expiry sweep instead
+     */
+    private int retentionTtlSeconds;
+
+    private volatile boolean retentionIndexed;
+
     public EventPersistentMongoDBImpl(MongoDbFactory mongoDbFactory)
     {
         this.mongoTemplate = new EventEngineMongoTemplate(mongoDbFactory);
+        ensureIndexes();
+        ensureNotifications();
+    }
+
+    /**
+     * Create the capped notification collection if it does not exist, with a first notification
+     * so that it can be tailed
+     */
+    private void ensureNotifications()
+    {
+        try
+        {
+            if(!mongoTemplate.collectionExists(NOTIFICATIONS))
+            {
+                mongoTemplate.createCollection(NOTIFICATIONS, new CollectionOptions(NOTIFICATIONS_SIZE, null, true));
+                mongoTemplate.getCollection(NOTIFICATIONS).insert(new BasicDBObject(NOTIFICATION_STORE, storeId));
+            }
+        }
+        catch (RuntimeException e)
+        {
+            logger.error("Could not create the event notification collection " + e.getMessage());
+        }
+    }
+
+    /**
+     * Create the indexes for the event store queries if they do not exist<br/>
+     * pending - equality fields first and the dispatch date range last, used by getEvents,
+     * getEventsCount, getEventsByStatus and expirePendingEvents<br/>
+     * duplicate - the event hash with the listener callback, used by findDuplicateEvents<br/>
+     * lease - the claim token, sparse as it is removed once the claimed event is processed<br/>
+     * lease owner - the instance holding the lease, sparse, used by releaseLeases
+     */
+    private void ensureIndexes()
+    {
+        try
+        {
+            IndexOperations indexOperations = mongoTemplate.indexOps(EventListenerSignature.class);
+            indexOperations.ensureIndex(new Index().on(EVENT_CLASSNAME, Order.ASCENDING).on(STATUS, Order.ASCENDING)
+                    .on(DISTRIBUTED, Order.ASCENDING).on(IS_LOCKED, Order.ASCENDING)
+                    .on(DISPATCH_DATE, Order.ASCENDING).named("evengine_pending"));
+            indexOperations.ensureIndex(new Index().on(EVENT_HASH, Order.ASCENDING).on(LISTENER_CLASSNAME, Order.ASCENDING)
+                    .on(LISTENER_METHNAME, Order.ASCENDING).on(STATUS, Order.ASCENDING).named("evengine_duplicate"));
+            indexOperations.ensureIndex(new Index().on(LEASE_TOKEN, Order.ASCENDING).sparse().named("evengine_lease"));
+            indexOperations.ensureIndex(new Index().on(LEASE_OWNER, Order.ASCENDING).sparse().named("evengine_lease_owner"));
+        }
+        catch (RuntimeException e)
+        {
+            logger.error("Could not create the event store indexes " + e.getMessage());
+        }
     }
 
     public void storeEvent(EventListenerSignature signature)
     {
-        mongoTemplate.save(signature);
+        mongoTemplate.save(getStoredSignature(signature));
+        if(signature.isDistributed()) {
+            notifyDistributedEvents(Collections.singletonList(signature));
+        }
     }
 
-    public void removeEvent(EventListenerSignature signature)
+    /**
+     * Insert the new event signatures in a single batch insert
+     */
+    public void storeEvents(List<EventListenerSignature> signatures)
     {
-        Query query = new Query(Criteria.where(ID).is(signature.getId()));
-        mongoTemplate.remove(query, EventListenerSignature.class);
+        if(signatures.size() == 1) {
+            mongoTemplate.save(getStoredSignature(signatures.get(0)));
+        } else if(signatures.size() > 1) {
+            List<EventListenerSignature> stored = new ArrayList<EventListenerSignature>(signatures.size());
+            for (EventListenerSignature signature : signatures)
+            {
+                stored.add(getStoredSignature(signature));
+            }
+            mongoTemplate.insert(stored, EventListenerSignature.class);
+        }
+        notifyDistributedEvents(signatures);
     }
 
-    @SuppressWarnings("rawtypes")
-    public List<EventListenerSignature> getEvents(Class eventClass, Date startDate, boolean isDistributed, String instanceId, int expireTime, int limit)
+    /**
+     * Signatures with an encoded event are stored without the event object, so the
+     * converter does not have to map the event fields, completed signatures are stored
+     * with their completed date for the retention index
+     * @param signature
+     * @return
+     */
+    private static EventListenerSignature getStoredSignature(EventListenerSignature signature)
     {
-        Query query = null;
+        setCompletedDate(signature);
+        if(signature.getEventData() == null || signature.getEvent() == null) {
+            return signature;
+        }
+        EventListenerSignature stored = signature.copy();
+        stored.setEvent(null);
+        return stored;
+    }
 
-        List<Criteria> criteriaList = new ArrayList<Criteria>();
+    /**
+     * Update the status of the stored event signatures, signatures with the same status, error,
+     * lock and instances are updated together with a single multi update
+     */
+    public void updateStatuses(List<EventListenerSignature> signatures)
+    {
+        Map<String, List<EventListenerSignature>> groups = new LinkedHashMap<String, List<EventListenerSignature>>();
+        for (EventListenerSignature signature : signatures)
+        {
+            String key = signature.getStatus() + UNDER_SCORE + signature.isLocked() + UNDER_SCORE
+                    + signature.getInstances() + UNDER_SCORE + signature.getError();
+            if(groups.get(key) == null) {
+                groups.put(key, new ArrayList<EventListenerSignature>());
+            }
+            groups.get(key).add(signature);
+        }
+        for (List<EventListenerSignature> group : groups.values())
+        {
+            EventListenerSignature first = group.get(0);
+            List<String> ids = new ArrayList<String>();
+            Date processedDate = null;
+            Date completedDate = null;
+            for (EventListenerSignature signature : group)
+            {
+                ids.add(signature.getId());
+                if(signature.getProcessedDate()!=null && (processedDate==null || signature.getProcessedDate().after(processedDate))) {
+                    processedDate = signature.getProcessedDate();
+                }
+                setCompletedDate(signature);
+                if(signature.getCompletedDate()!=null && (completedDate==null || signature.getCompletedDate().after(completedDate))) {
+                    completedDate = signature.getCompletedDate();
+                }
+            }
 
-        criteriaList.add(Criteria.where(DISTRIBUTED).is(isDistributed));
-        criteriaList.add(Criteria.where(IS_LOCKED).is(false));
-        criteriaList.add(Criteria.where(EVENT_CLASSNAME).is(eventClass.getCanonicalName()));
+            Update update = new Update();
+            update.set(STATUS, first.getStatus());
+            update.set(PROCESSED_DATE, processedDate);
+            update.set(ERROR, first.getError());
+            update.set(IS_LOCKED, first.isLocked());
+            update.set(INSTANCES, first.getInstances());
+            if(completedDate != null) {
+                update.set(COMPLETED_DATE, completedDate);
+            }
+            if(!first.isLocked()) {
+                update.unset(LEASE_EXPIRY);
+                update.unset(LEASE_TOKEN);
+                update.unset(LEASE_OWNER);
+            }
 
-        if(expireTime>0)
+            mongoTemplate.updateMulti(new Query(Criteria.where(ID).in(ids)), update, EventListenerSignature.class);
+        }
+        notifyDistributedEvents(signatures);
+    }
+
+    /**
+     * Announce the distributed events other instances can claim now, one notification per event type
+     * @param signatures
+     */
+    private void notifyDistributedEvents(List<EventListenerSignature> signatures)
+    {
+        Set<String> eventClassNames = null;
+        for (EventListenerSignature signature : signatures)
         {
-            Calendar cal = Calendar.getInstance();
-            cal.setTime(startDate);
-            cal.add(Calendar.SECOND, -expireTime);
+            if(signature.isDistributed() && !signature.isLocked() && STATUS_PARTIAL.equals(signature.getStatus()))
+            {
+                if(eventClassNames == null) {
+                    eventClassNames = new TreeSet<String>();
+                }
+                eventClassNames.add(signature.getEventClassName());
+            }
+        }
+        if(eventClassNames == null) {
+            return;
+        }
+        try
+        {
+            DBCollection collection = mongoTemplate.getCollection(NOTIFICATIONS);
+            for (String eventClassName : eventClassNames)
+            {
+                collection.insert(new BasicDBObject(EVENT_CLASSNAME, eventClassName).append(NOTIFICATION_STORE, storeId));
+            }
+        }
+        catch (RuntimeException e)
+        {
+            logger.error("Could not notify the distributed events " + e.getMessage());
+        }
+    }
 
-            if(!isDistributed)
+    /**
+     * Tail the notification collection on a daemon thread, the polling of the engine picks up
+     * any notification missed while the cursor is reopened
+     */
+    public boolean subscribe(EventStoreListener listener)
+    {
+        listeners.add(listener);
+        synchronized (this)
+        {
+            if(notificationThread == null)
             {
-                criteriaList.add(Criteria.where(STATUS).is(STATUS_PENDING));
-                criteriaList.add(Criteria.where(DISPATCH_DATE).gt(cal.getTime()));
+                notificationThread = new Thread(new Runnable() {
+                    public void run()
+                    {
+                        tailNotifications();
+                    }
+                }, "evengine-notifications");
+                notificationThread.setDaemon(true);
+                notificationThread.start();
             }
-            else
+        }
+        return true;
+    }
+
+    public void unsubscribe(EventStoreListener listener)
+    {
+        listeners.remove(listener);
+        synchronized (this)
+        {
+            if(listeners.isEmpty() && notificationThread != null)
             {
-                criteriaList.add(Criteria.where(STATUS).is(STATUS_PARTIAL));
-                criteriaList.add(Criteria.where(DISPATCH_DATE).gt(cal.getTime()));
-                criteriaList.add(Criteria.where(INSTANCES).nin(instanceId));
+                notificationThread = null;
+                DBCursor cursor = notificationCursor;
+                if(cursor != null) {
+                    cursor.close();
+                }
             }
         }
-        else
+    }
+
+    private void tailNotifications()
+    {
+        Thread current = Thread.currentThread();
+        Object lastId = null;
+        while(notificationThread == current)
         {
-            if(!isDistributed)
+            DBCursor cursor = null;
+            try
             {
-                criteriaList.add(Criteria.where(STATUS).is(STATUS_PENDING));
+                DBCollection collection = mongoTemplate.getCollection(NOTIFICATIONS);
+                if(lastId == null)
+                {
+                    DBCursor latest = collection.find().sort(new BasicDBObject("$natural", -1)).limit(1);
+                    lastId = latest.hasNext() ? latest.next().get(ID) : null;
+                    latest.close();
+                }
+                DBObject query = lastId!=null ? new BasicDBObject(ID, new BasicDBObject("$gt", lastId)) : new BasicDBObject();
+                cursor = collection.find(query).addOption(Bytes.QUERYOPTION_TAILABLE).addOption(Bytes.QUERYOPTION_AWAITDATA);
+                notificationCursor = cursor;
+                while(notificationThread == current && cursor.hasNext())
+                {
+                    DBObject notification = cursor.next();
+                    lastId = notification.get(ID);
+                    String eventClassName = (String)notification.get(EVENT_CLASSNAME);
+                    if(eventClassName != null && !storeId.equals(notification.get(NOTIFICATION_STORE)))
+                    {
+                        for (EventStoreListener listener : listeners)
+                        {
+                            listener.distributedEventsAvailable(eventClassName);
+                        }
+                    }
+                }
             }
-            else
+            catch (RuntimeException e)
             {
-                criteriaList.add(Criteria.where(STATUS).is(STATUS_PARTIAL));
-                criteriaList.add(Criteria.where(INSTANCES).nin(instanceId));
+                if(notificationThread == current) {
+                    logger.error("Error reading the event notifications, reopening " + e.getMessage());
+                }
+            }
+            finally
+            {
+                if(cursor != null) {
+                    cursor.close();
+                }
+            }
+            if(notificationThread == current)
+            {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                }
             }
         }
+    }
 
-        Criteria mainCriteria = new Criteria();
-        mainCriteria.andOperator(criteriaList.toArray(new Criteria[criteriaList.size()]));
-        query = new Query(mainCriteria);
+    public void removeEvent(EventListenerSignature signature)
+    {
+        Query query = new Query(Criteria.where(ID).is(signature.getId()));
+        mongoTemplate.remove(query, EventListenerSignature.class);
+    }
 
+    /**
+     * Remove the event signatures with a single remove on their ids
+     */
+    public void removeEvents(List<EventListenerSignature> signatures)
+    {
+        if(signatures.size() == 1) {
+            removeEvent(signatures.get(0));
+        } else if(signatures.size() > 1) {
+            List<String> ids = new ArrayList<String>(signatures.size());
+            for (EventListenerSignature signature : signatures)
+            {
+                ids.add(signature.getId());
+            }
+            mongoTemplate.remove(new Query(Criteria.where(ID).in(ids)), EventListenerSignature.class);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Deprecated
+    public List<EventListenerSignature> getEvents(Class eventClass, Date startDate, boolean isDistributed, String instanceId, int expireTime, int limit)
+    {
+        List<Criteria> criteriaList = getPendingCriteria(eventClass, startDate, isDistributed, instanceId, expireTime);
+        criteriaList.add(Criteria.where(IS_LOCKED).is(false));
+
+        Query query = getCriteriaAndQuery(criteriaList.toArray(new Criteria[criteriaList.size()]));
         query.limit(limit);
         return mongoTemplate.find(query, EventListenerSignature.class);
     }
 
     @SuppressWarnings("rawtypes")
+    @Deprecated
     public long getEventsCount(Class eventClass, Date startDate, boolean isDistributed, String instanceId, int expireTime)
     {
-        Query query = null;
+        List<Criteria> criteriaList = getPendingCriteria(eventClass, startDate, isDistributed, instanceId, expireTime);
+        criteriaList.add(Criteria.where(IS_LOCKED).is(false));
 
-        List<Criteria> criteriaList = new ArrayList<Criteria>();
+        Query query = getCriteriaAndQuery(criteriaList.toArray(new Criteria[criteriaList.size()]));
+        return mongoTemplate.count(query, EventListenerSignature.class);
+    }
 
-        criteriaList.add(Criteria.where(DISTRIBUTED).is(isDistributed));
-        criteriaList.add(Criteria.where(IS_LOCKED).is(false));
+    /**
+     * Claim the events in three steps, find the ids of up to limit claimable events, lease them with
+     * a multi update that repeats the claimable criteria and a token unique to this claim, then read
+     * back the events carrying the token, each event is won by exactly one instance as the update
+     * of a single document is atomic
+     */
+    @SuppressWarnings("rawtypes")
+    public List<EventListenerSignature> claimEvents(Class eventClass, Date startDate, boolean isDistributed, String instanceId,
+            int expireTime, int limit, long leaseTimeMs)
+    {
+        List<Criteria> criteriaList = getPendingCriteria(eventClass, startDate, isDistributed, instanceId, expireTime);
+        return claimEvents(criteriaList, instanceId, limit, leaseTimeMs);
+    }
+
+    /**
+     * Claim the events in the given status in the same three steps as the pending events
+     */
+    @SuppressWarnings("rawtypes")
+    public List<EventListenerSignature> claimEventsByStatus(Class eventClass, String status, String instanceId,
+            int limit, long leaseTimeMs)
+    {
+        List<Criteria> criteriaList = new ArrayList<Criteria>();
         criteriaList.add(Criteria.where(EVENT_CLASSNAME).is(eventClass.getCanonicalName()));
+        criteriaList.add(Criteria.where(STATUS).is(status));
+        return claimEvents(criteriaList, instanceId, limit, leaseTimeMs);
+    }
 
-        if(expireTime>0)
-        {
-            Calendar cal = Calendar.getInstance();
-            cal.setTime(startDate);
-            cal.add(Calendar.SECOND, -expireTime);
+    /**
+     * Claim up to limit events matching the criteria that are not leased or whose lease expired
+     * @param criteriaList
+     * @param instanceId
+     * @param limit
+     * @param leaseTimeMs
+     * @return the claimed events
+     */
+    private List<EventListenerSignature> claimEvents(List<Criteria> criteriaList, String instanceId, int limit,
+            long leaseTimeMs)
+    {
+        Date now = new Date();
+        criteriaList.add(new Criteria().orOperator(Criteria.where(IS_LOCKED).is(false).and(LEASE_EXPIRY).is(null),
+                Criteria.where(LEASE_EXPIRY).lt(now)));
 
-            if(!isDistributed)
-            {
-                criteriaList.add(Criteria.where(STATUS).is(STATUS_PENDING));
-                criteriaList.add(Criteria.where(DISPATCH_DATE).gt(cal.getTime()));
-            }
-            else
+        List<Object> ids = findIds(getCriteriaAndQuery(criteriaList.toArray(new Criteria[criteriaList.size()])), limit);
+        if(ids.size() == 0) {
+            return new ArrayList<EventListenerSignature>();
+        }
+
+        String token = instanceId + UNDER_SCORE + UUID.randomUUID().toString();
+        criteriaList.add(Criteria.where(ID).in(ids));
+        Update update = new Update();
+        update.set(IS_LOCKED, true);
+        update.set(LEASE_TOKEN, token);
+        update.set(LEASE_OWNER, instanceId);
+        update.set(LEASE_EXPIRY, new Date(now.getTime() + leaseTimeMs));
+        mongoTemplate.updateMulti(getCriteriaAndQuery(criteriaList.toArray(new Criteria[criteriaList.size()])),
+                update, EventListenerSignature.class);
+
+        return mongoTemplate.find(new Query(Criteria.where(LEASE_TOKEN).is(token)), EventListenerSignature.class);
+    }
+
+    /**
+     * Renew the leases with a multi update per chunk of expiryBatchSize ids, so the query stays
+     * within the document size limit, a signature that completed has no lease left and a claimed
+     * one carries the token of its claim, neither is extended
+     */
+    public int renewLeases(List<EventListenerSignature> signatures, Date leaseExpiry)
+    {
+        if(signatures == null || signatures.size() == 0) {
+            return 0;
+        }
+        Update update = new Update();
+        update.set(LEASE_EXPIRY, leaseExpiry);
+        int renewed = 0;
+        for (int from = 0; from < signatures.size(); from += expiryBatchSize)
+        {
+            List<EventListenerSignature> chunk = signatures.subList(from, Math.min(from + expiryBatchSize, signatures.size()));
+            List<String> ids = new ArrayList<String>(chunk.size());
+            for (EventListenerSignature signature : chunk)
             {
-                criteriaList.add(Criteria.where(STATUS).is(STATUS_PARTIAL));
-                criteriaList.add(Criteria.where(DISPATCH_DATE).gt(cal.getTime()));
-                criteriaList.add(Criteria.where(INSTANCES).nin(instanceId));
+                ids.add(signature.getId());
             }
+            renewed += mongoTemplate.updateMulti(getCriteriaAndQuery(Criteria.where(ID).in(ids),
+                    Criteria.where(STATUS).in(STATUS_PENDING, STATUS_PARTIAL), Criteria.where(LEASE_EXPIRY).ne(null),
+                    Criteria.where(LEASE_TOKEN).is(null)), update, EventListenerSignature.class).getN();
+        }
+        return renewed;
+    }
+
+    /**
+     * Unlock the signatures leased by the instance with a single multi update, the completed
+     * signatures have no lease left and are not matched
+     */
+    public int releaseLeases(String instanceId)
+    {
+        Update update = new Update();
+        update.set(IS_LOCKED, false);
+        update.unset(LEASE_EXPIRY);
+        update.unset(LEASE_TOKEN);
+        update.unset(LEASE_OWNER);
+        return mongoTemplate.updateMulti(new Query(Criteria.where(LEASE_OWNER).is(instanceId)), update,
+                EventListenerSignature.class).getN();
+    }
+
+    /**
+     * The criteria of the pending events of a type, excluding the lock criteria
+     * @param eventClass
+     * @param startDate
+     * @param isDistributed
+     * @param instanceId
+     * @param expireTime
+     * @return
+     */
+    @SuppressWarnings("rawtypes")
+    private static List<Criteria> getPendingCriteria(Class eventClass, Date startDate, boolean isDistributed, String instanceId, int expireTime)
+    {
+        List<Criteria> criteriaList = new ArrayList<Criteria>();
+
+        criteriaList.add(Criteria.where(DISTRIBUTED).is(isDistributed));
+        criteriaList.add(Criteria.where(EVENT_CLASSNAME).is(eventClass.getCanonicalName()));
+
+        if(!isDistributed)
+        {
+            criteriaList.add(Criteria.where(STATUS).is(STATUS_PENDING));
         }
         else
         {
-            if(!isDistributed)
-            {
-                criteriaList.add(Criteria.where(STATUS).is(STATUS_PENDING));
-            }
-            else
-            {
-                criteriaList.add(Criteria.where(STATUS).is(STATUS_PARTIAL));
-                criteriaList.add(Criteria.where(INSTANCES).nin(instanceId));
-            }
+            criteriaList.add(Criteria.where(STATUS).is(STATUS_PARTIAL));
+            criteriaList.add(Criteria.where(INSTANCES).nin(instanceId));
         }
 
-        Criteria mainCriteria = new Criteria();
-        mainCriteria.andOperator(criteriaList.toArray(new Criteria[criteriaList.size()]));
-        query = new Query(mainCriteria);
+        if(expireTime>0)
+        {
+            Calendar cal = Calendar.getInstance();
+            cal.setTime(startDate);
+            cal.add(Calendar.SECOND, -expireTime);
+            criteriaList.add(Criteria.where(DISPATCH_DATE).gt(cal.getTime()));
+        }
+        return criteriaList;
+    }
 
-        return mongoTemplate.count(query, EventListenerSignature.class);
+    @SuppressWarnings("rawtypes")
+    @Deprecated
+    public List<EventListenerSignature> getEventsByStatus(Class eventClass, String status, int limit)
+    {
+        Query query = getCriteriaAndQuery(Criteria.where(EVENT_CLASSNAME).is(eventClass.getCanonicalName()),
+                    Criteria.where(STATUS).is(status),
+                    Criteria.where(IS_LOCKED).is(false));
+        query.limit(limit);
+        return mongoTemplate.find(query, EventListenerSignature.class);
     }
 
     public boolean findDuplicateEvents(EventListenerSignature signature, int expireTime)
     {
         Query query = null;
         Calendar cal = Calendar.getInstance();
+        Criteria eventCriteria = null;
+        if(signature.getEventHash()!=0 && signature.getEventData()!=null) {
+            eventCriteria = Criteria.where(EVENT_HASH).is(signature.getEventHash()).and(EVENT_DATA).is(signature.getEventData());
+        } else if(signature.getEventData()!=null) {
+            eventCriteria = Criteria.where(EVENT_DATA).is(signature.getEventData());
+        } else {
+            eventCriteria = Criteria.where(EVENT).is(signature.getEvent());
+        }
         if(expireTime<=0)
         {
-            query = getCriteriaAndQuery(Criteria.where(EVENT).is(signature.getEvent()),
+            query = getCriteriaAndQuery(eventCriteria,
                         Criteria.where(EVENT_CLASSNAME).is(signature.getEvent().getClass().getCanonicalName()),
                         Criteria.where(STATUS).in(STATUS_PENDING, STATUS_PARTIAL),
                         Criteria.where(LISTENER_CLASSNAME).is(signature.getListenerClassName()),
@@ -167,7 +607,7 @@ public class EventPersistentMongoDBImpl implements EventPersistenceInterface
             cal.setTime(new Date());
             cal.add(Calendar.SECOND, -expireTime);
 
-            query = getCriteriaAndQuery(Criteria.where(EVENT).is(signature.getEvent()),
+            query = getCriteriaAndQuery(eventCriteria,
                         Criteria.where(EVENT_CLASSNAME).is(signature.getEvent().getClass().getCanonicalName()),
                         Criteria.where(STATUS).in(STATUS_PENDING, STATUS_PARTIAL),
                         Criteria.where(LISTENER_CLASSNAME).is(signature.getListenerClassName()),
@@ -180,68 +620,222 @@ public class EventPersistentMongoDBImpl implements EventPersistenceInterface
         return false;
     }
 
-    public boolean lockEventStore(String instanceId)
+    /**
+     * Expire the events of each type in chunks of expiryBatchSize, the ids of a chunk are read with
+     * the expiry criteria and expired with a multi update that repeats them, so an event claimed
+     * in between is left alone
+     */
+    public int expirePendingEvents(Map<String, Integer> eventExpireMap)
     {
-        LockStatus status = mongoTemplate.findOne(new Query(), LockStatus.class);
-        if((status!=null && !status.isLocked) || status==null)
+        int expired = 0;
+        if(eventExpireMap==null) {
+            return expired;
+        }
+        Date now = new Date();
+        for (String evtClsName : eventExpireMap.keySet())
         {
-            if(status==null)
-            {
-                status = new LockStatus();
+            Integer expireTime = eventExpireMap.get(evtClsName);
+            if(expireTime==null || expireTime<=0) {
+                continue;
             }
-            status.instanceId = instanceId;
-            status.isLocked = true;
-            mongoTemplate.save(status);
-            return true;
+            Calendar cal = Calendar.getInstance();
+            cal.setTime(now);
+            cal.add(Calendar.SECOND, -expireTime);
+
+            List<Criteria> criteriaList = new ArrayList<Criteria>();
+            criteriaList.add(Criteria.where(EVENT_CLASSNAME).is(evtClsName));
+            criteriaList.add(Criteria.where(STATUS).in(STATUS_PENDING, STATUS_PARTIAL));
+            criteriaList.add(Criteria.where(IS_LOCKED).is(false));
+            criteriaList.add(Criteria.where(DISPATCH_DATE).lt(cal.getTime()));
+            criteriaList.add(Criteria.where(CAN_EXPIRE).is(true));
+
+            Update update = new Update();
+            update.set(STATUS, STATUS_EXPIRED);
+            update.set(PROCESSED_DATE, now);
+            update.set(COMPLETED_DATE, now);
+
+            List<Object> ids = null;
+            do
+            {
+                ids = findIds(getCriteriaAndQuery(criteriaList.toArray(new Criteria[criteriaList.size()])), expiryBatchSize);
+                if(ids.size() > 0)
+                {
+                    List<Criteria> chunkCriteria = new ArrayList<Criteria>(criteriaList);
+                    chunkCriteria.add(Criteria.where(ID).in(ids));
+                    expired += mongoTemplate.updateMulti(getCriteriaAndQuery(chunkCriteria.toArray(new Criteria[chunkCriteria.size()])),
+                            update, EventListenerSignature.class).getN();
+                }
+            } while(ids.size() == expiryBatchSize);
         }
-        return false;
+        return expired;
     }
 
-    public boolean unLockEventStore(String instanceId)
+    /**
+     * Remove the completed signatures in chunks of expiryBatchSize, copying them to the archive
+     * collection first if one is set, nothing is done here when the server removes them through
+     * the TTL index
+     */
+    public int purgeEvents(Date before)
     {
-        Query query = new Query(Criteria.where(IS_LOCKED).is(true));
-        LockStatus status = mongoTemplate.findOne(query, LockStatus.class);
-        if(status!=null && status.isLocked)
-        {
-            status.instanceId = instanceId;
-            status.isLocked = false;
-            mongoTemplate.save(status);
-            return true;
+        if(retentionTtlSeconds > 0) {
+            return 0;
         }
-        return false;
+        ensureRetentionIndex();
+        DBCollection collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(EventListenerSignature.class));
+        DBObject query = new BasicDBObject(COMPLETED_DATE, new BasicDBObject("$lt", before));
+        int purged = 0;
+        List<Object> ids = null;
+        do
+        {
+            ids = new ArrayList<Object>();
+            List<DBObject> archived = new ArrayList<DBObject>();
+            DBCursor cursor = archiveCollectionName!=null ? collection.find(query)
+                    : collection.find(query, new BasicDBObject(ID, 1));
+            cursor.limit(expiryBatchSize);
+            try
+            {
+                while(cursor.hasNext())
+                {
+                    DBObject signature = cursor.next();
+                    ids.add(signature.get(ID));
+                    archived.add(signature);
+                }
+            }
+            finally
+            {
+                cursor.close();
+            }
+            if(ids.size() > 0)
+            {
+                DBObject chunk = new BasicDBObject(ID, new BasicDBObject("$in", ids));
+                if(archiveCollectionName != null)
+                {
+                    DBCollection archive = mongoTemplate.getCollection(archiveCollectionName);
+                    archive.remove(chunk);
+                    archive.insert(archived);
+                }
+                purged += collection.remove(chunk).getN();
+            }
+        } while(ids.size() == expiryBatchSize);
+        return purged;
     }
 
-    public void expireEvents(Map<String, Integer> eventExpireMap)
+    /**
+     * Create the index on the completion date, with the retention as its TTL in the TTL mode, an
+     * existing index whose TTL does not match the mode is dropped and created again
+     */
+    private void ensureRetentionIndex()
     {
-        if(eventExpireMap!=null)
+        if(retentionIndexed) {
+            return;
+        }
+        try
         {
-            List<Criteria> criteriaList = new ArrayList<Criteria>();
-
-            for (String evtClsName : eventExpireMap.keySet())
+            DBCollection collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(EventListenerSignature.class));
+            for (DBObject index : collection.getIndexInfo())
             {
-                if(eventExpireMap.get(evtClsName)>0)
+                if(RETENTION_INDEX.equals(index.get("name")))
                 {
-                    Calendar cal = Calendar.getInstance();
-                    cal.setTime(new Date());
-                    cal.add(Calendar.SECOND, -eventExpireMap.get(evtClsName));
-
-                    criteriaList.add(Criteria.where(EVENT_CLASSNAME).is(evtClsName).and(DISPATCH_DATE).lt(cal.getTime()));
+                    Object ttl = index.get("expireAfterSeconds");
+                    int seconds = ttl instanceof Number ? ((Number)ttl).intValue() : 0;
+                    if(seconds != retentionTtlSeconds) {
+                        collection.dropIndex(RETENTION_INDEX);
+                    }
                 }
             }
+            DBObject options = new BasicDBObject("name", RETENTION_INDEX).append("sparse", true);
+            if(retentionTtlSeconds > 0) {
+                options.put("expireAfterSeconds", retentionTtlSeconds);
+            }
+            collection.ensureIndex(new BasicDBObject(COMPLETED_DATE, 1), options);
+            retentionIndexed = true;
+        }
+        catch (RuntimeException e)
+        {
+            logger.error("Could not create the event retention index " + e.getMessage());
+        }
+    }
 
-            Criteria mainCriteria = new Criteria();
-            mainCriteria.orOperator(criteriaList.toArray(new Criteria[criteriaList.size()]));
-
-            Query query = getCriteriaAndQuery(mainCriteria,
-                            Criteria.where(STATUS).in(STATUS_PENDING, STATUS_PARTIAL),
-                            Criteria.where(CAN_EXPIRE).is(true),
-                            Criteria.where(IS_LOCKED).is(false));
+    /**
+     * Set the completed date of a signature in a final status from its processed date, clear
+     * it otherwise
+     * @param signature
+     */
+    private static void setCompletedDate(EventListenerSignature signature)
+    {
+        if(!isCompleted(signature.getStatus())) {
+            signature.setCompletedDate(null);
+        } else if(signature.getCompletedDate() == null) {
+            signature.setCompletedDate(signature.getProcessedDate()!=null?signature.getProcessedDate():new Date());
+        }
+    }
 
-            Update update = new Update();
-            update.set(STATUS, STATUS_EXPIRED);
+    private static boolean isCompleted(String status)
+    {
+        return STATUS_SUCCESS.equals(status) || STATUS_FAILED.equals(status) || STATUS_EXPIRED.equals(status);
+    }
 
-            mongoTemplate.updateFirst(query, update, EventListenerSignature.class);
+    /**
+     * Read the ids of up to limit event signatures matching the query
+     * @param query
+     * @param limit
+     * @return
+     */
+    private List<Object> findIds(Query query, int limit)
+    {
+        DBCursor cursor = mongoTemplate.getCollection(mongoTemplate.getCollectionName(EventListenerSignature.class))
+                .find(query.getQueryObject(), new BasicDBObject(ID, 1)).limit(limit);
+        List<Object> ids = new ArrayList<Object>();
+        try
+        {
+            while(cursor.hasNext())
+            {
+                ids.add(cursor.next().get(ID));
+            }
+        }
+        finally
+        {
+            cursor.close();
         }
+        return ids;
+    }
+
+    public int getExpiryBatchSize()
+    {
+        return expiryBatchSize;
+    }
+
+    public void setExpiryBatchSize(int expiryBatchSize)
+    {
+        this.expiryBatchSize = expiryBatchSize;
+    }
+
+    public String getArchiveCollectionName()
+    {
+        return archiveCollectionName;
+    }
+
+    public void setArchiveCollectionName(String archiveCollectionName)
+    {
+        this.archiveCollectionName = archiveCollectionName;
+    }
+
+    public int getRetentionTtlSeconds()
+    {
+        return retentionTtlSeconds;
+    }
+
+    /**
+     * Let the server remove the completed signatures this many seconds after their completion
+     * through a TTL index, the engine eventRetentionSeconds then has no effect on this store
+     * and the signatures are not archived
+     * @param retentionTtlSeconds
+     */
+    public void setRetentionTtlSeconds(int retentionTtlSeconds)
+    {
+        this.retentionTtlSeconds = retentionTtlSeconds;
+        this.retentionIndexed = false;
+        ensureRetentionIndex();
     }
 
     private Query getCriteriaAndQuery(Criteria... criterias)
@@ -0,0 +1,968 @@
+package com.evengine.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+import static com.evengine.core.EventHandlerEngine.*;
+import com.evengine.core.EventListenerSignature;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * A local event store backed by a write ahead log of memory mapped segment files<br/>
+ * A new event signature is appended as a full record (the serialized signature), status
+ * transitions are appended as small delta records and removals as tombstones, every record
+ * carries a crc so a torn tail is dropped on replay<br/>
+ * The pending (PENDING, PARTIAL, SPILLED) signatures are kept in an in-memory index rebuilt by
+ * replaying the segments on startup, queries never touch the disk<br/>
+ * When the active segment is full a new one is started and compacted, the pending signatures
+ * are copied forward as full records and all older segments are deleted<br/>
+ * Signatures carrying the event encoded by the engine event codec are stored without the
+ * event object, otherwise the events need to be Serializable<br/>
+ * The directory can only be used by a single process
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@SuppressWarnings("rawtypes")
+public class EventPersistentWALImpl implements EventPersistenceInterface
+{
+    private static Logger logger = Logger.getLogger(EventPersistentWALImpl.class.getName());
+
+    private static final String SEGMENT_PREFIX = "events-";
+
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private static final String LOCK_FILE = "evengine.lock";
+
+    private static final byte RECORD_STORE = 1;
+
+    private static final byte RECORD_UPDATE = 2;
+
+    private static final byte RECORD_REMOVE = 3;
+
+    /**
+     * record length (int), crc (int), record type (byte)
+     */
+    private static final int HEADER_SIZE = 9;
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final class Segment
+    {
+        long index;
+        File file;
+        RandomAccessFile raf;
+        MappedByteBuffer buffer;
+    }
+
+    private static final class Entry
+    {
+        EventListenerSignature signature;
+        long segment;
+    }
+
+    private static final class DuplicateKey
+    {
+        Object event;
+        String listenerClassName;
+        String listenerMethodName;
+
+        DuplicateKey(EventListenerSignature signature)
+        {
+            this.event = signature.getEventData()!=null?ByteBuffer.wrap(signature.getEventData()):signature.getEvent();
+            this.listenerClassName = signature.getListenerClassName();
+            this.listenerMethodName = signature.getListenerMethodName();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Arrays.hashCode(new Object[]{event, listenerClassName, listenerMethodName});
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if(!(obj instanceof DuplicateKey)) {
+                return false;
+            }
+            DuplicateKey other = (DuplicateKey)obj;
+            return Arrays.equals(new Object[]{event, listenerClassName, listenerMethodName},
+                    new Object[]{other.event, other.listenerClassName, other.listenerMethodName});
+        }
+    }
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    private boolean syncWrites;
+
+    private final RandomAccessFile lockFile;
+
+    private final FileLock directoryLock;
+
+    private final TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+
+    private Segment active;
+
+    private boolean compacting;
+
+    private final Map<String, Entry> live = new HashMap<String, Entry>();
+
+    private final Map<String, Map<String, Entry>> liveByClass = new HashMap<String, Map<String, Entry>>();
+
+    private final Map<DuplicateKey, Set<String>> duplicateIndex = new HashMap<DuplicateKey, Set<String>>();
+
+    public EventPersistentWALImpl(String directory) throws IOException
+    {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open the event store in the given directory, replaying the existing segments
+     * @param directory
+     * @param segmentSize the size of each segment file in bytes
+     * @throws IOException
+     */
+    public EventPersistentWALImpl(String directory, int segmentSize) throws IOException
+    {
+        this.directory = new File(directory);
+        this.segmentSize = segmentSize;
+        if(!this.directory.exists() && !this.directory.mkdirs()) {
+            throw new IOException("Could not create the event store directory " + directory);
+        }
+        lockFile = new RandomAccessFile(new File(this.directory, LOCK_FILE), "rw");
+        directoryLock = lockFile.getChannel().tryLock();
+        if(directoryLock == null) {
+            lockFile.close();
+            throw new IllegalStateException("The event store directory " + directory + " is in use by another process");
+        }
+        replay();
+    }
+
+    public boolean isSyncWrites()
+    {
+        return syncWrites;
+    }
+
+    /**
+     * Force every write to the disk before returning, otherwise the writes survive a process
+     * crash but not an operating system crash
+     * @param syncWrites
+     */
+    public void setSyncWrites(boolean syncWrites)
+    {
+        this.syncWrites = syncWrites;
+    }
+
+    public synchronized void storeEvent(EventListenerSignature signature)
+    {
+        write(signature);
+        sync();
+    }
+
+    public synchronized void storeEvents(List<EventListenerSignature> signatures)
+    {
+        for (EventListenerSignature signature : signatures)
+        {
+            write(signature);
+        }
+        sync();
+    }
+
+    public synchronized void updateStatuses(List<EventListenerSignature> signatures)
+    {
+        for (EventListenerSignature signature : signatures)
+        {
+            write(signature);
+        }
+        sync();
+    }
+
+    public synchronized void removeEvent(EventListenerSignature signature)
+    {
+        if(live.containsKey(signature.getId()))
+        {
+            append(RECORD_REMOVE, encodeRemove(signature.getId()));
+            removeLive(signature.getId());
+            sync();
+        }
+    }
+
+    public synchronized void removeEvents(List<EventListenerSignature> signatures)
+    {
+        boolean removed = false;
+        for (EventListenerSignature signature : signatures)
+        {
+            if(live.containsKey(signature.getId()))
+            {
+                append(RECORD_REMOVE, encodeRemove(signature.getId()));
+                removeLive(signature.getId());
+                removed = true;
+            }
+        }
+        if(removed) {
+            sync();
+        }
+    }
+
+    public synchronized boolean findDuplicateEvents(EventListenerSignature signature, int expireTime)
+    {
+        Set<String> ids = duplicateIndex.get(new DuplicateKey(signature));
+        if(ids == null) {
+            return false;
+        }
+        Date minDispatchDate = getMinDispatchDate(new Date(), expireTime);
+        for (String id : ids)
+        {
+            EventListenerSignature pending = live.get(id).signature;
+            if((STATUS_PENDING.equals(pending.getStatus()) || STATUS_PARTIAL.equals(pending.getStatus()))
+                    && (minDispatchDate==null || pending.getDispatchDate().after(minDispatchDate)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Deprecated
+    public synchronized List<EventListenerSignature> getEvents(Class eventClass, Date startDate, boolean isDistributed,
+            String instanceId, int expireTime, int limit)
+    {
+        List<EventListenerSignature> events = new ArrayList<EventListenerSignature>();
+        Map<String, Entry> entries = liveByClass.get(eventClass.getCanonicalName());
+        if(entries != null)
+        {
+            Date minDispatchDate = getMinDispatchDate(startDate, expireTime);
+            for (Entry entry : entries.values())
+            {
+                if(events.size() >= limit) {
+                    break;
+                }
+                if(isPending(entry.signature, isDistributed, instanceId, minDispatchDate, false)) {
+                    events.add(entry.signature.copy());
+                }
+            }
+        }
+        return events;
+    }
+
+    /**
+     * The claims are only kept in memory, the store is used by a single process and all the
+     * locks and leases of a previous process are released when the segments are replayed
+     */
+    public synchronized List<EventListenerSignature> claimEvents(Class eventClass, Date startDate, boolean isDistributed,
+            String instanceId, int expireTime, int limit, long leaseTimeMs)
+    {
+        List<EventListenerSignature> events = new ArrayList<EventListenerSignature>();
+        Map<String, Entry> entries = liveByClass.get(eventClass.getCanonicalName());
+        if(entries != null)
+        {
+            Date now = new Date();
+            Date leaseExpiry = new Date(now.getTime() + leaseTimeMs);
+            Date minDispatchDate = getMinDispatchDate(startDate, expireTime);
+            for (Entry entry : entries.values())
+            {
+                if(events.size() >= limit) {
+                    break;
+                }
+                EventListenerSignature signature = entry.signature;
+                boolean claimable = signature.getLeaseExpiry()==null ? !signature.isLocked()
+                        : signature.getLeaseExpiry().before(now);
+                if(claimable && isPending(signature, isDistributed, instanceId, minDispatchDate, true))
+                {
+                    signature.setLocked(true);
+                    signature.setLeaseExpiry(leaseExpiry);
+                    signature.setLeaseOwner(instanceId);
+                    events.add(signature.copy());
+                }
+            }
+        }
+        return events;
+    }
+
+    public synchronized List<EventListenerSignature> claimEventsByStatus(Class eventClass, String status, String instanceId,
+            int limit, long leaseTimeMs)
+    {
+        List<EventListenerSignature> events = new ArrayList<EventListenerSignature>();
+        Map<String, Entry> entries = liveByClass.get(eventClass.getCanonicalName());
+        if(entries != null)
+        {
+            Date now = new Date();
+            Date leaseExpiry = new Date(now.getTime() + leaseTimeMs);
+            for (Entry entry : entries.values())
+            {
+                if(events.size() >= limit) {
+                    break;
+                }
+                EventListenerSignature signature = entry.signature;
+                boolean claimable = signature.getLeaseExpiry()==null ? !signature.isLocked()
+                        : signature.getLeaseExpiry().before(now);
+                if(claimable && status.equals(signature.getStatus()))
+                {
+                    signature.setLocked(true);
+                    signature.setLeaseExpiry(leaseExpiry);
+                    signature.setLeaseOwner(instanceId);
+                    events.add(signature.copy());
+                }
+            }
+        }
+        return events;
+    }
+
+    public synchronized int renewLeases(List<EventListenerSignature> signatures, Date leaseExpiry)
+    {
+        int renewed = 0;
+        for (EventListenerSignature signature : signatures)
+        {
+            Entry entry = live.get(signature.getId());
+            if(entry != null && entry.signature.getLeaseExpiry() != null
+                    && (STATUS_PENDING.equals(entry.signature.getStatus()) || STATUS_PARTIAL.equals(entry.signature.getStatus())))
+            {
+                entry.signature.setLeaseExpiry(leaseExpiry);
+                renewed++;
+            }
+        }
+        return renewed;
+    }
+
+    public synchronized int releaseLeases(String instanceId)
+    {
+        int released = 0;
+        for (Entry entry : live.values())
+        {
+            EventListenerSignature signature = entry.signature;
+            if(instanceId.equals(signature.getLeaseOwner()))
+            {
+                signature.setLocked(false);
+                signature.setLeaseExpiry(null);
+                signature.setLeaseToken(null);
+                signature.setLeaseOwner(null);
+                released++;
+            }
+        }
+        return released;
+    }
+
+    @Deprecated
+    public synchronized long getEventsCount(Class eventClass, Date startDate, boolean isDistributed, String instanceId,
+            int expireTime)
+    {
+        long count = 0;
+        Map<String, Entry> entries = liveByClass.get(eventClass.getCanonicalName());
+        if(entries != null)
+        {
+            Date minDispatchDate = getMinDispatchDate(startDate, expireTime);
+            for (Entry entry : entries.values())
+            {
+                if(isPending(entry.signature, isDistributed, instanceId, minDispatchDate, false)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Deprecated
+    public synchronized List<EventListenerSignature> getEventsByStatus(Class eventClass, String status, int limit)
+    {
+        List<EventListenerSignature> events = new ArrayList<EventListenerSignature>();
+        Map<String, Entry> entries = liveByClass.get(eventClass.getCanonicalName());
+        if(entries != null)
+        {
+            for (Entry entry : entries.values())
+            {
+                if(events.size() >= limit) {
+                    break;
+                }
+                if(status.equals(entry.signature.getStatus()) && !entry.signature.isLocked()) {
+                    events.add(entry.signature.copy());
+                }
+            }
+        }
+        return events;
+    }
+
+    public synchronized int expirePendingEvents(Map<String, Integer> eventExpireMap)
+    {
+        int expired = 0;
+        if(eventExpireMap!=null)
+        {
+            Date now = new Date();
+            for (String evtClsName : eventExpireMap.keySet())
+            {
+                Map<String, Entry> entries = liveByClass.get(evtClsName);
+                if(eventExpireMap.get(evtClsName)<=0 || entries==null) {
+                    continue;
+                }
+                Date minDispatchDate = getMinDispatchDate(now, eventExpireMap.get(evtClsName));
+                for (Entry entry : new ArrayList<Entry>(entries.values()))
+                {
+                    EventListenerSignature signature = entry.signature;
+                    if((STATUS_PENDING.equals(signature.getStatus()) || STATUS_PARTIAL.equals(signature.getStatus()))
+                            && signature.isCanExpire() && !signature.isLocked()
+                            && signature.getDispatchDate().before(minDispatchDate))
+                    {
+                        EventListenerSignature update = signature.copy();
+                        update.setStatus(STATUS_EXPIRED);
+                        update.setProcessedDate(now);
+                        write(update);
+                        expired++;
+                    }
+                }
+            }
+            if(expired > 0) {
+                sync();
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Completed signatures are dropped from the index right away and from the disk when their
+     * segment is compacted, there is nothing left to purge
+     */
+    public int purgeEvents(Date before)
+    {
+        return 0;
+    }
+
+    /**
+     * The store is used by a single process, there are no other instances whose distributed
+     * events could become available, so there is nothing to poll for
+     */
+    public boolean subscribe(EventStoreListener listener)
+    {
+        return true;
+    }
+
+    public void unsubscribe(EventStoreListener listener)
+    {
+    }
+
+    /**
+     * Start a new segment, copying the pending signatures forward and deleting all the older segments
+     * @throws IOException
+     */
+    public synchronized void compact() throws IOException
+    {
+        roll(0, true);
+    }
+
+    /**
+     * Force the segments to the disk and release the store directory
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException
+    {
+        for (Segment segment : segments.values())
+        {
+            segment.buffer.force();
+            segment.raf.close();
+        }
+        segments.clear();
+        active = null;
+        directoryLock.release();
+        lockFile.close();
+    }
+
+    /**
+     * Number of pending signatures in the store
+     * @return
+     */
+    public synchronized int size()
+    {
+        return live.size();
+    }
+
+    /**
+     * Number of segment files in the store
+     * @return
+     */
+    public synchronized int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+    private void write(EventListenerSignature signature)
+    {
+        Entry entry = live.get(signature.getId());
+        if(entry != null)
+        {
+            append(RECORD_UPDATE, encodeUpdate(signature));
+            applyUpdate(entry.signature, signature.getStatus(), signature.getProcessedDate(), signature.getError(),
+                    signature.isLocked(), signature.getInstances());
+        }
+        else if(isLive(signature.getStatus()))
+        {
+            long segment = append(RECORD_STORE, encodeStore(signature));
+            putLive(getStoredSignature(signature), segment);
+        }
+    }
+
+    private void applyUpdate(EventListenerSignature signature, String status, Date processedDate, String error,
+            boolean isLocked, List<String> instances)
+    {
+        signature.setStatus(status);
+        signature.setProcessedDate(processedDate);
+        signature.setError(error);
+        signature.setLocked(isLocked);
+        if(!isLocked) {
+            signature.setLeaseExpiry(null);
+            signature.setLeaseToken(null);
+            signature.setLeaseOwner(null);
+        }
+        signature.setInstances(instances!=null?new ArrayList<String>(instances):null);
+        if(!isLive(status)) {
+            removeLive(signature.getId());
+        }
+    }
+
+    private void putLive(EventListenerSignature signature, long segment)
+    {
+        removeLive(signature.getId());
+        Entry entry = new Entry();
+        entry.signature = signature;
+        entry.segment = segment;
+        live.put(signature.getId(), entry);
+        if(liveByClass.get(signature.getEventClassName()) == null) {
+            liveByClass.put(signature.getEventClassName(), new LinkedHashMap<String, Entry>());
+        }
+        liveByClass.get(signature.getEventClassName()).put(signature.getId(), entry);
+        DuplicateKey key = new DuplicateKey(signature);
+        if(duplicateIndex.get(key) == null) {
+            duplicateIndex.put(key, new HashSet<String>());
+        }
+        duplicateIndex.get(key).add(signature.getId());
+    }
+
+    private void removeLive(String id)
+    {
+        Entry entry = live.remove(id);
+        if(entry == null) {
+            return;
+        }
+        Map<String, Entry> entries = liveByClass.get(entry.signature.getEventClassName());
+        if(entries != null) {
+            entries.remove(id);
+        }
+        DuplicateKey key = new DuplicateKey(entry.signature);
+        Set<String> ids = duplicateIndex.get(key);
+        if(ids != null)
+        {
+            ids.remove(id);
+            if(ids.isEmpty()) {
+                duplicateIndex.remove(key);
+            }
+        }
+    }
+
+    private static boolean isLive(String status)
+    {
+        return STATUS_PENDING.equals(status) || STATUS_PARTIAL.equals(status) || STATUS_SPILLED.equals(status);
+    }
+
+    private static boolean isPending(EventListenerSignature signature, boolean isDistributed, String instanceId,
+            Date minDispatchDate, boolean includeLocked)
+    {
+        if(signature.isDistributed() != isDistributed || (signature.isLocked() && !includeLocked)) {
+            return false;
+        }
+        if(minDispatchDate!=null && !signature.getDispatchDate().after(minDispatchDate)) {
+            return false;
+        }
+        if(!isDistributed) {
+            return STATUS_PENDING.equals(signature.getStatus());
+        }
+        return STATUS_PARTIAL.equals(signature.getStatus())
+                && (signature.getInstances()==null || !signature.getInstances().contains(instanceId));
+    }
+
+    private static Date getMinDispatchDate(Date startDate, int expireTime)
+    {
+        if(expireTime<=0) {
+            return null;
+        }
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(startDate);
+        cal.add(Calendar.SECOND, -expireTime);
+        return cal.getTime();
+    }
+
+    /**
+     * Append a record to the active segment, starting a new segment if it does not fit
+     * @param type
+     * @param payload
+     * @return the index of the segment the record was written to
+     */
+    private long append(byte type, byte[] payload)
+    {
+        int recordSize = HEADER_SIZE + payload.length;
+        try
+        {
+            if(active.buffer.position() + recordSize > active.buffer.capacity()) {
+                roll(recordSize, !compacting);
+            }
+            if(active.buffer.position() + recordSize > active.buffer.capacity()) {
+                roll(recordSize, false);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Could not start a new event store segment " + e.getMessage(), e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        MappedByteBuffer buffer = active.buffer;
+        int position = buffer.position();
+        buffer.position(position + 4);
+        buffer.putInt((int)crc.getValue());
+        buffer.put(type);
+        buffer.put(payload);
+        buffer.putInt(position, payload.length);
+        return active.index;
+    }
+
+    private void sync()
+    {
+        if(syncWrites && active != null) {
+            active.buffer.force();
+        }
+    }
+
+    /**
+     * Start a new segment, if compacting copy the pending signatures forward and delete the
+     * older segments
+     * @param minSize
+     * @param compact
+     * @throws IOException
+     */
+    private void roll(int minSize, boolean compact) throws IOException
+    {
+        active = openSegment(active!=null?active.index+1:0, Math.max(segmentSize, minSize));
+        if(!compact) {
+            return;
+        }
+        compacting = true;
+        try
+        {
+            long compactFrom = active.index;
+            for (Entry entry : new ArrayList<Entry>(live.values()))
+            {
+                if(entry.segment < compactFrom) {
+                    entry.segment = append(RECORD_STORE, encodeStore(entry.signature));
+                }
+            }
+            active.buffer.force();
+            for (Segment segment : new ArrayList<Segment>(segments.headMap(compactFrom).values()))
+            {
+                segments.remove(segment.index);
+                segment.raf.close();
+                if(!segment.file.delete()) {
+                    logger.warn("Could not delete the compacted event store segment " + segment.file);
+                }
+            }
+        }
+        finally
+        {
+            compacting = false;
+        }
+    }
+
+    private Segment openSegment(long index, int size) throws IOException
+    {
+        Segment segment = new Segment();
+        segment.index = index;
+        segment.file = new File(directory, SEGMENT_PREFIX + String.format("%020d", index) + SEGMENT_SUFFIX);
+        segment.raf = new RandomAccessFile(segment.file, "rw");
+        if(segment.raf.length() < size) {
+            segment.raf.setLength(size);
+        }
+        segment.buffer = segment.raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segment.raf.length());
+        segments.put(index, segment);
+        return segment;
+    }
+
+    /**
+     * Rebuild the in-memory index from the segment files, releasing the locks and leases held
+     * by the previous process
+     * @throws IOException
+     */
+    private void replay() throws IOException
+    {
+        File[] files = directory.listFiles();
+        List<Long> indexes = new ArrayList<Long>();
+        if(files != null)
+        {
+            for (File file : files)
+            {
+                String name = file.getName();
+                if(name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    indexes.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                }
+            }
+        }
+        Collections.sort(indexes);
+        for (Long index : indexes)
+        {
+            active = openSegment(index, 0);
+            replay(active);
+        }
+        if(active == null) {
+            active = openSegment(0, segmentSize);
+        }
+        for (Entry entry : live.values())
+        {
+            entry.signature.setLocked(false);
+            entry.signature.setLeaseExpiry(null);
+            entry.signature.setLeaseToken(null);
+            entry.signature.setLeaseOwner(null);
+        }
+        logger.info("Event store " + directory + " opened with " + live.size() + " pending events in " + segments.size() + " segments");
+    }
+
+    private void replay(Segment segment)
+    {
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.position(0);
+        while(buffer.position() + HEADER_SIZE <= buffer.capacity())
+        {
+            int position = buffer.position();
+            int length = buffer.getInt(position);
+            if(length <= 0 || position + HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            int checksum = buffer.getInt(position + 4);
+            byte type = buffer.get(position + 8);
+            byte[] payload = new byte[length];
+            buffer.position(position + HEADER_SIZE);
+            buffer.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(payload);
+            if((int)crc.getValue() != checksum)
+            {
+                logger.warn("Corrupt record found in event store segment " + segment.file + " at " + position + ", truncating");
+                buffer.position(position);
+                break;
+            }
+            try
+            {
+                apply(type, payload, segment.index);
+            }
+            catch (Exception e)
+            {
+                logger.error("Skipping unreadable record in event store segment " + segment.file + " at " + position + " " + e.getMessage());
+            }
+        }
+        if(buffer.position() + HEADER_SIZE <= buffer.capacity()) {
+            buffer.putInt(buffer.position(), 0);
+        }
+    }
+
+    private void apply(byte type, byte[] payload, long segment) throws IOException, ClassNotFoundException
+    {
+        if(type == RECORD_STORE)
+        {
+            putLive(decodeStore(payload), segment);
+        }
+        else if(type == RECORD_UPDATE)
+        {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            Entry entry = live.get(readString(in));
+            String status = readString(in);
+            long processedDate = in.readLong();
+            String error = readString(in);
+            boolean isLocked = in.readBoolean();
+            List<String> instances = null;
+            int count = in.readInt();
+            if(count >= 0)
+            {
+                instances = new ArrayList<String>(count);
+                for (int i = 0; i < count; i++)
+                {
+                    instances.add(readString(in));
+                }
+            }
+            if(entry != null) {
+                applyUpdate(entry.signature, status, processedDate>=0?new Date(processedDate):null, error, isLocked, instances);
+            }
+        }
+        else if(type == RECORD_REMOVE)
+        {
+            removeLive(readString(new DataInputStream(new ByteArrayInputStream(payload))));
+        }
+    }
+
+    /**
+     * Copy of the signature as kept in the store, signatures with an encoded event are kept
+     * without the event object
+     * @param signature
+     * @return
+     */
+    private static EventListenerSignature getStoredSignature(EventListenerSignature signature)
+    {
+        EventListenerSignature stored = signature.copy();
+        if(stored.getEventData() != null) {
+            stored.setEvent(null);
+        }
+        return stored;
+    }
+
+    private static byte[] encodeStore(EventListenerSignature signature)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(signature.getEventData()!=null&&signature.getEvent()!=null?getStoredSignature(signature):signature);
+            out.close();
+            return bytes.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("Could not serialize the event " + signature.getEventClassName()
+                    + ", the events need to be Serializable " + e.getMessage(), e);
+        }
+    }
+
+    private static EventListenerSignature decodeStore(byte[] payload) throws IOException, ClassNotFoundException
+    {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload)) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+            {
+                try
+                {
+                    return Class.forName(desc.getName(), false, Thread.currentThread().getContextClassLoader());
+                }
+                catch (ClassNotFoundException e)
+                {
+                    return super.resolveClass(desc);
+                }
+            }
+        };
+        try
+        {
+            return (EventListenerSignature)in.readObject();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static byte[] encodeUpdate(EventListenerSignature signature)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, signature.getId());
+            writeString(out, signature.getStatus());
+            out.writeLong(signature.getProcessedDate()!=null?signature.getProcessedDate().getTime():-1);
+            writeString(out, signature.getError());
+            out.writeBoolean(signature.isLocked());
+            if(signature.getInstances() == null)
+            {
+                out.writeInt(-1);
+            }
+            else
+            {
+                out.writeInt(signature.getInstances().size());
+                for (String instance : signature.getInstances())
+                {
+                    writeString(out, instance);
+                }
+            }
+            out.close();
+            return bytes.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] encodeRemove(String id)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, id);
+            out.close();
+            return bytes.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        if(value == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if(length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
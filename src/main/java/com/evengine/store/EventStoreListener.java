@@ -0,0 +1,31 @@
+package com.evengine.store;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * Notified by the event store when distributed events become available to be claimed by other
+ * instances, either newly stored or released by the instance that processed them
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+public interface EventStoreListener
+{
+    /**
+     * Called from the notification thread of the event store, should only schedule the work
+     * @param eventClassName the canonical name of the event class
+     */
+    public void distributedEventsAvailable(String eventClassName);
+}
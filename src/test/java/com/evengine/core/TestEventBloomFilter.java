@@ -0,0 +1,177 @@
+package com.evengine.core;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.evengine.store.EventPersistentWALImpl;
+import com.evengine.test.events.IdempotentEvent;
+import com.evengine.test.listener.IdempotentEventListener;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+public class TestEventBloomFilter
+{
+    private static final long WINDOW_MS = 500;
+
+    private static long fingerprint(int index)
+    {
+        return EventFingerprintTable.mix(index);
+    }
+
+    @Test
+    public void testNoFalseNegatives()
+    {
+        EventBloomFilter filter = new EventBloomFilter(1000, 0.01, 0);
+        int falsePositives = 0;
+        for (int index = 1; index <= 1000; index++)
+        {
+            filter.add(fingerprint(index));
+        }
+        for (int index = 1; index <= 1000; index++)
+        {
+            Assert.assertTrue(filter.mightContain(fingerprint(index)));
+            if(filter.mightContain(fingerprint(-index))) {
+                falsePositives++;
+            }
+        }
+        // 1% expected, 10 of 1000
+        Assert.assertTrue("False positives " + falsePositives, falsePositives < 50);
+    }
+
+    @Test
+    public void testSaturationWithoutWindow()
+    {
+        EventBloomFilter filter = new EventBloomFilter(100, 0.001, 0);
+        for (int index = 1; index <= 100; index++)
+        {
+            filter.add(fingerprint(index));
+        }
+        int hits = 0;
+        for (int index = 1; index <= 100; index++)
+        {
+            if(filter.mightContain(fingerprint(-index))) {
+                hits++;
+            }
+        }
+        Assert.assertTrue(hits < 100);
+
+        // past its capacity the filter can no longer tell and reports every fingerprint
+        filter.add(fingerprint(101));
+        for (int index = 1; index <= 100; index++)
+        {
+            Assert.assertTrue(filter.mightContain(fingerprint(-index)));
+        }
+    }
+
+    @Test
+    public void testRotation() throws Exception
+    {
+        EventBloomFilter filter = new EventBloomFilter(100, 0.001, WINDOW_MS);
+        filter.add(fingerprint(1));
+        Assert.assertTrue(filter.mightContain(fingerprint(1)));
+
+        // the first rotation keeps the generation it was added to as the previous one
+        Thread.sleep(WINDOW_MS + WINDOW_MS / 5);
+        filter.add(fingerprint(2));
+        Assert.assertTrue(filter.mightContain(fingerprint(1)));
+        Assert.assertTrue(filter.mightContain(fingerprint(2)));
+
+        // the second rotation drops it
+        Thread.sleep(WINDOW_MS + WINDOW_MS / 5);
+        Assert.assertFalse(filter.mightContain(fingerprint(1)));
+        Assert.assertTrue(filter.mightContain(fingerprint(2)));
+
+        // nothing seen for two windows drops both generations
+        Thread.sleep(2 * WINDOW_MS + WINDOW_MS / 5);
+        Assert.assertFalse(filter.mightContain(fingerprint(2)));
+    }
+
+    @Test
+    public void testRotationPastCapacity() throws Exception
+    {
+        EventBloomFilter filter = new EventBloomFilter(10, 0.001, WINDOW_MS);
+        for (int index = 1; index <= 100; index++)
+        {
+            filter.add(fingerprint(index));
+        }
+        // a windowed filter keeps checking the bits past its capacity and has no false negatives
+        for (int index = 1; index <= 100; index++)
+        {
+            Assert.assertTrue(filter.mightContain(fingerprint(index)));
+        }
+
+        // the overfilled generation is dropped after two rotations
+        Thread.sleep(WINDOW_MS + WINDOW_MS / 5);
+        filter.add(fingerprint(0));
+        Assert.assertTrue(filter.mightContain(fingerprint(1)));
+        Thread.sleep(WINDOW_MS + WINDOW_MS / 5);
+        filter.add(fingerprint(0));
+        int hits = 0;
+        for (int index = 1; index <= 100; index++)
+        {
+            if(filter.mightContain(fingerprint(index))) {
+                hits++;
+            }
+        }
+        Assert.assertTrue("Hits " + hits, hits < 10);
+    }
+
+    @Test
+    public void testSeededFromRecoveredEvents() throws Exception
+    {
+        File directory = Files.createTempDirectory("evengine-wal").toFile();
+        EventPersistentWALImpl store = new EventPersistentWALImpl(directory.getPath());
+        store.storeEvent(new EventListenerSignature("pending", new IdempotentEvent(1),
+                IdempotentEventListener.class.getSimpleName(), "processEvent", EventHandlerEngine.STATUS_PENDING,
+                false, new ArrayList<String>(), false));
+
+        EventHandlerEngine engine = new EventHandlerEngine();
+        engine.setPersistent(true);
+        engine.setPackagePaths(IdempotentEventListener.class.getName());
+        engine.setePersistenceInterface(store);
+        engine.setDuplicateFilterCapacity(1000);
+        IdempotentEventListener.reset();
+        IdempotentEventListener.release.countDown();
+        try
+        {
+            engine.initialize();
+
+            // the recovered event is in the filter once the engine is initialized, before it is dispatched again
+            long listenerFingerprint = EventFingerprintTable.hash((IdempotentEventListener.class.getSimpleName()
+                    + ".processEvent").getBytes(StandardCharsets.UTF_8));
+            Assert.assertTrue(engine.getDuplicateFilter(IdempotentEvent.class).mightContain(EventFingerprintTable.combine(
+                    new BinaryEventCodec().fingerprint(new IdempotentEvent(1)), listenerFingerprint)));
+        }
+        finally
+        {
+            engine.destroy();
+            store.close();
+            File[] files = directory.listFiles();
+            if(files != null) {
+                for (File file : files)
+                {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.evengine.core;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.evengine.test.events.DummyEvent1;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+public class TestEventFingerprintTable
+{
+    /**
+     * A fingerprint of the first stripe whose home slot in a 16 slot table is home
+     */
+    private static long fingerprint(int home, int index)
+    {
+        return ((long)index << 8) | home;
+    }
+
+    @Test
+    public void testCounting()
+    {
+        EventFingerprintTable table = new EventFingerprintTable();
+        long fingerprint = 0x1234567890abcdefL;
+        table.add(fingerprint);
+        table.add(fingerprint);
+        Assert.assertTrue(table.contains(fingerprint));
+        Assert.assertEquals(1, table.size());
+
+        table.remove(fingerprint);
+        Assert.assertTrue(table.contains(fingerprint));
+        table.remove(fingerprint);
+        Assert.assertFalse(table.contains(fingerprint));
+        Assert.assertEquals(0, table.size());
+
+        table.remove(fingerprint);
+        Assert.assertEquals(0, table.size());
+        table.add(fingerprint);
+        Assert.assertTrue(table.contains(fingerprint));
+    }
+
+    @Test
+    public void testRemoveAcrossWraparound()
+    {
+        EventFingerprintTable table = new EventFingerprintTable();
+        // three keys at home slot 15 wrap around to the slots 0 and 1, the key at home slot 0 probes to slot 2
+        long first = fingerprint(15, 1), second = fingerprint(15, 2), third = fingerprint(15, 3);
+        long wrapped = fingerprint(0, 1);
+        table.add(first);
+        table.add(second);
+        table.add(third);
+        table.add(wrapped);
+        table.add(wrapped);
+
+        table.remove(first);
+        Assert.assertFalse(table.contains(first));
+        Assert.assertTrue(table.contains(second));
+        Assert.assertTrue(table.contains(third));
+        Assert.assertTrue(table.contains(wrapped));
+        Assert.assertEquals(3, table.size());
+
+        table.remove(third);
+        Assert.assertTrue(table.contains(second));
+        Assert.assertTrue(table.contains(wrapped));
+        table.remove(second);
+        Assert.assertTrue(table.contains(wrapped));
+        Assert.assertEquals(1, table.size());
+
+        // the count moved along with the shifted key
+        table.remove(wrapped);
+        Assert.assertTrue(table.contains(wrapped));
+        table.remove(wrapped);
+        Assert.assertFalse(table.contains(wrapped));
+        Assert.assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testResize()
+    {
+        EventFingerprintTable table = new EventFingerprintTable();
+        int count = 1000;
+        for (int index = 1; index <= count; index++)
+        {
+            table.add(fingerprint(index & 15, index));
+            if(index % 2 == 0) {
+                table.add(fingerprint(index & 15, index));
+            }
+        }
+        Assert.assertEquals(count, table.size());
+        for (int index = 1; index <= count; index++)
+        {
+            table.remove(fingerprint(index & 15, index));
+        }
+        Assert.assertEquals(count / 2, table.size());
+        for (int index = 1; index <= count; index++)
+        {
+            Assert.assertEquals(index % 2 == 0, table.contains(fingerprint(index & 15, index)));
+            table.remove(fingerprint(index & 15, index));
+        }
+        Assert.assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testCodecFingerprint()
+    {
+        BinaryEventCodec codec = new BinaryEventCodec();
+        DummyEvent1 event = new DummyEvent1("event", 1);
+        Assert.assertEquals(EventFingerprintTable.hash(codec.encode(event)), codec.fingerprint(event));
+        Assert.assertEquals(codec.fingerprint(event), codec.fingerprint(new DummyEvent1("event", 1)));
+        Assert.assertFalse(codec.fingerprint(event) == codec.fingerprint(new DummyEvent1("event", 2)));
+        Assert.assertFalse(EventFingerprintTable.combine(0, 0) == 0);
+    }
+}
@@ -0,0 +1,251 @@
+package com.evengine.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.evengine.core.EventHandlerEngine.EventListenerObject;
+import com.evengine.core.EventHandlerEngine.RejectionPolicy;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+public class TestEventRingBuffer
+{
+    /**
+     * Records the events the ring consumer invokes, the first event optionally publishes more
+     * events to the same ring from the consumer thread
+     */
+    private static final class RecordingEngine extends EventHandlerEngine
+    {
+        private final List<Object> events = Collections.synchronizedList(new ArrayList<Object>());
+
+        private final List<CompletableFuture<Object>> republished = Collections.synchronizedList(
+                new ArrayList<CompletableFuture<Object>>());
+
+        private volatile long delayMs;
+
+        private volatile EventRingBuffer ring;
+
+        private volatile int republish;
+
+        @Override
+        Object invokeListener(EventListenerObject eventListenerObject, Object instance, Object event,
+                EventListenerSignature signature)
+        {
+            if(delayMs > 0) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            events.add(event);
+            if(ring != null && Integer.valueOf(0).equals(event))
+            {
+                for (int i = 1; i <= republish; i++)
+                {
+                    CompletableFuture<Object> future = new CompletableFuture<Object>();
+                    republished.add(future);
+                    ring.publish(null, null, i, getSignature(i), future);
+                }
+            }
+            return event;
+        }
+    }
+
+    private static EventListenerSignature getSignature(Object event)
+    {
+        return new EventListenerSignature(null, event, "RingListener", "processEvent",
+                EventHandlerEngine.STATUS_PENDING, false, new ArrayList<String>(), false);
+    }
+
+    private static CompletableFuture<Object> publish(EventRingBuffer ring, Object event)
+    {
+        CompletableFuture<Object> future = new CompletableFuture<Object>();
+        ring.publish(null, null, event, getSignature(event), future);
+        return future;
+    }
+
+    private static boolean isRejected(CompletableFuture<Object> future) throws Exception
+    {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            return false;
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            return true;
+        }
+    }
+
+    @Test
+    public void testWraparound() throws Exception
+    {
+        for (EventRingBuffer.WaitStrategy waitStrategy : EventRingBuffer.WaitStrategy.values())
+        {
+            final RecordingEngine engine = new RecordingEngine();
+            final EventRingBuffer ring = new EventRingBuffer(engine, "test-ring", 4, waitStrategy, RejectionPolicy.BLOCK);
+            final List<CompletableFuture<Object>> futures = Collections.synchronizedList(
+                    new ArrayList<CompletableFuture<Object>>());
+            Thread[] producers = new Thread[4];
+            for (int p = 0; p < producers.length; p++)
+            {
+                final int producer = p;
+                producers[p] = new Thread(new Runnable() {
+                    public void run()
+                    {
+                        for (int i = 0; i < 250; i++)
+                        {
+                            futures.add(publish(ring, producer * 1000 + i));
+                        }
+                    }
+                });
+                producers[p].start();
+            }
+            for (Thread producer : producers)
+            {
+                producer.join(10000);
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).get(10, TimeUnit.SECONDS);
+
+            Assert.assertEquals(1000, engine.events.size());
+            long deadline = System.currentTimeMillis() + 5000;
+            while(ring.size() > 0 && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(1);
+            }
+            Assert.assertEquals(0, ring.size());
+            int[] last = new int[]{-1, -1, -1, -1};
+            for (Object event : engine.events)
+            {
+                int number = (Integer)event;
+                Assert.assertEquals("Out of order with " + waitStrategy, last[number / 1000] + 1, number % 1000);
+                last[number / 1000] = number % 1000;
+            }
+            ring.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdownDrain() throws Exception
+    {
+        RecordingEngine engine = new RecordingEngine();
+        engine.delayMs = 20;
+        EventRingBuffer ring = new EventRingBuffer(engine, "test-ring", 4, EventRingBuffer.WaitStrategy.PARK,
+                RejectionPolicy.BLOCK);
+        List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>();
+        for (int i = 0; i < 4; i++)
+        {
+            futures.add(publish(ring, i));
+        }
+        ring.shutdown();
+        for (int i = 0; i < 4; i++)
+        {
+            Assert.assertEquals(i, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+
+        CompletableFuture<Object> future = publish(ring, 4);
+        Assert.assertTrue(future.isDone());
+        Assert.assertTrue(isRejected(future));
+        Assert.assertEquals(4, engine.events.size());
+    }
+
+    @Test
+    public void testShutdownWhileFull() throws Exception
+    {
+        final RecordingEngine engine = new RecordingEngine();
+        engine.delayMs = 50;
+        final EventRingBuffer ring = new EventRingBuffer(engine, "test-ring", 2, EventRingBuffer.WaitStrategy.PARK,
+                RejectionPolicy.BLOCK);
+        final List<CompletableFuture<Object>> futures = Collections.synchronizedList(
+                new ArrayList<CompletableFuture<Object>>());
+        Thread producer = new Thread(new Runnable() {
+            public void run()
+            {
+                for (int i = 0; i < 20; i++)
+                {
+                    futures.add(publish(ring, i));
+                }
+            }
+        });
+        producer.start();
+        Thread.sleep(100);
+        ring.shutdown();
+        producer.join(5000);
+        Assert.assertFalse(producer.isAlive());
+
+        int rejected = 0;
+        for (CompletableFuture<Object> future : futures)
+        {
+            if(isRejected(future)) {
+                rejected++;
+            }
+        }
+        Assert.assertTrue(rejected > 0);
+        Assert.assertEquals(20, rejected + engine.events.size());
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception
+    {
+        RecordingEngine engine = new RecordingEngine();
+        engine.delayMs = 100;
+        EventRingBuffer ring = new EventRingBuffer(engine, "test-ring", 2, EventRingBuffer.WaitStrategy.YIELD,
+                RejectionPolicy.DROP_NEWEST);
+        List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>();
+        for (int i = 0; i < 6; i++)
+        {
+            futures.add(publish(ring, i));
+        }
+        int rejected = 0;
+        for (CompletableFuture<Object> future : futures)
+        {
+            if(isRejected(future)) {
+                rejected++;
+            }
+        }
+        Assert.assertTrue(rejected > 0);
+        Assert.assertEquals(6, rejected + engine.events.size());
+        ring.shutdown();
+    }
+
+    @Test
+    public void testConsumerPublishToOwnFullRing() throws Exception
+    {
+        RecordingEngine engine = new RecordingEngine();
+        engine.setPersistent(false);
+        engine.setTimerTickMs(5);
+        engine.initialize();
+        EventRingBuffer ring = new EventRingBuffer(engine, "test-ring", 2, EventRingBuffer.WaitStrategy.PARK,
+                RejectionPolicy.BLOCK);
+        engine.republish = 8;
+        engine.ring = ring;
+        CompletableFuture<Object> future = publish(ring, 0);
+        Assert.assertEquals(0, future.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<Object> republished : new ArrayList<CompletableFuture<Object>>(engine.republished))
+        {
+            republished.get(5, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals(9, engine.events.size());
+        ring.shutdown();
+    }
+}
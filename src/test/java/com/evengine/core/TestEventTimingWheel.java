@@ -0,0 +1,150 @@
+package com.evengine.core;
+
+import java.util.Map;
+import java.util.TreeMap;
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+public class TestEventTimingWheel
+{
+    /**
+     * Long enough for the time taken by the test not to shift the deadlines, the wheels are
+     * turned by hand
+     */
+    private static final long TICK_MS = 60000;
+
+    private static final class Task implements Runnable
+    {
+        long ranAt = -1;
+        int runs;
+        long[] now;
+
+        Task(long[] now)
+        {
+            this.now = now;
+        }
+
+        public void run()
+        {
+            ranAt = now[0];
+            runs++;
+        }
+    }
+
+    private static void advance(EventTimingWheel wheel, long[] now, long ticks)
+    {
+        for (long i = 0; i < ticks; i++)
+        {
+            now[0]++;
+            wheel.advance();
+        }
+    }
+
+    /**
+     * The task is due at the delay, rounded up to the next tick as a little time has passed since the wheel started
+     */
+    private static void assertRan(long delay, Task task)
+    {
+        Assert.assertEquals("Runs of the task due at " + delay, 1, task.runs);
+        Assert.assertTrue("Task due at " + delay + " ran at " + task.ranAt, task.ranAt == delay || task.ranAt == delay + 1);
+    }
+
+    @Test
+    public void testCascading()
+    {
+        EventTimingWheel wheel = new EventTimingWheel(TICK_MS, false);
+        long[] now = new long[1];
+        long[] delays = {0, 1, 2, 63, 64, 65, 127, 4095, 4096, 4097, 200000, 262143, 262144, 262145, 1000000};
+        Map<Long, Task> tasks = new TreeMap<Long, Task>();
+        for (long delay : delays)
+        {
+            Task task = new Task(now);
+            wheel.schedule(task, delay * TICK_MS);
+            tasks.put(delay, task);
+        }
+        advance(wheel, now, 1000002);
+        for (Map.Entry<Long, Task> entry : tasks.entrySet())
+        {
+            assertRan(Math.max(1, entry.getKey()), entry.getValue());
+        }
+
+        // scheduled from an advanced tick, the wheel slots are no longer aligned with the delays, the
+        // deadline still counts from the start of the wheel as its ticks were not turned in real time
+        Task task = new Task(now);
+        long start = now[0];
+        wheel.schedule(task, (start + 300007) * TICK_MS);
+        advance(wheel, now, 300006);
+        Assert.assertEquals(0, task.runs);
+        advance(wheel, now, 2);
+        assertRan(start + 300007, task);
+    }
+
+    @Test
+    public void testCancel()
+    {
+        EventTimingWheel wheel = new EventTimingWheel(TICK_MS, false);
+        long[] now = new long[1];
+
+        // cancelled before the tick thread placed it into the wheel
+        Task unplaced = new Task(now);
+        EventTimingWheel.Timeout timeout = wheel.schedule(unplaced, 10 * TICK_MS);
+        Assert.assertTrue(timeout.cancel());
+        Assert.assertFalse(timeout.cancel());
+
+        Task placed = new Task(now);
+        EventTimingWheel.Timeout placedTimeout = wheel.schedule(placed, 5000 * TICK_MS);
+        Task neighbour = new Task(now);
+        wheel.schedule(neighbour, 5000 * TICK_MS);
+        advance(wheel, now, 1);
+        Assert.assertTrue(placedTimeout.cancel());
+
+        advance(wheel, now, 5002);
+        Assert.assertEquals(0, unplaced.runs);
+        Assert.assertEquals(0, placed.runs);
+        Assert.assertFalse(timeout.isExpired());
+        assertRan(5000, neighbour);
+
+        Task expired = new Task(now);
+        EventTimingWheel.Timeout expiredTimeout = wheel.schedule(expired, TICK_MS);
+        advance(wheel, now, 2);
+        Assert.assertTrue(expiredTimeout.isExpired());
+        Assert.assertFalse(expiredTimeout.cancel());
+        Assert.assertEquals(1, expired.runs);
+    }
+
+    @Test
+    public void testBeyondLastLevel()
+    {
+        EventTimingWheel wheel = new EventTimingWheel(TICK_MS, false);
+        long[] now = new long[1];
+        // the top wheel spans 2^24 ticks, longer delays go around it again
+        long delay = (1L << 24) + 100, twice = (2L << 24) + 7;
+        Task task = new Task(now), later = new Task(now);
+        wheel.schedule(task, delay * TICK_MS);
+        wheel.schedule(later, twice * TICK_MS);
+        advance(wheel, now, delay - 1);
+        Assert.assertEquals(0, task.runs);
+        advance(wheel, now, 2);
+        assertRan(delay, task);
+        advance(wheel, now, twice - delay - 2);
+        Assert.assertEquals(0, later.runs);
+        advance(wheel, now, 2);
+        assertRan(twice, later);
+    }
+}
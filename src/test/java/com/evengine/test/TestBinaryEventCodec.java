@@ -0,0 +1,170 @@
+package com.evengine.test;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.evengine.core.BinaryEventCodec;
+import com.evengine.test.events.DummyEvent1;
+import com.evengine.test.events.UnencodableEvent;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+public class TestBinaryEventCodec
+{
+    @SuppressWarnings("serial")
+    public static class BaseEvent implements Serializable
+    {
+        private long id;
+        private transient String ignored = "ignored";
+    }
+
+    @SuppressWarnings("serial")
+    public static class AllTypesEvent extends BaseEvent
+    {
+        private boolean flag;
+        private char letter;
+        private double amount;
+        private Integer count;
+        private Long missing;
+        private String name;
+        private Date date;
+        private TimeUnit unit;
+        private byte[] payload;
+        private int[] numbers;
+    }
+
+    @SuppressWarnings("serial")
+    public static class CollectionsEvent implements Serializable
+    {
+        private HashMap<String, Set<Integer>> values;
+        private Object any;
+    }
+
+    @SuppressWarnings("serial")
+    public static class OptionalEvent implements Serializable
+    {
+        private Optional<String> value;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        BinaryEventCodec codec = new BinaryEventCodec();
+
+        DummyEvent1 dummyEvent1 = new DummyEvent1("event", 1);
+        byte[] data = codec.encode(dummyEvent1);
+        Assert.assertEquals(dummyEvent1.toString(), codec.decode(data, DummyEvent1.class).toString());
+        Assert.assertTrue(Arrays.equals(data, codec.encode(new DummyEvent1("event", 1))));
+
+        AllTypesEvent event = new AllTypesEvent();
+        ((BaseEvent)event).id = 42;
+        event.flag = true;
+        event.letter = 'x';
+        event.amount = 1.5;
+        event.count = 7;
+        event.name = "name";
+        event.date = new Date();
+        event.unit = TimeUnit.SECONDS;
+        event.payload = new byte[]{1, 2, 3};
+        event.numbers = new int[]{4, 5};
+
+        AllTypesEvent decoded = (AllTypesEvent)codec.decode(codec.encode(event), AllTypesEvent.class);
+        Assert.assertEquals(42, ((BaseEvent)decoded).id);
+        Assert.assertEquals("ignored", ((BaseEvent)decoded).ignored);
+        Assert.assertTrue(decoded.flag);
+        Assert.assertEquals('x', decoded.letter);
+        Assert.assertEquals(1.5, decoded.amount);
+        Assert.assertEquals(Integer.valueOf(7), decoded.count);
+        Assert.assertNull(decoded.missing);
+        Assert.assertEquals("name", decoded.name);
+        Assert.assertEquals(event.date, decoded.date);
+        Assert.assertEquals(TimeUnit.SECONDS, decoded.unit);
+        Assert.assertTrue(Arrays.equals(event.payload, decoded.payload));
+        Assert.assertTrue(Arrays.equals(event.numbers, decoded.numbers));
+    }
+
+    @Test
+    public void testStableCollections() throws Exception
+    {
+        BinaryEventCodec codec = new BinaryEventCodec();
+
+        CollectionsEvent event = new CollectionsEvent();
+        event.values = new HashMap<String, Set<Integer>>();
+        CollectionsEvent other = new CollectionsEvent();
+        other.values = new HashMap<String, Set<Integer>>(1024);
+        for (int i = 0; i < 50; i++)
+        {
+            event.values.put("key" + i, new HashSet<Integer>(Arrays.asList(i, i * 1000, -i)));
+            other.values.put("key" + (49 - i), new HashSet<Integer>(Arrays.asList(-(49 - i), (49 - i) * 1000, 49 - i)));
+        }
+
+        byte[] data = codec.encode(event);
+        Assert.assertTrue(Arrays.equals(data, codec.encode(other)));
+        Assert.assertEquals(codec.fingerprint(event), codec.fingerprint(other));
+        Assert.assertEquals(event.values, ((CollectionsEvent)codec.decode(data, CollectionsEvent.class)).values);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSerializedClassRejected() throws Exception
+    {
+        BinaryEventCodec codec = new BinaryEventCodec();
+        CollectionsEvent event = new CollectionsEvent();
+        event.any = new URI("http://localhost");
+        codec.decode(codec.encode(event), CollectionsEvent.class);
+    }
+
+    @Test
+    public void testCheckSchema() throws Exception
+    {
+        BinaryEventCodec codec = new BinaryEventCodec();
+        codec.checkSchema(DummyEvent1.class);
+        codec.checkSchema(CollectionsEvent.class);
+        try
+        {
+            codec.checkSchema(UnencodableEvent.class);
+            Assert.fail("An event without a nullary constructor cannot be encoded");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+        try
+        {
+            codec.checkSchema(OptionalEvent.class);
+            Assert.fail("A field of a final type that is not Serializable cannot be encoded");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSchemaMismatch() throws Exception
+    {
+        BinaryEventCodec codec = new BinaryEventCodec();
+        codec.decode(codec.encode(new DummyEvent1("event", 1)), AllTypesEvent.class);
+    }
+}
@@ -0,0 +1,389 @@
+package com.evengine.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.evengine.core.EventHandlerEngine;
+import com.evengine.core.EventHandlerEngine.ExecutorMode;
+import com.evengine.core.EventListenerSignature;
+import com.evengine.store.EventPersistentWALImpl;
+import com.evengine.test.events.DummyEvent1;
+import com.evengine.test.events.ForkEvent;
+import com.evengine.test.events.LeasedEvent;
+import com.evengine.test.listener.ForkEventListener;
+import com.evengine.test.listener.LeasedEventListener;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+public class TestEventPersistentWAL
+{
+    private File directory;
+
+    @Before
+    public void setup() throws Exception
+    {
+        directory = Files.createTempDirectory("evengine-wal").toFile();
+    }
+
+    @After
+    public void cleanup()
+    {
+        File[] files = directory.listFiles();
+        if(files != null) {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static EventListenerSignature getSignature(String id, int number)
+    {
+        return new EventListenerSignature(id, new DummyEvent1("event", number), "DummyEventListener",
+                "processEvent", EventHandlerEngine.STATUS_PENDING, false, new ArrayList<String>(), false);
+    }
+
+    @Test
+    public void testReplay() throws Exception
+    {
+        EventPersistentWALImpl store = new EventPersistentWALImpl(directory.getPath());
+        EventListenerSignature pending = getSignature("1", 1);
+        EventListenerSignature done = getSignature("2", 2);
+        EventListenerSignature removed = getSignature("3", 3);
+        store.storeEvent(pending);
+        store.storeEvent(done);
+        store.storeEvent(removed);
+
+        done.setStatus(EventHandlerEngine.STATUS_SUCCESS);
+        done.setProcessedDate(new Date());
+        store.storeEvent(done);
+        store.removeEvent(removed);
+        store.close();
+
+        store = new EventPersistentWALImpl(directory.getPath());
+        List<EventListenerSignature> events = store.getEvents(DummyEvent1.class, new Date(), false, null, 0, 100);
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals("1", events.get(0).getId());
+        Assert.assertEquals(new DummyEvent1("event", 1).toString(), events.get(0).getEvent().toString());
+
+        EventListenerSignature duplicate = new EventListenerSignature(null, events.get(0).getEvent(), "DummyEventListener",
+                "processEvent", EventHandlerEngine.STATUS_PENDING, false, new ArrayList<String>(), false);
+        Assert.assertTrue(store.findDuplicateEvents(duplicate, 0));
+        Assert.assertFalse(store.findDuplicateEvents(getSignature(null, 1), 0));
+        store.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception
+    {
+        EventPersistentWALImpl store = new EventPersistentWALImpl(directory.getPath(), 8192);
+        List<EventListenerSignature> done = new ArrayList<EventListenerSignature>();
+        for (int i = 0; i < 1000; i++)
+        {
+            EventListenerSignature signature = getSignature("id" + i, i);
+            store.storeEvent(signature);
+            if(i % 100 != 0)
+            {
+                signature.setStatus(EventHandlerEngine.STATUS_SUCCESS);
+                done.add(signature);
+            }
+        }
+        store.updateStatuses(done);
+        for (int i = 0; i < 1000; i++)
+        {
+            store.storeEvent(getSignature("more" + i, i));
+            store.removeEvent(getSignature("more" + i, i));
+        }
+        Assert.assertEquals(10, store.size());
+        Assert.assertTrue(store.getSegmentCount() <= 2);
+        store.close();
+
+        store = new EventPersistentWALImpl(directory.getPath(), 8192);
+        Assert.assertEquals(10, store.getEventsCount(DummyEvent1.class, new Date(), false, null, 0));
+        store.close();
+    }
+
+    @Test
+    public void testClaim() throws Exception
+    {
+        EventPersistentWALImpl store = new EventPersistentWALImpl(directory.getPath());
+        EventListenerSignature leased = getSignature("1", 1);
+        leased.setLeaseExpiry(new Date(System.currentTimeMillis() + 60000));
+        store.storeEvent(leased);
+        store.storeEvent(getSignature("2", 2));
+        store.storeEvent(getSignature("3", 3));
+        EventListenerSignature expired = getSignature("4", 4);
+        expired.setLocked(true);
+        expired.setLeaseExpiry(new Date(System.currentTimeMillis() - 1000));
+        store.storeEvent(expired);
+
+        List<EventListenerSignature> claimed = store.claimEvents(DummyEvent1.class, new Date(), false, "instance1", 0, 100, 60000);
+        Assert.assertEquals(3, claimed.size());
+        Assert.assertTrue(claimed.get(0).isLocked());
+        Assert.assertEquals(0, store.claimEvents(DummyEvent1.class, new Date(), false, "instance2", 0, 100, 60000).size());
+        Assert.assertEquals(1, store.getEventsCount(DummyEvent1.class, new Date(), false, null, 0));
+        store.close();
+
+        store = new EventPersistentWALImpl(directory.getPath());
+        Assert.assertEquals(4, store.claimEvents(DummyEvent1.class, new Date(), false, "instance3", 0, 100, 60000).size());
+        store.close();
+    }
+
+    @Test
+    public void testClaimSpilled() throws Exception
+    {
+        EventPersistentWALImpl store = new EventPersistentWALImpl(directory.getPath());
+        for (int i = 1; i <= 3; i++)
+        {
+            EventListenerSignature spilled = getSignature(String.valueOf(i), i);
+            spilled.setStatus(EventHandlerEngine.STATUS_SPILLED);
+            store.storeEvent(spilled);
+        }
+        store.storeEvent(getSignature("4", 4));
+
+        List<EventListenerSignature> claimed = store.claimEventsByStatus(DummyEvent1.class, EventHandlerEngine.STATUS_SPILLED,
+                "instance1", 2, 60000);
+        Assert.assertEquals(2, claimed.size());
+        Assert.assertTrue(claimed.get(0).isLocked());
+        claimed = store.claimEventsByStatus(DummyEvent1.class, EventHandlerEngine.STATUS_SPILLED, "instance2", 100, 60000);
+        Assert.assertEquals(1, claimed.size());
+        Assert.assertEquals("3", claimed.get(0).getId());
+        Assert.assertEquals(0, store.claimEventsByStatus(DummyEvent1.class, EventHandlerEngine.STATUS_SPILLED,
+                "instance3", 100, 60000).size());
+        Assert.assertEquals(0, store.getEventsByStatus(DummyEvent1.class, EventHandlerEngine.STATUS_SPILLED, 100).size());
+
+        List<EventListenerSignature> expired = store.claimEventsByStatus(DummyEvent1.class, EventHandlerEngine.STATUS_PENDING,
+                "instance1", 100, -1000);
+        Assert.assertEquals(1, expired.size());
+        Assert.assertEquals(1, store.claimEventsByStatus(DummyEvent1.class, EventHandlerEngine.STATUS_PENDING,
+                "instance2", 100, 60000).size());
+        store.close();
+    }
+
+    @Test
+    public void testReleaseLeases() throws Exception
+    {
+        EventPersistentWALImpl store = new EventPersistentWALImpl(directory.getPath());
+        EventListenerSignature leased = getSignature("1", 1);
+        leased.setLeaseExpiry(new Date(System.currentTimeMillis() + 60000));
+        leased.setLeaseOwner("instance1");
+        store.storeEvent(leased);
+        store.storeEvent(getSignature("2", 2));
+
+        Assert.assertEquals(1, store.claimEvents(DummyEvent1.class, new Date(), false, "instance2", 0, 100, 60000).size());
+        Assert.assertEquals(0, store.releaseLeases("instance3"));
+        Assert.assertEquals(0, store.claimEvents(DummyEvent1.class, new Date(), false, "instance3", 0, 100, 60000).size());
+        Assert.assertEquals(1, store.releaseLeases("instance1"));
+        List<EventListenerSignature> claimed = store.claimEvents(DummyEvent1.class, new Date(), false, "instance3", 0, 100, 60000);
+        Assert.assertEquals(1, claimed.size());
+        Assert.assertEquals("1", claimed.get(0).getId());
+        Assert.assertEquals("instance3", claimed.get(0).getLeaseOwner());
+        store.close();
+    }
+
+    @Test
+    public void testExpire() throws Exception
+    {
+        EventPersistentWALImpl store = new EventPersistentWALImpl(directory.getPath());
+        store.storeEvent(new EventListenerSignature("1", new DummyEvent1("event", 1), "DummyEventListener",
+                "processEvent", EventHandlerEngine.STATUS_PENDING, false, new ArrayList<String>(), true));
+        store.storeEvent(getSignature("2", 2));
+        EventListenerSignature locked = new EventListenerSignature("3", new DummyEvent1("event", 3), "DummyEventListener",
+                "processEvent", EventHandlerEngine.STATUS_PENDING, false, new ArrayList<String>(), true);
+        locked.setLocked(true);
+        store.storeEvent(locked);
+        Thread.sleep(1100);
+
+        Map<String, Integer> eventExpireMap = new HashMap<String, Integer>();
+        eventExpireMap.put(DummyEvent1.class.getCanonicalName(), 1);
+        Assert.assertEquals(1, store.expirePendingEvents(eventExpireMap));
+        Assert.assertEquals(0, store.expirePendingEvents(eventExpireMap));
+        Assert.assertEquals(2, store.size());
+        store.close();
+    }
+
+    @Test
+    public void testEngineWithPersistence() throws Exception
+    {
+        EventPersistentWALImpl store = new EventPersistentWALImpl(directory.getPath());
+        store.storeEvent(getSignature("existing", 1));
+
+        EventHandlerEngine engine = new EventHandlerEngine();
+        engine.setPersistent(true);
+        engine.setPackagePaths("com.evengine.test.listener.*");
+        engine.setePersistenceInterface(store);
+        engine.setPersistenceBatchDelayMs(10);
+        engine.initialize();
+
+        List<Object> results = engine.pushAndGetResults(new DummyEvent1("event", 2));
+        Assert.assertEquals(results.size(), 3);
+
+        engine.destroy();
+
+        Assert.assertEquals(0, store.getEventsCount(DummyEvent1.class, new Date(), false, null, 0));
+        store.close();
+    }
+
+    @Test
+    public void testRestartRecoversOwnLeases() throws Exception
+    {
+        EventPersistentWALImpl store = new EventPersistentWALImpl(directory.getPath());
+        EventListenerSignature leased = new EventListenerSignature("leased", new LeasedEvent(1),
+                LeasedEventListener.class.getSimpleName(), "processEvent", EventHandlerEngine.STATUS_PENDING,
+                false, new ArrayList<String>(), false);
+        leased.setLeaseExpiry(new Date(System.currentTimeMillis() + 60000));
+        leased.setLeaseOwner("node1");
+        store.storeEvent(leased);
+
+        EventHandlerEngine engine = new EventHandlerEngine();
+        engine.setPersistent(true);
+        engine.setPackagePaths(LeasedEventListener.class.getName());
+        engine.setePersistenceInterface(store);
+        engine.setInstanceId("node1");
+        LeasedEventListener.processed.clear();
+        engine.initialize();
+        Thread.sleep(1000);
+
+        Assert.assertEquals(1, LeasedEventListener.processed.size());
+        Assert.assertEquals(1, LeasedEventListener.processed.get(1).get());
+
+        engine.destroy();
+        store.close();
+    }
+
+    @Test
+    public void testLeaseRenewedWhileQueued() throws Exception
+    {
+        EventPersistentWALImpl store = new EventPersistentWALImpl(directory.getPath());
+
+        EventHandlerEngine engine = new EventHandlerEngine();
+        engine.setPersistent(true);
+        engine.setPackagePaths(LeasedEventListener.class.getName());
+        engine.setePersistenceInterface(store);
+        engine.setPoolSize(1);
+        engine.setEventLeaseTimeMs(300);
+        engine.setMinPollIntervalMs(50);
+        engine.setMaxPollIntervalMs(100);
+        LeasedEventListener.processed.clear();
+        engine.initialize();
+
+        for (int number = 0; number < 8; number++)
+        {
+            engine.push(new LeasedEvent(number));
+        }
+        Thread.sleep(8 * 150 + 1000);
+
+        Assert.assertEquals(8, LeasedEventListener.processed.size());
+        for (AtomicInteger count : LeasedEventListener.processed.values())
+        {
+            Assert.assertEquals(1, count.get());
+        }
+
+        engine.destroy();
+        store.close();
+    }
+
+    @Test
+    public void testForkJoinStoreOffWorkers() throws Exception
+    {
+        final AtomicInteger claimsOnWorkers = new AtomicInteger();
+        final AtomicInteger stalledWrites = new AtomicInteger();
+        EventPersistentWALImpl store = new EventPersistentWALImpl(directory.getPath()) {
+            private boolean blocked;
+
+            public void storeEvent(EventListenerSignature signature)
+            {
+                // the first status write on a worker waits for another callback to run meanwhile
+                if(Thread.currentThread() instanceof ForkJoinWorkerThread && signature.getEvent() instanceof ForkEvent
+                        && EventHandlerEngine.STATUS_SUCCESS.equals(signature.getStatus()) && block()) {
+                    long deadline = System.currentTimeMillis() + 5000;
+                    int processed = ForkEventListener.processed.get();
+                    while(ForkEventListener.processed.get() == processed && System.currentTimeMillis() < deadline) {
+                        Thread.yield();
+                    }
+                    if(ForkEventListener.processed.get() == processed) {
+                        stalledWrites.incrementAndGet();
+                    }
+                }
+                super.storeEvent(signature);
+            }
+
+            private synchronized boolean block()
+            {
+                boolean first = !blocked;
+                blocked = true;
+                return first;
+            }
+
+            @SuppressWarnings("rawtypes")
+            public List<EventListenerSignature> claimEvents(Class eventClass, Date startDate,
+                    boolean isDistributed, String instanceId, int expireTime, int limit, long leaseTimeMs)
+            {
+                if(Thread.currentThread() instanceof ForkJoinWorkerThread) {
+                    claimsOnWorkers.incrementAndGet();
+                }
+                return super.claimEvents(eventClass, startDate, isDistributed, instanceId, expireTime, limit, leaseTimeMs);
+            }
+        };
+        for (int number = 0; number < 12; number++)
+        {
+            store.storeEvent(new EventListenerSignature("recovered" + number, new ForkEvent(0), "ForkEventListener",
+                    "processEvent", EventHandlerEngine.STATUS_PENDING, false, new ArrayList<String>(), false));
+        }
+
+        EventHandlerEngine engine = new EventHandlerEngine();
+        engine.setPersistent(true);
+        engine.setPackagePaths(ForkEventListener.class.getName());
+        engine.setePersistenceInterface(store);
+        engine.setExecutorMode(ExecutorMode.FORK_JOIN);
+        engine.setPoolSize(1);
+        engine.setPersistenceBatchDelayMs(0);
+        engine.setRecoveryBatchSize(5);
+        engine.setMinPollIntervalMs(50);
+        engine.setMaxPollIntervalMs(100);
+        ForkEventListener.reset(engine);
+        engine.initialize();
+
+        for (int number = 0; number < 4; number++)
+        {
+            engine.push(new ForkEvent(3));
+        }
+        long deadline = System.currentTimeMillis() + 30000;
+        while(ForkEventListener.processed.get() < 12 + 4 * 4 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(12 + 4 * 4, ForkEventListener.processed.get());
+        Assert.assertEquals(0, stalledWrites.get());
+        Assert.assertEquals(0, claimsOnWorkers.get());
+
+        engine.destroy();
+        store.close();
+    }
+}
@@ -0,0 +1,117 @@
+package com.evengine.test;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import com.evengine.core.EventHandlerEngine;
+import com.evengine.test.events.ExpiringEvent;
+import com.evengine.test.events.IdempotentEvent;
+import com.evengine.test.events.UnencodableEvent;
+import com.evengine.test.listener.IdempotentEventListener;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+public class TestIdempotentEvents
+{
+    private EventHandlerEngine engine;
+
+    @After
+    public void cleanup()
+    {
+        if(engine != null) {
+            engine.destroy();
+        }
+    }
+
+    private static void awaitStarted(int count) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(IdempotentEventListener.started.get() < count && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(count, IdempotentEventListener.started.get());
+    }
+
+    private void initEngine(int poolSize)
+    {
+        engine = new EventHandlerEngine();
+        engine.setPersistent(false);
+        engine.setPackagePaths(IdempotentEventListener.class.getName());
+        engine.setPoolSize(poolSize);
+        IdempotentEventListener.reset();
+        engine.initialize();
+    }
+
+    @Test
+    public void testPendingDuplicates() throws Exception
+    {
+        initEngine(0);
+
+        engine.push(new IdempotentEvent(1));
+        awaitStarted(1);
+        engine.push(new IdempotentEvent(1));
+        engine.push(new IdempotentEvent(2));
+        awaitStarted(2);
+
+        // events the codec cannot encode are not checked for duplicates, even if their hashCode collides
+        engine.push(new UnencodableEvent(1));
+        awaitStarted(3);
+        engine.push(new UnencodableEvent(2));
+        awaitStarted(4);
+
+        IdempotentEventListener.release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while(IdempotentEventListener.processed.get() < 4 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+        Thread.sleep(200);
+        Assert.assertEquals(4, IdempotentEventListener.processed.get());
+        Assert.assertEquals(4, IdempotentEventListener.started.get());
+    }
+
+    @Test
+    public void testExpiredPending() throws Exception
+    {
+        // a single worker, the expiring event waits behind the held one past its expire time
+        initEngine(1);
+
+        engine.push(new ExpiringEvent(0));
+        awaitStarted(1);
+        engine.push(new ExpiringEvent(1));
+        engine.push(new ExpiringEvent(1));
+        Thread.sleep(1500);
+
+        // the expired event no longer counts as pending
+        engine.push(new ExpiringEvent(1));
+        Thread.sleep(200);
+        IdempotentEventListener.release.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(IdempotentEventListener.expiring.size() < 2 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+        Thread.sleep(200);
+        // the callback of the expired event is skipped
+        Assert.assertEquals(Arrays.asList(0, 1), IdempotentEventListener.expiring);
+    }
+}
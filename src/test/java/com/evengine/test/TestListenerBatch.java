@@ -0,0 +1,221 @@
+package com.evengine.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.evengine.core.EventHandlerEngine;
+import com.evengine.core.EventHandlerEngine.ExecutorMode;
+import com.evengine.store.EventPersistentWALImpl;
+import com.evengine.test.events.BatchEvent;
+import com.evengine.test.events.SequencedBatchEvent;
+import com.evengine.test.listener.BatchEventListener;
+import com.evengine.test.listener.RejectedBatchEventListener;
+import com.evengine.test.listener.SequencedBatchEventListener;
+import com.evengine.test.listener.SetBatchEventListener;
+import com.evengine.test.listener.TimedBatchEventListener;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+public class TestListenerBatch
+{
+    private EventHandlerEngine engine;
+
+    private EventPersistentWALImpl store;
+
+    private File directory;
+
+    private EventHandlerEngine getEngine(Class<?> listenerClass)
+    {
+        engine = new EventHandlerEngine();
+        engine.setPersistent(false);
+        engine.setPackagePaths(listenerClass.getName());
+        return engine;
+    }
+
+    @After
+    public void cleanup() throws Exception
+    {
+        if(engine != null) {
+            engine.destroy();
+        }
+        if(store != null) {
+            store.close();
+        }
+        if(directory != null) {
+            File[] files = directory.listFiles();
+            if(files != null) {
+                for (File file : files)
+                {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    private static void await(AtomicInteger counter, int count) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + 30000;
+        while(counter.get() < count && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(count, counter.get());
+    }
+
+    @Test
+    public void testBatchSizeAndDelay() throws Exception
+    {
+        BatchEventListener.reset();
+        getEngine(BatchEventListener.class).initialize();
+        for (int number = 0; number < 25; number++)
+        {
+            engine.push(new BatchEvent(number, false));
+        }
+        Thread.sleep(100);
+        Assert.assertEquals(20, BatchEventListener.processed.get());
+
+        await(BatchEventListener.processed, 25);
+        List<Integer> batches = new ArrayList<Integer>(BatchEventListener.batches);
+        Collections.sort(batches);
+        Assert.assertEquals("[5, 10, 10]", batches.toString());
+    }
+
+    @Test
+    public void testBatchFailure() throws Exception
+    {
+        directory = Files.createTempDirectory("evengine-wal").toFile();
+        store = new EventPersistentWALImpl(directory.getPath());
+        BatchEventListener.reset();
+        getEngine(BatchEventListener.class);
+        engine.setPersistent(true);
+        engine.setePersistenceInterface(store);
+        engine.setEventLeaseTimeMs(300);
+        engine.setMinPollIntervalMs(50);
+        engine.setMaxPollIntervalMs(100);
+        engine.initialize();
+        for (int number = 0; number < 20; number++)
+        {
+            engine.push(new BatchEvent(number, number == 9));
+        }
+        await(BatchEventListener.processed, 20);
+        Thread.sleep(1000);
+
+        Assert.assertEquals(20, BatchEventListener.processed.get());
+        Assert.assertEquals("[10, 10]", BatchEventListener.batches.toString());
+        Assert.assertEquals(0, store.getEventsByStatus(BatchEvent.class, EventHandlerEngine.STATUS_PENDING, 100).size());
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testBatchRejected() throws Exception
+    {
+        getEngine(RejectedBatchEventListener.class).initialize();
+        RejectedBatchEventListener.processed.set(0);
+        List<Future> futures = new ArrayList<Future>();
+        for (int number = 0; number < 5; number++)
+        {
+            futures.addAll(engine.pushAndGetFutures(new BatchEvent(number, false)));
+        }
+        Assert.assertEquals(5, futures.size());
+        int rejected = 0;
+        for (Future future : futures)
+        {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+                rejected++;
+            }
+        }
+        Assert.assertTrue(rejected > 0);
+        Assert.assertEquals(5, rejected + RejectedBatchEventListener.processed.get());
+    }
+
+    @Test
+    public void testTimedBatchNotRunOnScheduler() throws Exception
+    {
+        TimedBatchEventListener.reset();
+        getEngine(TimedBatchEventListener.class).initialize();
+        for (int number = 0; number < 6; number++)
+        {
+            engine.push(new BatchEvent(number, false));
+            Thread.sleep(60);
+        }
+        await(TimedBatchEventListener.processed, 6);
+        Assert.assertEquals(1, TimedBatchEventListener.threads.size());
+    }
+
+    @Test
+    public void testSetCallbackNotRegistered() throws Exception
+    {
+        getEngine(SetBatchEventListener.class).initialize();
+        Assert.assertFalse(engine.unregisterListener(SetBatchEventListener.class));
+    }
+
+    @Test
+    public void testSequencedBatchOrder() throws Exception
+    {
+        checkSequencedBatchOrder(ExecutorMode.THREAD_POOL);
+    }
+
+    @Test
+    public void testSequencedBatchOnPartitionRings() throws Exception
+    {
+        checkSequencedBatchOrder(ExecutorMode.RING_BUFFER);
+        for (String thread : SequencedBatchEventListener.threads)
+        {
+            Assert.assertTrue(thread, thread.startsWith("evengine-ring-SequencedBatchEvent-"));
+        }
+    }
+
+    private void checkSequencedBatchOrder(ExecutorMode executorMode) throws Exception
+    {
+        SequencedBatchEventListener.reset();
+        getEngine(SequencedBatchEventListener.class);
+        engine.setExecutorMode(executorMode);
+        engine.setPartitionLanes(4);
+        engine.initialize();
+        for (int sequence = 0; sequence < 500; sequence++)
+        {
+            for (int key = 0; key < 8; key++)
+            {
+                engine.push(new SequencedBatchEvent("key" + key, sequence));
+            }
+        }
+        await(SequencedBatchEventListener.processed, 500 * 8);
+        Assert.assertEquals(8, SequencedBatchEventListener.sequences.size());
+        for (Map.Entry<String, List<Integer>> entry : SequencedBatchEventListener.sequences.entrySet())
+        {
+            for (int sequence = 0; sequence < 500; sequence++)
+            {
+                Assert.assertEquals("Out of order for " + entry.getKey(), sequence, entry.getValue().get(sequence).intValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.evengine.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.evengine.core.EventHandlerEngine;
+import com.evengine.core.EventHandlerEngine.ExecutorMode;
+import com.evengine.test.events.RuntimeEvent;
+import com.evengine.test.listener.RuntimeEventListener;
+import com.evengine.test.listener.SecondRuntimeEventListener;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+public class TestListenerRegistration
+{
+    private EventHandlerEngine engine;
+
+    private EventHandlerEngine getEngine(ExecutorMode executorMode, boolean hold)
+    {
+        engine = new EventHandlerEngine();
+        engine.setPersistent(false);
+        engine.setPackagePaths(RuntimeEventListener.class.getName());
+        engine.setExecutorMode(executorMode);
+        engine.setRingBufferSize(2);
+        RuntimeEventListener.reset(hold);
+        SecondRuntimeEventListener.processed.clear();
+        engine.initialize();
+        return engine;
+    }
+
+    @After
+    public void cleanup()
+    {
+        RuntimeEventListener.release.countDown();
+        if(engine != null) {
+            engine.destroy();
+        }
+    }
+
+    @Test
+    public void testRegisterAtRuntime() throws Exception
+    {
+        getEngine(ExecutorMode.THREAD_POOL, false);
+        Assert.assertEquals(1, engine.pushAndGetResults(new RuntimeEvent(1)).size());
+
+        engine.registerListener(SecondRuntimeEventListener.class);
+        Assert.assertEquals(2, engine.pushAndGetResults(new RuntimeEvent(2)).size());
+
+        Assert.assertTrue(engine.unregisterListener(SecondRuntimeEventListener.class));
+        Assert.assertFalse(engine.unregisterListener(SecondRuntimeEventListener.class));
+        Assert.assertEquals(1, engine.pushAndGetResults(new RuntimeEvent(3)).size());
+
+        Assert.assertEquals(Arrays.asList(1, 2, 3), RuntimeEventListener.processed);
+        Assert.assertEquals(Arrays.asList(2), SecondRuntimeEventListener.processed);
+    }
+
+    @Test
+    public void testUnregisterWaitsForDispatch() throws Exception
+    {
+        getEngine(ExecutorMode.RING_BUFFER, true);
+        engine.push(new RuntimeEvent(1));
+        long deadline = System.currentTimeMillis() + 5000;
+        while(RuntimeEventListener.processed.size() < 1 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+        // the ring of 2 slots fills up, the dispatch of the last event waits for a free slot
+        for (int number = 2; number <= 4; number++)
+        {
+            engine.push(new RuntimeEvent(number));
+        }
+        Thread.sleep(200);
+
+        Assert.assertTrue(engine.unregisterListener(RuntimeEventListener.class));
+        engine.push(new RuntimeEvent(5));
+        // longer than any fixed grace period, the waiting dispatch still holds the old listener snapshot
+        Thread.sleep(1500);
+        RuntimeEventListener.release.countDown();
+
+        deadline = System.currentTimeMillis() + 5000;
+        while(RuntimeEventListener.processed.size() < 4 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+        Thread.sleep(200);
+        // the events 2 to 4 are dispatched concurrently, in any order
+        List<Integer> processed = new ArrayList<Integer>(RuntimeEventListener.processed);
+        Collections.sort(processed);
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 4), processed);
+    }
+}
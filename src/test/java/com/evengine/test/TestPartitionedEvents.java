@@ -0,0 +1,140 @@
+package com.evengine.test;
+
+import java.util.List;
+import java.util.Map;
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.evengine.core.EventHandlerEngine;
+import com.evengine.core.EventHandlerEngine.ExecutorMode;
+import com.evengine.core.EventHandlerEngine.RejectionPolicy;
+import com.evengine.test.events.PartitionedEvent;
+import com.evengine.test.listener.PartitionedEventListener;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+public class TestPartitionedEvents
+{
+    private static final int KEYS = 8;
+
+    private EventHandlerEngine engine;
+
+    private EventHandlerEngine getEngine(ExecutorMode executorMode, int queueCapacity, RejectionPolicy rejectionPolicy)
+    {
+        engine = new EventHandlerEngine();
+        engine.setPersistent(false);
+        engine.setPackagePaths(PartitionedEventListener.class.getName());
+        engine.setExecutorMode(executorMode);
+        engine.setPartitionLanes(4);
+        engine.setQueueCapacity(queueCapacity);
+        engine.setRejectionPolicy(rejectionPolicy);
+        PartitionedEventListener.reset(engine);
+        engine.initialize();
+        return engine;
+    }
+
+    @After
+    public void cleanup()
+    {
+        if(engine != null) {
+            engine.destroy();
+        }
+    }
+
+    private void pushAll(int perKey)
+    {
+        for (int sequence = 0; sequence < perKey; sequence++)
+        {
+            for (int key = 0; key < KEYS; key++)
+            {
+                engine.push(new PartitionedEvent("key" + key, sequence, 0));
+            }
+        }
+    }
+
+    private static void awaitProcessed(int count) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + 30000;
+        while(PartitionedEventListener.processed.get() < count && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(count, PartitionedEventListener.processed.get());
+    }
+
+    private static void assertOrdered(int perKey, boolean singleThread)
+    {
+        Assert.assertEquals(KEYS, PartitionedEventListener.sequences.size());
+        for (Map.Entry<String, List<Integer>> entry : PartitionedEventListener.sequences.entrySet())
+        {
+            List<Integer> sequences = entry.getValue();
+            Assert.assertEquals(perKey, sequences.size());
+            for (int sequence = 0; sequence < perKey; sequence++)
+            {
+                Assert.assertEquals("Out of order for " + entry.getKey(), sequence, sequences.get(sequence).intValue());
+            }
+            if(singleThread) {
+                Assert.assertEquals(1, PartitionedEventListener.threads.get(entry.getKey()).size());
+            }
+        }
+    }
+
+    @Test
+    public void testLaneOrder() throws Exception
+    {
+        getEngine(ExecutorMode.THREAD_POOL, 0, RejectionPolicy.CALLER_RUNS);
+        pushAll(500);
+        awaitProcessed(500 * KEYS);
+        assertOrdered(500, true);
+    }
+
+    @Test
+    public void testLaneOrderWithFullQueue() throws Exception
+    {
+        for (RejectionPolicy rejectionPolicy : new RejectionPolicy[]{RejectionPolicy.CALLER_RUNS, RejectionPolicy.BLOCK})
+        {
+            getEngine(ExecutorMode.THREAD_POOL, 2, rejectionPolicy);
+            pushAll(500);
+            awaitProcessed(500 * KEYS);
+            assertOrdered(500, true);
+            engine.destroy();
+            engine = null;
+        }
+    }
+
+    @Test
+    public void testRingLaneOrder() throws Exception
+    {
+        getEngine(ExecutorMode.RING_BUFFER, 0, RejectionPolicy.CALLER_RUNS);
+        pushAll(500);
+        awaitProcessed(500 * KEYS);
+        assertOrdered(500, true);
+    }
+
+    @Test
+    public void testPushFromOwnLane() throws Exception
+    {
+        getEngine(ExecutorMode.THREAD_POOL, 1, RejectionPolicy.BLOCK);
+        for (int key = 0; key < KEYS; key++)
+        {
+            engine.push(new PartitionedEvent("key" + key, 0, 3));
+        }
+        awaitProcessed(4 * KEYS);
+        assertOrdered(4, true);
+    }
+}
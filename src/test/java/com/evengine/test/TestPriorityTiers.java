@@ -0,0 +1,116 @@
+package com.evengine.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.evengine.core.EventHandlerEngine;
+import com.evengine.core.EventHandlerEngine.ExecutorMode;
+import com.evengine.core.EventHandlerEngine.RejectionPolicy;
+import com.evengine.test.events.PolicyEvent;
+import com.evengine.test.events.TierEvent;
+import com.evengine.test.listener.NextTierEventListener;
+import com.evengine.test.listener.PolicyEventListener;
+import com.evengine.test.listener.TierEventListener;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+public class TestPriorityTiers
+{
+    private EventHandlerEngine engine;
+
+    private EventHandlerEngine getEngine(ExecutorMode executorMode, String packagePaths)
+    {
+        engine = new EventHandlerEngine();
+        engine.setPersistent(false);
+        engine.setPackagePaths(packagePaths);
+        engine.setExecutorMode(executorMode);
+        NextTierEventListener.reset();
+        return engine;
+    }
+
+    @After
+    public void cleanup()
+    {
+        if(engine != null) {
+            engine.destroy();
+        }
+    }
+
+    @Test
+    public void testNextTierNotRunOnTimer() throws Exception
+    {
+        getEngine(ExecutorMode.THREAD_POOL, TierEventListener.class.getName() + ","
+                + NextTierEventListener.class.getName() + "," + PolicyEventListener.class.getName());
+        engine.setPoolSize(1);
+        engine.setQueueCapacity(1);
+        engine.setRejectionPolicy(RejectionPolicy.CALLER_RUNS);
+        engine.initialize();
+
+        // keeps every engine thread busy while the next tier of the tier event is due, the first
+        // two events take the listener thread and its queue and leave their engine thread free
+        for (int number = 0; number < 53; number++)
+        {
+            engine.push(new PolicyEvent(number));
+            if(number == 49) {
+                Thread.sleep(50);
+            }
+        }
+        engine.push(new TierEvent(0));
+        long deadline = System.currentTimeMillis() + 30000;
+        while(NextTierEventListener.processed.get() < 1 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(1, NextTierEventListener.processed.get());
+        Assert.assertFalse(NextTierEventListener.threads.contains("evengine-timer"));
+    }
+
+    @Test
+    public void testNextTierAfterShutdown() throws Exception
+    {
+        List<Thread> destroyers = new ArrayList<Thread>();
+        for (ExecutorMode executorMode : new ExecutorMode[]{ExecutorMode.THREAD_POOL, ExecutorMode.FORK_JOIN})
+        {
+            final EventHandlerEngine tierEngine = getEngine(executorMode, TierEventListener.class.getName() + ","
+                    + NextTierEventListener.class.getName());
+            engine = null;
+            tierEngine.initialize();
+
+            CompletableFuture<List<Object>> results = tierEngine.pushAsync(new TierEvent(0));
+            Thread destroyer = new Thread(new Runnable() {
+                public void run()
+                {
+                    tierEngine.destroy();
+                }
+            });
+            destroyer.start();
+            destroyers.add(destroyer);
+
+            results.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(0, NextTierEventListener.processed.get());
+        }
+        for (Thread destroyer : destroyers)
+        {
+            destroyer.join();
+        }
+    }
+}
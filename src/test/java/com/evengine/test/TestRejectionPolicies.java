@@ -0,0 +1,187 @@
+package com.evengine.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.evengine.core.EventHandlerEngine;
+import com.evengine.core.EventHandlerEngine.ExecutorMode;
+import com.evengine.core.EventHandlerEngine.RejectionPolicy;
+import com.evengine.store.EventPersistentWALImpl;
+import com.evengine.test.events.PolicyEvent;
+import com.evengine.test.listener.PolicyEventListener;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+public class TestRejectionPolicies
+{
+    private EventHandlerEngine engine;
+
+    private EventPersistentWALImpl store;
+
+    private File directory;
+
+    private EventHandlerEngine getEngine(RejectionPolicy rejectionPolicy)
+    {
+        engine = new EventHandlerEngine();
+        engine.setPersistent(false);
+        engine.setPackagePaths(PolicyEventListener.class.getName());
+        engine.setPoolSize(1);
+        engine.setQueueCapacity(1);
+        engine.setRejectionPolicy(rejectionPolicy);
+        PolicyEventListener.processed.clear();
+        return engine;
+    }
+
+    @After
+    public void cleanup() throws Exception
+    {
+        if(engine != null) {
+            engine.destroy();
+        }
+        if(store != null) {
+            store.close();
+        }
+        if(directory != null) {
+            File[] files = directory.listFiles();
+            if(files != null) {
+                for (File file : files)
+                {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * Push the events one after the other, the first one runs, the second one is queued
+     * and the rest find the queue full
+     * @return the numbers of the events rejected
+     */
+    @SuppressWarnings("rawtypes")
+    private List<Integer> pushAll(int count) throws Exception
+    {
+        List<Future> futures = new ArrayList<Future>();
+        for (int number = 0; number < count; number++)
+        {
+            futures.addAll(engine.pushAndGetFutures(new PolicyEvent(number)));
+        }
+        Assert.assertEquals(count, futures.size());
+        List<Integer> rejected = new ArrayList<Integer>();
+        for (int number = 0; number < count; number++)
+        {
+            try {
+                futures.get(number).get();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+                rejected.add(number);
+            }
+        }
+        return rejected;
+    }
+
+    private static List<Integer> awaitProcessed(int count) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + 30000;
+        while(PolicyEventListener.processed.size() < count && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+        Thread.sleep(500);
+        List<Integer> processed = new ArrayList<Integer>(PolicyEventListener.processed);
+        Collections.sort(processed);
+        return processed;
+    }
+
+    @Test
+    public void testBlock() throws Exception
+    {
+        getEngine(RejectionPolicy.BLOCK).initialize();
+        Assert.assertEquals(0, pushAll(5).size());
+        Assert.assertEquals("[0, 1, 2, 3, 4]", awaitProcessed(5).toString());
+    }
+
+    @Test
+    public void testCallerRuns() throws Exception
+    {
+        getEngine(RejectionPolicy.CALLER_RUNS).initialize();
+        Assert.assertEquals(0, pushAll(5).size());
+        Assert.assertEquals("[0, 1, 2, 3, 4]", awaitProcessed(5).toString());
+    }
+
+    @Test
+    public void testVirtualThreadFallback() throws Exception
+    {
+        boolean virtualThreads = true;
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            virtualThreads = false;
+        }
+        Assume.assumeTrue(!virtualThreads);
+
+        // without virtual threads the executors are bounded like the THREAD_POOL ones
+        getEngine(RejectionPolicy.DROP_NEWEST);
+        engine.setExecutorMode(ExecutorMode.VIRTUAL_THREAD);
+        engine.initialize();
+        Assert.assertEquals("[2, 3, 4]", pushAll(5).toString());
+        Assert.assertEquals("[0, 1]", awaitProcessed(2).toString());
+    }
+
+    @Test
+    public void testDropNewest() throws Exception
+    {
+        getEngine(RejectionPolicy.DROP_NEWEST).initialize();
+        Assert.assertEquals("[2, 3, 4]", pushAll(5).toString());
+        Assert.assertEquals("[0, 1]", awaitProcessed(2).toString());
+    }
+
+    @Test
+    public void testDropOldest() throws Exception
+    {
+        getEngine(RejectionPolicy.DROP_OLDEST).initialize();
+        Assert.assertEquals("[1, 2, 3]", pushAll(5).toString());
+        Assert.assertEquals("[0, 4]", awaitProcessed(2).toString());
+    }
+
+    @Test
+    public void testSpill() throws Exception
+    {
+        directory = Files.createTempDirectory("evengine-wal").toFile();
+        store = new EventPersistentWALImpl(directory.getPath());
+        getEngine(RejectionPolicy.SPILL);
+        engine.setPersistent(true);
+        engine.setePersistenceInterface(store);
+        engine.setMinPollIntervalMs(50);
+        engine.setMaxPollIntervalMs(100);
+        engine.initialize();
+        Assert.assertEquals(0, pushAll(5).size());
+        Assert.assertEquals("[0, 1, 2, 3, 4]", awaitProcessed(5).toString());
+        Assert.assertEquals(0, store.getEventsByStatus(PolicyEvent.class, EventHandlerEngine.STATUS_SPILLED, 100).size());
+    }
+}
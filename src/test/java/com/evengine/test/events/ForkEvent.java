@@ -0,0 +1,46 @@
+package com.evengine.test.events;
+
+import java.io.Serializable;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+@SuppressWarnings("serial")
+public class ForkEvent implements Serializable
+{
+    public ForkEvent() {}
+
+    /**
+     * @param hops the number of events the listener pushes on
+     */
+    public ForkEvent(Integer hops)
+    {
+        super();
+        this.hops = hops;
+    }
+
+    private Integer hops;
+
+    public Integer getHops()
+    {
+        return hops;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ForkEvent [hops=" + hops + "]";
+    }
+}
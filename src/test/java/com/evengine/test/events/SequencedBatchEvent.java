@@ -0,0 +1,60 @@
+package com.evengine.test.events;
+
+import java.io.Serializable;
+
+import com.evengine.core.EventHandlerEngine.EventType;
+import com.evengine.core.EventHandlerEngine.PartitionKey;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+@SuppressWarnings("serial")
+@EventType(sequenceListenerPriority=true)
+public class SequencedBatchEvent implements Serializable
+{
+    public SequencedBatchEvent() {}
+
+    /**
+     * @param key
+     * @param sequence
+     */
+    public SequencedBatchEvent(String key, int sequence)
+    {
+        super();
+        this.key = key;
+        this.sequence = sequence;
+    }
+
+    @PartitionKey
+    private String key;
+
+    private int sequence;
+
+    public String getKey()
+    {
+        return key;
+    }
+
+    public int getSequence()
+    {
+        return sequence;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SequencedBatchEvent [key=" + key + ", sequence=" + sequence + "]";
+    }
+}
@@ -0,0 +1,56 @@
+package com.evengine.test.events;
+
+import java.io.Serializable;
+
+import com.evengine.core.EventHandlerEngine.EventType;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * An idempotent event the codec cannot encode as it has no nullary constructor, all the
+ * events share the same hashCode
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@SuppressWarnings("serial")
+@EventType(idempotent=true)
+public class UnencodableEvent implements Serializable
+{
+    public UnencodableEvent(Integer number)
+    {
+        super();
+        this.number = number;
+    }
+
+    private Integer number;
+
+    public Integer getNumber()
+    {
+        return number;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 1;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "UnencodableEvent [number=" + number + "]";
+    }
+}
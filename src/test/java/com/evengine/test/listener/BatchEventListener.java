@@ -0,0 +1,57 @@
+package com.evengine.test.listener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.evengine.core.EventHandlerEngine.EventListener;
+import com.evengine.core.EventHandlerEngine.EventListenerCallBack;
+import com.evengine.test.events.BatchEvent;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * Records the size of each batch, fails the batch if any of its events asks for it
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@EventListener
+public class BatchEventListener
+{
+    public static final List<Integer> batches = Collections.synchronizedList(new ArrayList<Integer>());
+
+    public static final AtomicInteger processed = new AtomicInteger();
+
+    public static void reset()
+    {
+        batches.clear();
+        processed.set(0);
+    }
+
+    @EventListenerCallBack(batchSize=10, maxBatchDelayMs=200)
+    public void processEvents(List<BatchEvent> events)
+    {
+        batches.add(events.size());
+        processed.addAndGet(events.size());
+        for (BatchEvent event : events)
+        {
+            if(event.isFail()) {
+                throw new IllegalStateException("Batch failed for " + event);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.evengine.test.listener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.evengine.core.EventHandlerEngine.EventListener;
+import com.evengine.core.EventHandlerEngine.EventListenerCallBack;
+import com.evengine.test.events.ExpiringEvent;
+import com.evengine.test.events.IdempotentEvent;
+import com.evengine.test.events.UnencodableEvent;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * Holds the idempotent events pending until released
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@EventListener
+public class IdempotentEventListener
+{
+    public static final AtomicInteger started = new AtomicInteger();
+
+    public static final AtomicInteger processed = new AtomicInteger();
+
+    public static final List<Integer> expiring = Collections.synchronizedList(new ArrayList<Integer>());
+
+    public static volatile CountDownLatch release;
+
+    public static void reset()
+    {
+        started.set(0);
+        processed.set(0);
+        expiring.clear();
+        release = new CountDownLatch(1);
+    }
+
+    @EventListenerCallBack
+    public void processEvent(IdempotentEvent event) throws InterruptedException
+    {
+        hold();
+    }
+
+    @EventListenerCallBack
+    public void processUnencodableEvent(UnencodableEvent event) throws InterruptedException
+    {
+        hold();
+    }
+
+    @EventListenerCallBack
+    public void processExpiringEvent(ExpiringEvent event) throws InterruptedException
+    {
+        expiring.add(event.getNumber());
+        if(event.getNumber() == 0) {
+            hold();
+        }
+    }
+
+    private static void hold() throws InterruptedException
+    {
+        started.incrementAndGet();
+        release.await(30, TimeUnit.SECONDS);
+        processed.incrementAndGet();
+    }
+}
@@ -0,0 +1,46 @@
+package com.evengine.test.listener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.evengine.core.EventHandlerEngine.EventListener;
+import com.evengine.core.EventHandlerEngine.EventListenerCallBack;
+import com.evengine.test.events.LeasedEvent;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * A slow listener counting how often each event is processed, the events wait in the queue
+ * longer than the lease of the engine
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@EventListener
+public class LeasedEventListener
+{
+    public static final Map<Integer, AtomicInteger> processed = new ConcurrentHashMap<Integer, AtomicInteger>();
+
+    @EventListenerCallBack
+    public void processEvent(LeasedEvent event) throws InterruptedException
+    {
+        Thread.sleep(150);
+        if(!processed.containsKey(event.getNumber())) {
+            processed.put(event.getNumber(), new AtomicInteger());
+        }
+        processed.get(event.getNumber()).incrementAndGet();
+    }
+}
@@ -0,0 +1,50 @@
+package com.evengine.test.listener;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.evengine.core.EventHandlerEngine.EventListener;
+import com.evengine.core.EventHandlerEngine.EventListenerCallBack;
+import com.evengine.test.events.TierEvent;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * The second priority tier of the tier events, records the threads it runs on
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@EventListener
+public class NextTierEventListener
+{
+    public static final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    public static final AtomicInteger processed = new AtomicInteger();
+
+    public static void reset()
+    {
+        threads.clear();
+        processed.set(0);
+    }
+
+    @EventListenerCallBack(priority=1)
+    public void processEvent(TierEvent event)
+    {
+        threads.add(Thread.currentThread().getName());
+        processed.incrementAndGet();
+    }
+}
@@ -0,0 +1,72 @@
+package com.evengine.test.listener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.evengine.core.EventHandlerEngine;
+import com.evengine.core.EventHandlerEngine.EventListener;
+import com.evengine.core.EventHandlerEngine.EventListenerCallBack;
+import com.evengine.test.events.PartitionedEvent;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * Records the order and the threads the partitioned events of each key are processed in
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@EventListener
+public class PartitionedEventListener
+{
+    public static volatile EventHandlerEngine engine;
+
+    public static final Map<String, List<Integer>> sequences = new ConcurrentHashMap<String, List<Integer>>();
+
+    public static final Map<String, Set<String>> threads = new ConcurrentHashMap<String, Set<String>>();
+
+    public static final AtomicInteger processed = new AtomicInteger();
+
+    public static void reset(EventHandlerEngine eventEngine)
+    {
+        engine = eventEngine;
+        sequences.clear();
+        threads.clear();
+        processed.set(0);
+    }
+
+    @EventListenerCallBack
+    public void processEvent(PartitionedEvent event)
+    {
+        synchronized (sequences)
+        {
+            if(!sequences.containsKey(event.getKey())) {
+                sequences.put(event.getKey(), new ArrayList<Integer>());
+                threads.put(event.getKey(), new HashSet<String>());
+            }
+            sequences.get(event.getKey()).add(event.getSequence());
+            threads.get(event.getKey()).add(Thread.currentThread().getName());
+        }
+        if(event.getHops() > 0) {
+            engine.push(new PartitionedEvent(event.getKey(), event.getSequence() + 1, event.getHops() - 1));
+        }
+        processed.incrementAndGet();
+    }
+}
@@ -0,0 +1,43 @@
+package com.evengine.test.listener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.evengine.core.EventHandlerEngine.EventListener;
+import com.evengine.core.EventHandlerEngine.EventListenerCallBack;
+import com.evengine.test.events.PolicyEvent;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * A slow listener recording the events it processed, fills the executor queue so that
+ * the rejection policy applies
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@EventListener
+public class PolicyEventListener
+{
+    public static final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+
+    @EventListenerCallBack
+    public void processEvent(PolicyEvent event) throws InterruptedException
+    {
+        Thread.sleep(300);
+        processed.add(event.getNumber());
+    }
+}
@@ -0,0 +1,43 @@
+package com.evengine.test.listener;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.evengine.core.EventHandlerEngine.EventListener;
+import com.evengine.core.EventHandlerEngine.EventListenerCallBack;
+import com.evengine.core.EventHandlerEngine.RejectionPolicy;
+import com.evengine.test.events.BatchEvent;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * A slow batched listener with a single thread and a single queue slot, the batches that
+ * do not fit are dropped
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@EventListener(poolSize=1, queueCapacity=1, rejectionPolicy=RejectionPolicy.DROP_NEWEST)
+public class RejectedBatchEventListener
+{
+    public static final AtomicInteger processed = new AtomicInteger();
+
+    @EventListenerCallBack(batchSize=1)
+    public void processEvents(List<BatchEvent> events) throws InterruptedException
+    {
+        Thread.sleep(200);
+        processed.addAndGet(events.size());
+    }
+}
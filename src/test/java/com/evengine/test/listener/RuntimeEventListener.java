@@ -0,0 +1,53 @@
+package com.evengine.test.listener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.evengine.core.EventHandlerEngine.EventListener;
+import com.evengine.core.EventHandlerEngine.EventListenerCallBack;
+import com.evengine.core.EventHandlerEngine.RejectionPolicy;
+import com.evengine.test.events.RuntimeEvent;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * Records the events it processed, holds the callbacks until released
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@EventListener(rejectionPolicy=RejectionPolicy.BLOCK)
+public class RuntimeEventListener
+{
+    public static final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+
+    public static volatile CountDownLatch release = new CountDownLatch(0);
+
+    public static void reset(boolean hold)
+    {
+        processed.clear();
+        release = new CountDownLatch(hold ? 1 : 0);
+    }
+
+    @EventListenerCallBack
+    public void processEvent(RuntimeEvent event) throws InterruptedException
+    {
+        processed.add(event.getNumber());
+        release.await(30, TimeUnit.SECONDS);
+    }
+}
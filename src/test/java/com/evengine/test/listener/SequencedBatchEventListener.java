@@ -0,0 +1,67 @@
+package com.evengine.test.listener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.evengine.core.EventHandlerEngine.EventListener;
+import com.evengine.core.EventHandlerEngine.EventListenerCallBack;
+import com.evengine.test.events.SequencedBatchEvent;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * Records the order the sequenced events of each key are processed in by a batched callback
+ * and the threads the batches run on
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@EventListener
+public class SequencedBatchEventListener
+{
+    public static final Map<String, List<Integer>> sequences = new ConcurrentHashMap<String, List<Integer>>();
+
+    public static final AtomicInteger processed = new AtomicInteger();
+
+    public static final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    public static void reset()
+    {
+        sequences.clear();
+        processed.set(0);
+        threads.clear();
+    }
+
+    @EventListenerCallBack(batchSize=10, maxBatchDelayMs=20)
+    public void processEvents(List<SequencedBatchEvent> events)
+    {
+        synchronized (sequences)
+        {
+            for (SequencedBatchEvent event : events)
+            {
+                if(!sequences.containsKey(event.getKey())) {
+                    sequences.put(event.getKey(), new ArrayList<Integer>());
+                }
+                sequences.get(event.getKey()).add(event.getSequence());
+            }
+        }
+        threads.add(Thread.currentThread().getName());
+        processed.addAndGet(events.size());
+    }
+}
@@ -0,0 +1,54 @@
+package com.evengine.test.listener;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.evengine.core.EventHandlerEngine.EventListener;
+import com.evengine.core.EventHandlerEngine.EventListenerCallBack;
+import com.evengine.core.EventHandlerEngine.RejectionPolicy;
+import com.evengine.test.events.BatchEvent;
+
+/*
+    Copyright 2013-2014, Sumeet Chhetri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+/**
+ * A slow batched listener with a single thread and a single queue slot, only ever flushed by
+ * the batch delay timer, records the threads the batches run on
+ * @author Sumeet Chhetri<br/>
+ *
+ */
+@EventListener(poolSize=1, queueCapacity=1, rejectionPolicy=RejectionPolicy.CALLER_RUNS)
+public class TimedBatchEventListener
+{
+    public static final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    public static final AtomicInteger processed = new AtomicInteger();
+
+    public static void reset()
+    {
+        threads.clear();
+        processed.set(0);
+    }
+
+    @EventListenerCallBack(batchSize=100, maxBatchDelayMs=20)
+    public void processEvents(Collection<BatchEvent> events) throws InterruptedException
+    {
+        threads.add(Thread.currentThread().getName());
+        Thread.sleep(100);
+        processed.addAndGet(events.size());
+    }
+}